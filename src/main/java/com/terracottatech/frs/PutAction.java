@@ -40,15 +40,40 @@ public class PutAction implements GettableAction {
   */
   public static final long PUT_ACTION_OVERHEAD = 20L;
 
+  /* PutAction.getPayload when the codec is compact
+  1 byte    - COMPACT_HEADER
+  1-5 bytes - PutAction.idByteCount
+  1-5 bytes - PutAction.keyByteCount
+  1-5 bytes - PutAction.valueByteCount
+  1-10 bytes - PutAction.invalidatedLsn, zigzag encoded so -1 is a single byte
+  */
+  public static final long COMPACT_PUT_ACTION_OVERHEAD = 5L;
+
+  //  the first byte of the fixed header is the high byte of a non-negative int so never has this bit set
+  static final byte COMPACT_HEADER = (byte) 0x80;
+
   public static final ActionFactory<ByteBuffer, ByteBuffer, ByteBuffer> FACTORY =
           new ActionFactory<ByteBuffer, ByteBuffer, ByteBuffer>() {
             @Override
             public Action create(ObjectManager<ByteBuffer, ByteBuffer, ByteBuffer> objectManager,
                                  ActionCodec codec, ByteBuffer[] buffers) {
-              int idLength = ByteBufferUtils.getInt(buffers);
-              int keyLength = ByteBufferUtils.getInt(buffers);
-              int valueLength = ByteBufferUtils.getInt(buffers);
-              long invalidatedLsn = ByteBufferUtils.getLong(buffers);
+              int idLength;
+              int keyLength;
+              int valueLength;
+              long invalidatedLsn;
+              ByteBuffer first = ByteBufferUtils.getFirstNonEmpty(buffers);
+              if (first.get(first.position()) == COMPACT_HEADER) {
+                first.get();
+                idLength = (int) ByteBufferUtils.getVarLong(buffers);
+                keyLength = (int) ByteBufferUtils.getVarLong(buffers);
+                valueLength = (int) ByteBufferUtils.getVarLong(buffers);
+                invalidatedLsn = ByteBufferUtils.unZigZag(ByteBufferUtils.getVarLong(buffers));
+              } else {
+                idLength = ByteBufferUtils.getInt(buffers);
+                keyLength = ByteBufferUtils.getInt(buffers);
+                valueLength = ByteBufferUtils.getInt(buffers);
+                invalidatedLsn = ByteBufferUtils.getLong(buffers);
+              }
               ByteBuffer id = ByteBufferUtils.getBytes(idLength, buffers);
               ByteBuffer key = ByteBufferUtils.getBytes(keyLength, buffers);
               ByteBuffer value = ByteBufferUtils.getBytes(valueLength, buffers);
@@ -58,6 +83,8 @@ public class PutAction implements GettableAction {
 
   private static final int HEADER_SIZE =
           ByteBufferUtils.INT_SIZE * 3 + ByteBufferUtils.LONG_SIZE;
+  private static final int MAX_COMPACT_HEADER_SIZE =
+          ByteBufferUtils.BYTE_SIZE + ByteBufferUtils.MAX_VARLONG_SIZE * 4;
 
   private final ObjectManager<ByteBuffer, ByteBuffer, ByteBuffer> objectManager;
   private final ByteBuffer                                        id;
@@ -156,11 +183,21 @@ public class PutAction implements GettableAction {
 
   @Override
   public ByteBuffer[] getPayload(ActionCodec codec) {
-    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
-    header.putInt(id.remaining());
-    header.putInt(key.remaining());
-    header.putInt(value.remaining());
-    header.putLong(invalidatedLsn).flip();
+    ByteBuffer header;
+    if (codec != null && codec.isCompact()) {
+      header = ByteBuffer.allocate(MAX_COMPACT_HEADER_SIZE);
+      header.put(COMPACT_HEADER);
+      ByteBufferUtils.putVarLong(header, id.remaining());
+      ByteBufferUtils.putVarLong(header, key.remaining());
+      ByteBufferUtils.putVarLong(header, value.remaining());
+      ByteBufferUtils.putVarLong(header, ByteBufferUtils.zigZag(invalidatedLsn)).flip();
+    } else {
+      header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(id.remaining());
+      header.putInt(key.remaining());
+      header.putInt(value.remaining());
+      header.putLong(invalidatedLsn).flip();
+    }
     return new ByteBuffer[]{header, id.slice(), key.slice(), value.slice()};
   }
 
@@ -17,6 +17,8 @@ package com.terracottatech.frs;
 
 import com.terracottatech.frs.recovery.RecoveryException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Future;
 
 /**
@@ -69,6 +71,38 @@ public interface RestartStore<I, K, V> {
    */
   Tuple<I, K, V> get(long marker);
 
+  /**
+   * randomly access many records from the log at once.  Markers are read in log order 
+   * so neighbouring markers share the read and decode of the region holding them.
+   * The default gets each marker in turn.
+   *
+   * @param markers the markers which were provided at put time, in any order
+   * @return a tuple for each marker, in the order of the markers requested
+   * @see #get(long)
+   */
+  default List<Tuple<I, K, V>> getAll(long[] markers) {
+    List<Tuple<I, K, V>> tuples = new ArrayList<Tuple<I, K, V>>(markers.length);
+    for (long marker : markers) {
+      tuples.add(get(marker));
+    }
+    return tuples;
+  }
+
+  /**
+   * randomly access a record from the log and hold the log segment it was read from 
+   * until the tuple is disposed.  The buffers of the tuple are read-only views of the 
+   * segment or of the read cache rather than copies.  A leased segment trimmed from 
+   * the log stays open, and its file on disk, until the tuple is disposed so dispose 
+   * of it promptly.  The default is a plain {@link #get(long)}, which holds nothing.
+   *
+   * @param marker the marker which was provided at put time
+   * @return a tuple, {@link Disposable} if it holds a segment, null under the same 
+   *      conditions as {@link #get(long)}
+   */
+  default Tuple<I, K, V> lease(long marker) {
+    return get(marker);
+  }
+
   /**
    * Take a snapshot of this {@link RestartStore} for backup purposes. All transactions that have already been committed
    * prior to the snapshot call are guaranteed to be in the snapshot. Changes made while the snapshot is taken may or may
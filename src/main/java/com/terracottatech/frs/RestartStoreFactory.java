@@ -52,9 +52,11 @@ public abstract class RestartStoreFactory {
   private RestartStoreFactory() {
   }
 
-  private static ActionCodec<ByteBuffer, ByteBuffer, ByteBuffer> createCodec(ObjectManager<ByteBuffer, ByteBuffer, ByteBuffer> objectManager) {
+  private static ActionCodec<ByteBuffer, ByteBuffer, ByteBuffer> createCodec(ObjectManager<ByteBuffer, ByteBuffer, ByteBuffer> objectManager,
+                                                                             Configuration configuration) {
     ActionCodec<ByteBuffer, ByteBuffer, ByteBuffer> codec =
-            new ActionCodecImpl<ByteBuffer, ByteBuffer, ByteBuffer>(objectManager);
+            new ActionCodecImpl<ByteBuffer, ByteBuffer, ByteBuffer>(objectManager,
+                    configuration.getBoolean(FrsProperty.LOG_COMPACT_RECORDS));
     MapActions.registerActions(0, codec);
     TransactionActions.registerActions(1, codec);
     CompactionActions.registerActions(2, codec);
@@ -78,10 +80,11 @@ public abstract class RestartStoreFactory {
     }
     
     IOManager ioManager = new NIOManager(configuration,writingSource);
-    ReadManager readManager = new ReadManagerImpl(ioManager, configuration.getString(FrsProperty.FORCE_LOG_REGION_FORMAT));
+    ReadManager readManager = new ReadManagerImpl(ioManager, configuration.getString(FrsProperty.FORCE_LOG_REGION_FORMAT),
+        configuration.getLong(FrsProperty.READ_CACHE_SIZE), configuration.getString(FrsProperty.READ_CACHE_POLICY));
     LogManager logManager = new StagingLogManager(ioManager,writingSource,configuration);
     ActionManager actionManager = new ActionManagerImpl(logManager, objectManager,
-                                                        createCodec(objectManager),
+                                                        createCodec(objectManager, configuration),
                                                         new MasterLogRecordFactory());
     TransactionManager transactionManager = new TransactionManagerImpl(actionManager);
     return new RestartStoreImpl(objectManager, transactionManager, logManager,
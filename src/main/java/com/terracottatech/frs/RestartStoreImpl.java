@@ -43,8 +43,12 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -180,6 +184,54 @@ public class RestartStoreImpl implements RestartStore<ByteBuffer, ByteBuffer, By
     }
   }
 
+  @Override
+  public Tuple<ByteBuffer, ByteBuffer, ByteBuffer> lease(long marker) {
+    try {
+        LogRecord c = readManager.lease(marker);
+        if ( c == null ) {
+            return null;
+        }
+        Action a = actionManager.extract(c);
+        if ( a instanceof GettableAction ) {
+          return (GettableAction)a;
+        } else {
+          c.close();
+          throw new IllegalArgumentException("action is not a gettable event");
+        }
+    } catch ( InterruptedIOException ioe ) {
+        Thread.currentThread().interrupt();
+        return null;
+    } catch ( IOException ioe ) {
+        throw new RuntimeException("unrecoverable", ioe);
+    }
+  }
+
+  @Override
+  public List<Tuple<ByteBuffer, ByteBuffer, ByteBuffer>> getAll(long[] markers) {
+    try {
+        LogRecord[] records = readManager.getAll(markers);
+        List<Tuple<ByteBuffer, ByteBuffer, ByteBuffer>> tuples = new ArrayList<Tuple<ByteBuffer, ByteBuffer, ByteBuffer>>(records.length);
+        for ( LogRecord c : records ) {
+          if ( c == null ) {
+            tuples.add(null);
+            continue;
+          }
+          Action a = actionManager.extract(c);
+          if ( a instanceof GettableAction ) {
+            tuples.add((GettableAction)a);
+          } else {
+            throw new IllegalArgumentException("action is not a gettable event");
+          }
+        }
+        return tuples;
+    } catch ( InterruptedIOException ioe ) {
+        Thread.currentThread().interrupt();
+        return null;
+    } catch ( IOException ioe ) {
+        throw new RuntimeException("unrecoverable", ioe);
+    }
+  }
+
   @Override
   public synchronized Snapshot snapshot() throws RestartStoreException {
     checkReadyState();
@@ -226,6 +278,21 @@ public class RestartStoreImpl implements RestartStore<ByteBuffer, ByteBuffer, By
         public long getExpiredSize() {
           return delegate.getExpiredSize();
         }
+
+        @Override
+        public long getIndexSize() {
+          return delegate.getIndexSize();
+        }
+
+        @Override
+        public long getReadCacheHits() {
+          return readManager.getCacheHits();
+        }
+
+        @Override
+        public long getReadCacheMisses() {
+          return readManager.getCacheMisses();
+        }
       };
   }
 
@@ -428,6 +495,14 @@ public class RestartStoreImpl implements RestartStore<ByteBuffer, ByteBuffer, By
     @Override
     public void commit() throws TransactionException {
     }
+
+    /**
+     * every operation of an auto-commit transaction is already written as it happens.
+     */
+    @Override
+    public CompletionStage<Void> commitAsync() {
+      return CompletableFuture.completedFuture(null);
+    }
   }
 
   private class TransactionImpl implements
@@ -473,6 +548,15 @@ public class RestartStoreImpl implements RestartStore<ByteBuffer, ByteBuffer, By
       committed = true;
     }
 
+    @Override
+    public synchronized CompletionStage<Void> commitAsync() {
+      checkReadyState();
+      checkCommitted();
+      CompletionStage<Void> written = transactionManager.commitAsync(handle, synchronous);
+      committed = true;
+      return written;
+    }
+
     private void checkCommitted() {
       if (committed) throw new IllegalStateException("Transaction is already committed.");
     }
@@ -23,4 +23,13 @@ import com.terracottatech.frs.io.IOStatistics;
  */
 public interface Statistics extends IOStatistics {
   
+  //  zero for stores without a read cache
+
+  default long getReadCacheHits() {
+    return 0;
+  }
+  
+  default long getReadCacheMisses() {
+    return 0;
+  }
 }
@@ -15,6 +15,9 @@
  */
 package com.terracottatech.frs;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  *
  * @author cdennis
@@ -57,4 +60,25 @@ public interface Transaction<I, K, V> {
    * @throws TransactionException
    */
   void commit() throws TransactionException;
+
+  /**
+   * Commit this transaction without blocking the calling thread on the disk write.
+   * <p>
+   * For a synchronous transaction the returned stage completes once the commit is
+   * on disk.  Dependent actions registered with the non-async methods of the stage
+   * may run on the log's IO thread so should be kept short.
+   *
+   * @return stage completed when the commit is durable, or exceptionally with a
+   *         {@link TransactionException}
+   */
+  default CompletionStage<Void> commitAsync() {
+    CompletableFuture<Void> committed = new CompletableFuture<Void>();
+    try {
+      commit();
+      committed.complete(null);
+    } catch (TransactionException e) {
+      committed.completeExceptionally(e);
+    }
+    return committed;
+  }
 }
@@ -28,4 +28,12 @@ public interface ActionCodec<I, K, V> {
   Action decode(ByteBuffer[] buffer);
 
   ByteBuffer[] encode(Action action);
+
+  /**
+   * @return true if actions should write their own headers in the compact, variable
+   *         length form.  Decoding accepts both forms regardless.
+   */
+  default boolean isCompact() {
+    return false;
+  }
 }
@@ -42,9 +42,15 @@ public final class ActionCodecImpl<I, K, V> implements ActionCodec<I, K, V> {
   private final Map<ActionID, ActionFactory<I, K, V>> idToFactory =
           new ConcurrentHashMap<ActionID, ActionFactory<I, K, V>>();
   private final ObjectManager<I, K, V> objectManager;
+  private final boolean compact;
 
   public ActionCodecImpl(ObjectManager<I, K, V> objectManager) {
+    this(objectManager, false);
+  }
+
+  public ActionCodecImpl(ObjectManager<I, K, V> objectManager, boolean compact) {
     this.objectManager = objectManager;
+    this.compact = compact;
     registerAction(NULL_ACTION_ID, NullAction.class, NullAction.<I, K, V>factory());
   }
 
@@ -77,6 +83,11 @@ public final class ActionCodecImpl<I, K, V> implements ActionCodec<I, K, V> {
     return factory.create(objectManager, this, buffers);
   }
 
+  @Override
+  public boolean isCompact() {
+    return compact;
+  }
+
   @Override
   public ByteBuffer[] encode(Action action) {
     return concatenate(headerBuffer(action), action.getPayload(this));
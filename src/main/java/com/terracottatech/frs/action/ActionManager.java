@@ -16,7 +16,9 @@
 package com.terracottatech.frs.action;
 
 import com.terracottatech.frs.log.LogRecord;
+import com.terracottatech.frs.util.CompletionStages;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -33,6 +35,16 @@ public interface ActionManager {
    */
   Future<Void> syncHappened(Action action);
 
+  /**
+   * Record the action and initiate a sync without blocking the caller.
+   *
+   * @param action {@link Action} to record into the log stream
+   * @return {@link CompletionStage} completed when the action is on disk.
+   */
+  default CompletionStage<Void> syncHappenedAsync(Action action) {
+    return CompletionStages.toStage(syncHappened(action));
+  }
+
   /**
    * Record the given {@link Action} into the log stream.
    *
@@ -22,6 +22,7 @@ import com.terracottatech.frs.log.LogRecordFactory;
 import com.terracottatech.frs.object.ObjectManager;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -77,6 +78,16 @@ public class ActionManagerImpl implements ActionManager {
     }
   }
 
+  @Override
+  public CompletionStage<Void> syncHappenedAsync(Action action) {
+    enterHappened();
+    try {
+      return logManager.appendAndSyncAsync(wrapAction(action));
+    } finally {
+      exitHappened();
+    }
+  }
+
   @Override
   public Future<Void> happened(Action action) {
     enterHappened();
@@ -25,6 +25,7 @@ import java.io.IOException;
 
 import static com.terracottatech.frs.config.FrsProperty.COMPACTOR_SIZEBASED_AMOUNT;
 import static com.terracottatech.frs.config.FrsProperty.COMPACTOR_SIZEBASED_THRESHOLD;
+import static com.terracottatech.frs.config.FrsProperty.LOG_COMPACT_RECORDS;
 
 public class SizeBasedCompactionPolicy implements CompactionPolicy {
 
@@ -32,6 +33,7 @@ public class SizeBasedCompactionPolicy implements CompactionPolicy {
   private final ObjectManager<?, ?, ?> objectManager;
   private final double sizeThreshold;
   private final double compactionPercentage;
+  private final long recordOverhead;
 
   private boolean isCompacting;
   private long entriesToCompact;
@@ -42,6 +44,7 @@ public class SizeBasedCompactionPolicy implements CompactionPolicy {
     this.objectManager = objectManager;
     this.sizeThreshold = configuration.getDouble(COMPACTOR_SIZEBASED_THRESHOLD);
     this.compactionPercentage = configuration.getDouble(COMPACTOR_SIZEBASED_AMOUNT);
+    this.recordOverhead = LogRegionPacker.getMinimumRecordOverhead(Boolean.TRUE.equals(configuration.getBoolean(LOG_COMPACT_RECORDS)));
   }
 
   @Override
@@ -71,7 +74,7 @@ public class SizeBasedCompactionPolicy implements CompactionPolicy {
       long sizeInBytes = objectManager.sizeInBytes();
       long size = objectManager.size();
       long liveSize = ioManager.getStatistics().getLiveSize();
-      long minimumOverhead = LogRegionPacker.getMinimumRecordOverhead() * size;
+      long minimumOverhead = recordOverhead * size;
       long optimallyCompactedSize = sizeInBytes + minimumOverhead;
 
       return (float) (((double) optimallyCompactedSize) / liveSize);
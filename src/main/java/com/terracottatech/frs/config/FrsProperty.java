@@ -19,9 +19,18 @@ public enum FrsProperty {
   IO_CHECKSUM("io.checksum", Type.STRING, "ADLER32"),
   IO_RANDOM_ACCESS("io.randomAccess", Type.BOOLEAN, false),
   IO_COMMIT_QUEUE_SIZE("io.commitQueueSize", Type.INTEGER, 1024),
+  IO_COMMIT_QUEUE_ADAPTIVE("io.commitQueueAdaptive", Type.BOOLEAN, false),
+  IO_COMMIT_QUEUE_MIN_SIZE("io.commitQueueMinSize", Type.INTEGER, 64),
+  IO_COMMIT_QUEUE_MAX_SIZE("io.commitQueueMaxSize", Type.INTEGER, 16 * 1024),
   IO_RECOVERY_QUEUE_SIZE("io.recoveryQueueSize", Type.INTEGER, 16),
   IO_COMMITLIST("io.commitList", Type.STRING, "ATOMIC"),
   IO_WAIT("io.wait", Type.INTEGER, 200),
+  IO_APPEND_WAIT_STRATEGY("io.appendWaitStrategy", Type.STRING, "BLOCKING"),
+  IO_PACKER_THREADS("io.packerThreads", Type.INTEGER, 0),
+  IO_PACKER_IN_FLIGHT("io.packerInFlight", Type.INTEGER, 8),
+  IO_ZERO_COPY_THRESHOLD("io.zeroCopyThreshold", Type.INTEGER, 0),
+  IO_GROUP_COMMIT_MAX_DELAY("io.groupCommit.maxDelayMicros", Type.LONG, 0L),
+  IO_GROUP_COMMIT_MAX_RECORDS("io.groupCommit.maxRecords", Type.INTEGER, 0),
   IO_DISABLE_SYNC("io.disableSync", Type.BOOLEAN, false),
   
   IO_NIO_SEGMENT_SIZE("io.nio.segmentSize", Type.LONG, 512L * 1024 * 1024),
@@ -33,6 +42,16 @@ public enum FrsProperty {
   IO_NIO_BUFFER_BUILDER("io.nio.bufferBuilder", Type.STRING, null),
   IO_NIO_ACCESS_METHOD("io.nio.accessMethod", Type.STRING, "STREAM"),
   IO_NIO_BUFFER_SOURCE("io.nio.bufferSource", Type.STRING, "HILO"),
+  IO_NIO_PREALLOCATE("io.nio.preallocate", Type.BOOLEAN, false),
+  IO_NIO_DIRECT_IO("io.nio.directIO", Type.BOOLEAN, false),
+  IO_NIO_MAPPED_WRITES("io.nio.mappedWrites", Type.BOOLEAN, false),
+  IO_NIO_STRIPE_DIRECTORIES("io.nio.stripeDirectories", Type.STRING, null),
+  IO_NIO_PIPELINED_SYNC("io.nio.pipelinedSync", Type.BOOLEAN, false),
+  IO_NIO_RECYCLE_SEGMENTS("io.nio.recycleSegments", Type.INTEGER, 0),
+  IO_NIO_ASYNC_WRITES("io.nio.asyncWrites", Type.INTEGER, 0),
+  IO_NIO_FLUSH_BYTES("io.nio.flushBytes", Type.LONG, 0L),
+  IO_NIO_FLUSH_INTERVAL("io.nio.flushInterval", Type.LONG, 0L),
+  IO_NIO_CHUNK_INDEX_SIZE("io.nio.chunkIndexSize", Type.LONG, 0L),
   
   RECOVERY_COMPRESSED_SKIP_SET("recovery.compressedSkipSet", Type.BOOLEAN, true),
   RECOVERY_REPLAY_PER_BATCH_SIZE("recovery.replayPerBatchSize", Type.INTEGER, 512),
@@ -53,7 +72,12 @@ public enum FrsProperty {
 
   STORE_MAX_PAUSE_TIME_IN_MILLIS("store.maxPauseTimeInMillis", Type.INTEGER, 1000),
 
-  FORCE_LOG_REGION_FORMAT("log.forceRegionFormat", Type.STRING, "FILE");
+  READ_CACHE_SIZE("read.cacheSize", Type.LONG, 0L),
+  READ_CACHE_POLICY("read.cachePolicy", Type.STRING, "LRU"),
+
+  FORCE_LOG_REGION_FORMAT("log.forceRegionFormat", Type.STRING, "FILE"),
+  LOG_REGION_FORMAT("log.regionFormat", Type.STRING, "HT"),
+  LOG_COMPACT_RECORDS("log.compactRecords", Type.BOOLEAN, false);
 
   private static final String SYSTEM_PROPERTY_PREFIX = "com.tc.frs.";
 
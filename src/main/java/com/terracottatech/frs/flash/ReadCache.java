@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2013-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.flash;
+
+import com.terracottatech.frs.log.LogRecord;
+import com.terracottatech.frs.log.LogRecordImpl;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches decoded log regions for random access reads, bounded by bytes.
+ * <p>
+ * A region is cached as the payloads of all its records copied into one direct buffer 
+ * and found by the lsn range it covers, so any record in a recently read region is 
+ * served without going back to the IO manager or parsing the region again.  Lookups 
+ * are lock free, loading and eviction are serialized.
+ * <p>
+ * Eviction is a clock approximation of LRU.  The LFU policy uses the same clock to 
+ * pick victims but only admits a new region if it has been read more often recently 
+ * than the regions it would evict, which keeps a scan from flushing the cache.
+ *
+ * @author mscott
+ */
+class ReadCache {
+  
+  enum Policy {
+    LRU,
+    LFU
+  }
+  
+  private static final int RECORD_OVERHEAD = 8 + 4;
+  
+  private final long capacity;
+  private final Policy policy;
+  private final ConcurrentSkipListMap<Long, Region> regions = new ConcurrentSkipListMap<Long, Region>();
+  private final ConcurrentLinkedQueue<Region> clock = new ConcurrentLinkedQueue<Region>();
+  private final FrequencySketch sketch;
+  private final AtomicLong used = new AtomicLong();
+
+  ReadCache(long capacity, Policy policy) {
+    if ( capacity <= 0 ) {
+      throw new IllegalArgumentException("cache capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.policy = policy;
+    this.sketch = ( policy == Policy.LFU ) ? new FrequencySketch(4096) : null;
+  }
+  
+  static Policy parsePolicy(String name) {
+    try {
+      return Policy.valueOf(name.trim().toUpperCase());
+    } catch ( IllegalArgumentException bad ) {
+      throw new IllegalArgumentException("unknown read cache policy " + name, bad);
+    }
+  }
+  
+  long getUsed() {
+    return used.get();
+  }
+  
+  int getRegionCount() {
+    return regions.size();
+  }
+
+  /**
+   * @return a record backed by the cache or null if the region holding lsn is not cached
+   */
+  LogRecord get(long lsn) {
+    Map.Entry<Long, Region> e = regions.ceilingEntry(lsn);
+    if ( e == null ) {
+      return null;
+    }
+    Region r = e.getValue();
+    LogRecord record = r.get(lsn);
+    if ( record != null ) {
+      r.referenced = true;
+      if ( sketch != null ) {
+        sketch.increment(r.getKey());
+      }
+    }
+    return record;
+  }
+  
+  /**
+   * Offer every record of a region just read from the log.
+   * 
+   * @param records the records of one region in lsn order
+   * @return a record for lsn backed by the cache or null if the region was not admitted
+   */
+  LogRecord put(List<LogRecord> records, long lsn) {
+    if ( records.isEmpty() ) {
+      return null;
+    }
+    long key = records.get(records.size() - 1).getLsn();
+    if ( sketch != null ) {
+      sketch.increment(key);
+    }
+    long size = 0;
+    for ( LogRecord r : records ) {
+      size += remaining(r.getPayload());
+    }
+    long weight = size + (long)RECORD_OVERHEAD * records.size();
+  //  one region should never take over the cache
+    if ( size > Integer.MAX_VALUE || weight > capacity / 4 ) {
+      return null;
+    }
+    Region existing = regions.get(key);
+    if ( existing != null ) {
+      return existing.get(lsn);
+    }
+    synchronized ( this ) {
+      existing = regions.get(key);
+      if ( existing != null ) {
+        return existing.get(lsn);
+      }
+      if ( !makeRoom(key, weight) ) {
+        return null;
+      }
+      Region region = new Region(records, (int)size, weight);
+      regions.put(key, region);
+      clock.add(region);
+      used.addAndGet(weight);
+      return region.get(lsn);
+    }
+  }
+  
+  void clear() {
+    synchronized ( this ) {
+      regions.clear();
+      clock.clear();
+      used.set(0);
+    }
+  }
+  
+  private boolean makeRoom(long key, long weight) {
+    List<Region> victims = new ArrayList<Region>();
+    long freed = 0;
+  //  every region gets at most one second chance
+    int chances = clock.size();
+    while ( used.get() - freed + weight > capacity ) {
+      Region victim = clock.poll();
+      if ( victim == null ) {
+        break;
+      }
+      if ( victim.referenced && chances-- > 0 ) {
+        victim.referenced = false;
+        clock.add(victim);
+      } else {
+        victims.add(victim);
+        freed += victim.weight;
+      }
+    }
+    if ( sketch != null ) {
+      int candidate = sketch.frequency(key);
+      for ( Region victim : victims ) {
+        if ( sketch.frequency(victim.getKey()) >= candidate ) {
+  //  the cache is already holding hotter regions, leave it alone
+          clock.addAll(victims);
+          return false;
+        }
+      }
+    }
+    for ( Region victim : victims ) {
+      regions.remove(victim.getKey());
+      used.addAndGet(-victim.weight);
+    }
+    return true;
+  }
+  
+  private static long remaining(ByteBuffer[] buffers) {
+    long size = 0;
+    for ( ByteBuffer b : buffers ) {
+      size += b.remaining();
+    }
+    return size;
+  }
+  
+  /**
+   * Payloads are sliced out of the region buffer on every hit, an evicted region stays 
+   * readable through the records already handed out until they are collected.
+   */
+  private static class Region {
+    private final long[] lsns;
+    private final int[] offsets;
+    private final ByteBuffer data;
+    private final long weight;
+    private volatile boolean referenced;
+
+    Region(List<LogRecord> records, int size, long weight) {
+      this.lsns = new long[records.size()];
+      this.offsets = new int[records.size() + 1];
+      this.data = ByteBuffer.allocateDirect(size);
+      this.weight = weight;
+      int x = 0;
+      for ( LogRecord r : records ) {
+        lsns[x] = r.getLsn();
+        offsets[x++] = data.position();
+        for ( ByteBuffer b : r.getPayload() ) {
+          data.put(b.duplicate());
+        }
+      }
+      offsets[x] = data.position();
+    }
+    
+    long getKey() {
+      return lsns[lsns.length - 1];
+    }
+    
+    LogRecord get(long lsn) {
+      int x = Arrays.binarySearch(lsns, lsn);
+      if ( x < 0 ) {
+        return null;
+      }
+      ByteBuffer payload = data.duplicate();
+      payload.limit(offsets[x + 1]).position(offsets[x]);
+      LogRecord record = new LogRecordImpl(new ByteBuffer[] {payload.slice().asReadOnlyBuffer()}, null);
+      record.updateLsn(lsn);
+      return record;
+    }
+  }
+  
+  /**
+   * Count-min sketch of how often each region was read with four 
+   * hashes.  Counts are halved once the sketch has seen ten times its width so 
+   * old popularity fades.
+   */
+  static class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    
+    private final AtomicIntegerArray counts;
+    private final int mask;
+    private final int sample;
+    private final AtomicLong additions = new AtomicLong();
+
+    FrequencySketch(int width) {
+      int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+      this.counts = new AtomicIntegerArray(size);
+      this.mask = size - 1;
+      this.sample = size * 10;
+    }
+    
+    private int index(long key, int row) {
+      long h = (key + SEEDS[row]) * SEEDS[(row + 1) & 3];
+      h ^= h >>> 29;
+      return (int)h & mask;
+    }
+    
+    void increment(long key) {
+      for ( int row = 0; row < SEEDS.length; row++ ) {
+        counts.incrementAndGet(index(key, row));
+      }
+      if ( additions.incrementAndGet() % sample == 0 ) {
+        age();
+      }
+    }
+    
+    int frequency(long key) {
+      int min = Integer.MAX_VALUE;
+      for ( int row = 0; row < SEEDS.length; row++ ) {
+        min = Math.min(min, counts.get(index(key, row)));
+      }
+      return min;
+    }
+    
+    private void age() {
+      for ( int x = 0; x < counts.length(); x++ ) {
+        counts.set(x, counts.get(x) >>> 1);
+      }
+    }
+  }
+}
@@ -24,4 +24,25 @@ import java.io.IOException;
  */
 public interface ReadManager {
   LogRecord get(long marker) throws IOException;
+  
+  /**
+   * @return the record at each marker, in the order of the markers
+   */
+  LogRecord[] getAll(long[] markers) throws IOException;
+  
+  /**
+   * @return the record at marker, the segment it was read from is held until the 
+   *         record is closed
+   */
+  LogRecord lease(long marker) throws IOException;
+  
+  /**
+   * @return reads served from the read cache
+   */
+  long getCacheHits();
+  
+  /**
+   * @return reads that went to the log, every read when there is no cache
+   */
+  long getCacheMisses();
 }
@@ -17,15 +17,19 @@ package com.terracottatech.frs.flash;
 
 import com.terracottatech.frs.io.Chunk;
 import com.terracottatech.frs.io.IOManager;
-import com.terracottatech.frs.io.Loadable;
 import com.terracottatech.frs.log.FormatException;
 import com.terracottatech.frs.log.LogRecord;
+import com.terracottatech.frs.log.LogRecordImpl;
 import com.terracottatech.frs.log.LogRegionPacker;
 import com.terracottatech.frs.log.Signature;
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,54 +43,39 @@ public class ReadManagerImpl implements ReadManager {
 
   private final IOManager ioManager;
   private final String forceLogRegionFormat;
-  private final Cache cached = new Cache();
-  private int hit;
-  private int miss;
+  private final ReadCache cache;
+  private final AtomicLong hit = new AtomicLong();
+  private final AtomicLong miss = new AtomicLong();
 
   public ReadManagerImpl(IOManager io, String forceLogRegionFormat) {
+    this(io, forceLogRegionFormat, 0, "LRU");
+  }
+
+  /**
+   * @param cacheSize bytes of decoded regions to keep for random access reads, 0 for no cache
+   * @param cachePolicy LRU or LFU
+   */
+  public ReadManagerImpl(IOManager io, String forceLogRegionFormat, long cacheSize, String cachePolicy) {
     this.ioManager = io;
     this.forceLogRegionFormat = forceLogRegionFormat;
+    this.cache = ( cacheSize > 0 ) ? new ReadCache(cacheSize, ReadCache.parsePolicy(cachePolicy)) : null;
   }
-// UNUSED  
-  private synchronized Chunk check(long lsn) {
-      Chunk c = cached.get(lsn);
-      if ( c != null ) {
-        hit++;
-        long pos = c.position();
-        try {
-          return c.getChunk(c.remaining());
-        } finally { 
-          c.clear();
-          c.skip(pos);
-        }
-      }
-      miss++;
-      return null;
-  }
-// UNUSED  
-  private synchronized Chunk cache(long lsn, Chunk records) throws IOException {
-      if ( records == null ) {
-        return null;
-      }
-      if ( records instanceof Loadable ) {
-        ((Loadable)records).load();
-      }
-      cached.put(lsn, records);
-      long pos = records.position();
-      try {
-        return records.getChunk(records.remaining());
-      } finally { 
-        records.clear();
-        records.skip(pos);
-      }
-    }
 
   @Override
   public LogRecord get(long marker) throws IOException {
+    if ( cache != null ) {
+      LogRecord cached = cache.get(marker);
+      if ( cached != null ) {
+        hit.incrementAndGet();
+        return cached;
+      }
+    }
+    miss.incrementAndGet();
     Chunk c = ioManager.scan(marker);
     try {
-// maybe try and cache this
-        LogRecord send = LogRegionPacker.extract(Signature.NONE, forceLogRegionFormat, c, marker);
+        LogRecord send = ( cache != null ) ? 
+            load(c, marker) :
+            LogRegionPacker.extract(Signature.NONE, forceLogRegionFormat, c, marker);
         
         if ( send == null ) {
           throw new RuntimeException("not found");
@@ -102,34 +91,187 @@ public class ReadManagerImpl implements ReadManager {
     }
   }
   
-  static class Cache extends LinkedHashMap<Long, Chunk> {
-        boolean over = false;
-
-        public Cache() {
-          super(256, 1.25f, true);
+  /**
+   * Markers are visited in log order.  Each region is scanned and decoded once and 
+   * serves every requested marker it holds, so a large batch reads the log mostly 
+   * front to back.
+   */
+  @Override
+  public LogRecord[] getAll(final long[] markers) throws IOException {
+    LogRecord[] found = new LogRecord[markers.length];
+    Integer[] order = new Integer[markers.length];
+    for ( int x = 0; x < order.length; x++ ) {
+      order[x] = x;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(markers[o1], markers[o2]);
+      }
+    });
+    int x = 0;
+    while ( x < order.length ) {
+      long marker = markers[order[x]];
+      if ( x > 0 && markers[order[x - 1]] == marker ) {
+        found[order[x]] = copy(found[order[x - 1]]);
+        x++;
+        continue;
+      }
+      if ( cache != null ) {
+        LogRecord cached = cache.get(marker);
+        if ( cached != null ) {
+          hit.incrementAndGet();
+          found[order[x++]] = cached;
+          continue;
         }
-
-        @Override
-        public Chunk remove(Object key) {
-            over = false;
-            return super.remove(key); 
+      }
+      miss.incrementAndGet();
+      List<LogRecord> records = readRegion(marker);
+      boolean cached = cache != null && cache.put(records, marker) != null;
+      int start = x;
+      try {
+        int r = 0;
+        while ( x < order.length ) {
+          long next = markers[order[x]];
+          if ( x > start && markers[order[x - 1]] == next ) {
+            found[order[x]] = copy(found[order[x - 1]]);
+            x++;
+            continue;
+          }
+          while ( r < records.size() && records.get(r).getLsn() < next ) {
+            r++;
+          }
+          if ( r == records.size() || records.get(r).getLsn() != next ) {
+            break;
+          }
+          found[order[x]] = ( cached ) ? cache.get(next) : records.set(r, null);
+          r++;
+          x++;
         }
-
-        @Override
-        protected boolean removeEldestEntry(Entry<Long, Chunk> eldest) {
-            if ( over || this.size() > 512 ) {
-                over = true;
-                if (eldest.getValue() instanceof Closeable ) {
-                  try {
-                    ((Closeable)eldest.getValue()).close();
-                  } catch ( IOException ioe ) {
-                    LOGGER.warn("error closing chunk", ioe);
-                  }
-                }
-            }
-            return over;
+      } finally {
+        for ( LogRecord r : records ) {
+          if ( r != null ) {
+            r.close();
+          }
         }
-      
+      }
+      if ( x == start ) {
+        throw new RuntimeException("not found");
+      }
+    }
+    return found;
+  }
+  
+  /**
+   * Records served by the cache are not backed by a segment and need no lease.
+   */
+  @Override
+  public LogRecord lease(long marker) throws IOException {
+    if ( cache != null ) {
+      LogRecord cached = cache.get(marker);
+      if ( cached != null ) {
+        hit.incrementAndGet();
+        return cached;
+      }
+    }
+    Closeable pin = ioManager.pin(marker);
+    try {
+      LogRecord leased = new LeasedLogRecord(get(marker), pin);
+      pin = null;
+      return leased;
+    } finally {
+      if ( pin != null ) {
+        pin.close();
+      }
+    }
   }
   
+  /**
+   * the payload of the record it wraps, closing it also gives up the pin on the segment 
+   */
+  private static class LeasedLogRecord extends LogRecordImpl {
+    private final LogRecord record;
+    private final Closeable pin;
+
+    LeasedLogRecord(LogRecord record, Closeable pin) {
+      super(record.getPayload(), null);
+      this.record = record;
+      this.pin = pin;
+      updateLsn(record.getLsn());
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+        record.close();
+      } finally {
+        pin.close();
+      }
+    }
+  }
+  
+  private List<LogRecord> readRegion(long marker) throws IOException {
+    Chunk c = ioManager.scan(marker);
+    try {
+      return new ArrayList<LogRecord>(LogRegionPacker.unpack(Signature.NONE, forceLogRegionFormat, c));
+    } catch ( FormatException form ) {
+      throw new IOException(form);
+    } finally {
+      if ( c instanceof Closeable ) {
+        ((Closeable)c).close();
+      }
+    }
+  }
+  
+  private static LogRecord copy(LogRecord record) {
+    ByteBuffer[] payload = record.getPayload();
+    ByteBuffer[] dup = new ByteBuffer[payload.length];
+    for ( int x = 0; x < payload.length; x++ ) {
+      dup[x] = payload[x].duplicate();
+    }
+    LogRecord copy = new LogRecordImpl(dup, null);
+    copy.updateLsn(record.getLsn());
+    return copy;
+  }
+  
+  /**
+   * decode the whole region and offer it to the cache, the records that are 
+   * not returned are released before the region chunk is closed.
+   */
+  private LogRecord load(Chunk c, long marker) throws FormatException, IOException {
+    List<LogRecord> records = LogRegionPacker.unpack(Signature.NONE, forceLogRegionFormat, c);
+    LogRecord send = null;
+    try {
+      send = cache.put(records, marker);
+      if ( send == null ) {
+        for ( LogRecord r : records ) {
+          if ( r.getLsn() == marker ) {
+            send = r;
+          }
+        }
+      }
+      return send;
+    } finally {
+      for ( LogRecord r : records ) {
+        if ( r != send ) {
+          try {
+            r.close();
+          } catch ( IOException ioe ) {
+            LOGGER.warn("error closing record", ioe);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public long getCacheHits() {
+    return hit.get();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return miss.get();
+  }
 }
@@ -21,6 +21,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Wrap a file in a chunk for easy access.
@@ -36,6 +37,7 @@ public class FileBuffer extends AbstractChunk implements Closeable {
     private int mark = 0;
     private long total = 0;
     private long offset = 0;
+    private boolean coalescing = true;
 
     public FileBuffer(FileChannel channel, ByteBuffer src) throws IOException {
         if ( src.position() != 0 ) {
@@ -73,6 +75,14 @@ public class FileBuffer extends AbstractChunk implements Closeable {
         return offset + super.position();
     }
 
+    /**
+     * @param coalescing copy small or heap buffers into this buffer's memory before 
+     *        writing, true by default
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
     public long offset() {
         return offset;
     }
@@ -170,68 +180,69 @@ public class FileBuffer extends AbstractChunk implements Closeable {
         return lt;
     }    
 
-    private ByteBuffer coalesce(ByteBuffer scratch, ByteBuffer[] list, int start, int count) {
-//  use the remaining buffer space as scratch space for small buffer aggregation and
-//  making sure the memory is direct memory
-        if (count == 1 && (scratch.isDirect() == list[start].isDirect() || list[start].remaining() > scratch.remaining())) {
-            // waste of time
-            return list[start];
+    private long writeFully(List<ByteBuffer> list) throws IOException {
+        if ( list.isEmpty() ) {
+            return 0;
         }
-        scratch.clear();
-        for (int x = start; x < start + count; x++) {
-            if (list[x].remaining() <= scratch.remaining()) {
-                scratch.put(list[x]);
-            } else {
-                if ( count == 1 ) return list[x];
-                //  no more scratch space, write the remaining the hard way
-                throw new AssertionError("no space");
+        return writeFully(list.toArray(new ByteBuffer[list.size()]));
+    }
+    
+    public long writeFully(ByteBuffer[] srcs) throws IOException {
+        long lt = 0;
+        int start = 0;
+//  one gathering write for the whole chain, the channel may write less than asked
+        while ( start < srcs.length ) {
+            lt += channel.write(srcs, start, srcs.length - start);
+            while ( start < srcs.length && !srcs[start].hasRemaining() ) {
+                start++;
             }
         }
-        //  write out the private copy to disk
-        scratch.flip();
-
-        return scratch;
+        offset = channel.position();
+        return lt;
+    }
+    
+    private static boolean isLarge(ByteBuffer bb) {
+        return bb.isDirect() && bb.remaining() > 512;
     }
 
     private long coalescingWrite(int usage, int count) throws IOException {
-        int smStart = -1;
         long lt = 0;
+        ArrayList<ByteBuffer> gather = new ArrayList<ByteBuffer>(count);
 //  use the remaining buffer space as scratch space for small buffer aggregation and
-//  making sure the memory is direct memory
+//  making sure the memory is direct memory.  large direct buffers are written in place
         try {
-            ByteBuffer memcpy = ((ByteBuffer) base.position(usage)).slice();
-            int currentRun = 0;
-            for (int x = mark; x < mark + count; x++) {
-                if (ref[x].isDirect() && ref[x].remaining() > 512) {
-                    if (smStart >= 0) {
-                        //  write out smalls first
-                        lt += writeFully(coalesce(memcpy, ref, smStart, x - smStart));
-                        smStart = -1;
-                        currentRun = 0;
-                    }
-                    //  write out big directs
-                    lt += writeFully(coalesce(memcpy, ref, x, 1));
-                } else if (currentRun + ref[x].remaining() > memcpy.capacity()) {
-                    // buffer is full
-                    if ( smStart < 0 ) {
-                        lt += writeFully(coalesce(memcpy, ref, x, 1));
-                    } else {
-                        lt += writeFully(coalesce(memcpy, ref, smStart, x - smStart));
-                        smStart = x;
-                        currentRun = ref[x].remaining();
-                    }
-                } else {
-                    if (smStart < 0) {
-                        smStart = x;
-                    }
-                    currentRun += ref[x].remaining();
+            ByteBuffer scratch = ((ByteBuffer) base.position(usage)).slice();
+            int x = mark;
+            while ( x < mark + count ) {
+                if ( isLarge(ref[x]) ) {
+                    gather.add(ref[x++]);
+                    continue;
                 }
+                int run = x;
+                int size = 0;
+                while ( run < mark + count && !isLarge(ref[run]) && size + ref[run].remaining() <= scratch.capacity() ) {
+                    size += ref[run++].remaining();
+                }
+                if ( run == x ) {
+  //  bigger than all of the scratch space, write it the hard way
+                    gather.add(ref[x++]);
+                    continue;
+                }
+                if ( size > scratch.remaining() ) {
+  //  scratch is full, flush what is gathered so far and reuse it
+                    lt += writeFully(gather);
+                    gather.clear();
+                    scratch.clear();
+                }
+                ByteBuffer piece = scratch.slice();
+                while ( x < run ) {
+                    piece.put(ref[x++]);
+                }
+                piece.flip();
+                scratch.position(scratch.position() + size);
+                gather.add(piece);
             }
-
-            if (smStart >= 0) {
-//  finish the writes
-                lt += writeFully(coalesce(memcpy, ref, smStart, (mark + count) - smStart));
-            }
+            lt += writeFully(gather);
         } finally {
             base.position(0);
         }
@@ -257,12 +268,10 @@ public class FileBuffer extends AbstractChunk implements Closeable {
             }
         }
 
-        if (count > 5 || !direct) {
+        if (coalescing && (count > 5 || !direct)) {
             lt += coalescingWrite(usage, count);
         } else {
-            for(int x=mark;x<count;x++) {
-                lt += writeFully(ref[x]);
-            }
+            lt += writeFully(Arrays.asList(ref).subList(mark, mark + count));
         }
 
         mark += count;
@@ -19,6 +19,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.concurrent.Future;
 
+import com.terracottatech.frs.util.NullFuture;
+
 /**
  *
  * @author cdennis
@@ -35,10 +37,40 @@ public interface IOManager extends Closeable {
   
   Chunk scan(long marker) throws IOException;
   
+  /**
+   * Hold the part of the log that marker was written to open until the returned 
+   * lease is closed.  Trimming the log does not wait for the lease, the part is 
+   * released from disk when the lease is closed.
+   * 
+   * @return the lease, closing it more than once is harmless
+   */
+  default Closeable pin(long marker) throws IOException {
+    return () -> {};
+  }
+  
   long seek(long marker) throws IOException;
   
   void sync() throws IOException;
   
+  /**
+   * @return completes once the chunk written with marker has reached the log, 
+   *         which may be after write returns.  futures complete in marker order.
+   */
+  default Future<Void> writtenAsync(long marker) throws IOException {
+    return NullFuture.INSTANCE;
+  }
+  
+  /**
+   * Start forcing everything written so far without waiting for it to finish.
+   * 
+   * @return completes once everything written before the call is durable.  
+   *         futures from successive calls complete in order.
+   */
+  default Future<Void> syncAsync() throws IOException {
+    sync();
+    return NullFuture.INSTANCE;
+  }
+  
   Future<Void> clean(long timeout) throws IOException;
   
   IOStatistics getStatistics() throws IOException;
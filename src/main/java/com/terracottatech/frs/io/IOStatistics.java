@@ -26,4 +26,11 @@ public interface IOStatistics {
     long getTotalRead();
     long getLiveSize();
     long getExpiredSize();
+    
+    /**
+     * @return bytes of memory held by the index of chunk locations, 0 if there is none
+     */
+    default long getIndexSize() {
+        return 0L;
+    }
 }
@@ -17,9 +17,11 @@ package com.terracottatech.frs.io.nio;
 
 import com.terracottatech.frs.io.Chunk;
 import com.terracottatech.frs.util.ByteBufferUtils;
+import com.terracottatech.frs.util.Crc32c;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.zip.Checksum;
 
 /**
  *
@@ -79,7 +81,7 @@ abstract class AbstractReadbackStrategy implements ReadbackStrategy {
     }       
         
     protected long[] readJumpList(ByteBuffer buffer) throws IOException {
-        final int LAST_INT_WORD_IN_CHUNK = buffer.position()+buffer.remaining()-ByteBufferUtils.INT_SIZE;
+        final int LAST_INT_WORD_IN_CHUNK = jumpListEnd(buffer)-ByteBufferUtils.INT_SIZE;
         final int LAST_INT_WORD_BEFORE_JUMP_MARK = LAST_INT_WORD_IN_CHUNK - ByteBufferUtils.INT_SIZE;
         
         if ( !buffer.hasRemaining() ) {
@@ -117,4 +119,131 @@ abstract class AbstractReadbackStrategy implements ReadbackStrategy {
         }
         return null;
     }
+    
+    /**
+     * @param buffer the tail of a segment file, only a duplicate is modified
+     * @return the jump list and, when the segment was closed with one, the marker 
+     *         index or null if buffer does not end in a valid jump list
+     */
+    protected Footer readFooter(ByteBuffer buffer) throws IOException {
+        ByteBuffer tail = buffer.duplicate();
+        long[] markers = readMarkerIndex(tail);
+        long[] jumps = readJumpList(tail);
+        if ( jumps == null ) {
+            return null;
+        }
+        if ( markers != null && markers.length != jumps.length ) {
+            markers = null;
+        }
+        return new Footer(jumps, markers);
+    }
+    
+    /**
+     * The marker index follows the jump list: the marker of the first chunk as a long, 
+     * an int delta for every following chunk, the CRC32C of those bytes, the number of 
+     * chunks and the MARKER_INDEX magic.  If the magic is in place the limit of buffer 
+     * is moved back to the end of the jump list, even if the checksum does not match.
+     * 
+     * @return the marker of every chunk in the segment or null
+     */
+    private long[] readMarkerIndex(ByteBuffer buffer) {
+        final int end = buffer.limit();
+        if ( buffer.remaining() < 3 * ByteBufferUtils.INT_SIZE ) {
+            return null;
+        }
+        if ( !SegmentHeaders.MARKER_INDEX.validate(buffer.getInt(end - ByteBufferUtils.INT_SIZE)) ) {
+            return null;
+        }
+        int count = buffer.getInt(end - 2 * ByteBufferUtils.INT_SIZE);
+        if ( count <= 0 || markerIndexLength(count) > buffer.remaining() ) {
+            return null;
+        }
+        final int start = end - (int)markerIndexLength(count);
+        int pos = start;
+        Checksum crc = Crc32c.create();
+        long[] markers = new long[count];
+        long marker = buffer.getLong(pos);
+        checksum(crc, marker, ByteBufferUtils.LONG_SIZE);
+        pos += ByteBufferUtils.LONG_SIZE;
+        markers[0] = marker;
+        for (int x=1;x<count;x++) {
+            int delta = buffer.getInt(pos);
+            checksum(crc, delta, ByteBufferUtils.INT_SIZE);
+            pos += ByteBufferUtils.INT_SIZE;
+            marker += delta;
+            markers[x] = marker;
+        }
+        int check = buffer.getInt(pos);
+        buffer.limit(start);
+        return ( check == (int)crc.getValue() ) ? markers : null;
+    }
+    
+    /**
+     * @return the limit of buffer less any marker index following the jump list
+     */
+    private static int jumpListEnd(ByteBuffer buffer) {
+        final int end = buffer.limit();
+        if ( buffer.remaining() < 3 * ByteBufferUtils.INT_SIZE 
+            || !SegmentHeaders.MARKER_INDEX.validate(buffer.getInt(end - ByteBufferUtils.INT_SIZE)) ) {
+            return end;
+        }
+        int count = buffer.getInt(end - 2 * ByteBufferUtils.INT_SIZE);
+        if ( count <= 0 || markerIndexLength(count) > buffer.remaining() ) {
+            return end;
+        }
+        return end - (int)markerIndexLength(count);
+    }
+    
+    static long markerIndexLength(int count) {
+        return ByteBufferUtils.LONG_SIZE + (long)ByteBufferUtils.INT_SIZE * (count - 1) + 3 * ByteBufferUtils.INT_SIZE;
+    }
+    
+    /**
+     * @param magic the last four bytes of a segment file
+     * @param count the four bytes before them
+     * @return the length of the footer from the close mark to the end of the file, 
+     *         or -1 if the file does not end in a footer
+     */
+    static long footerLength(int magic, int count) {
+        if ( count < 0 ) {
+            return -1;
+        }
+        long jumps = ByteBufferUtils.INT_SIZE + (long)ByteBufferUtils.INT_SIZE * count 
+            + ByteBufferUtils.INT_SIZE + ByteBufferUtils.INT_SIZE;
+        if ( SegmentHeaders.JUMP_LIST.validate(magic) ) {
+            return jumps;
+        } else if ( SegmentHeaders.MARKER_INDEX.validate(magic) && count > 0 ) {
+            return jumps + markerIndexLength(count);
+        } else {
+            return -1;
+        }
+    }
+    
+    static void checksum(Checksum crc, long value, int width) {
+        for (int shift=(width - 1) * Byte.SIZE;shift>=0;shift-=Byte.SIZE) {
+            crc.update((int)(value >>> shift));
+        }
+    }
+    
+    static class Footer {
+        private final long[] jumps;
+        private final long[] markers;
+
+        Footer(long[] jumps, long[] markers) {
+            this.jumps = jumps;
+            this.markers = markers;
+        }
+        
+        long[] getJumps() {
+            return jumps;
+        }
+        
+        /**
+         * @return the marker of each chunk in jump list order, null if the 
+         *         segment was closed without an index
+         */
+        long[] getMarkers() {
+            return markers;
+        }
+    }
 }
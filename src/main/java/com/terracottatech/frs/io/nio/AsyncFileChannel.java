@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only channel that keeps several positional writes in flight on an
+ * {@link AsynchronousFileChannel} rather than blocking on each one.
+ * <p>
+ * Each write is copied into a staging buffer owned by the channel and issued at the
+ * end of the previous one, so the caller may reuse its buffers as soon as write returns.
+ * Writes complete in any order.  The channel only counts a write as done once every
+ * write before it is done, so {@link #getCompletedMarker()} never passes a hole in the
+ * file.  force waits for the writes issued before it and then forces the file.
+ *
+ * @author mscott
+ */
+class AsyncFileChannel extends FileChannel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncFileChannel.class);
+
+    private static final int MIN_STAGE = 256 * 1024;
+
+    private final File file;
+    private final AsynchronousFileChannel channel;
+    private final int depth;
+    private final ArrayDeque<Write> pending = new ArrayDeque<Write>();
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+    private final CompletionHandler<Integer, Write> handler = new Handler();
+    private long logical;
+    private long position;
+    private long completed;
+    private long issuedMarker = Long.MIN_VALUE;
+    private long firstMarker = Long.MAX_VALUE;
+    private long completedMarker = Long.MIN_VALUE;
+    private IOException failure;
+
+    private static class Write {
+        private final ByteBuffer data;
+        private final long start;
+        private final long end;
+        private long marker = Long.MIN_VALUE;
+        private boolean done;
+
+        Write(ByteBuffer data, long start) {
+            this.data = data;
+            this.start = start;
+            this.end = start + data.remaining();
+        }
+    }
+
+    private static class Waiter {
+        private final long marker;
+        private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+        Waiter(long marker) {
+            this.marker = marker;
+        }
+    }
+
+    AsyncFileChannel(File file, AsynchronousFileChannel channel, int depth) throws IOException {
+        if ( depth < 1 ) {
+            throw new IllegalArgumentException("at least one write must be allowed in flight");
+        }
+        this.file = file;
+        this.channel = channel;
+        this.depth = depth;
+        this.logical = channel.size();
+        this.position = logical;
+        this.completed = logical;
+    }
+
+    /**
+     * create or truncate f
+     *
+     * @param depth the most writes to keep in flight
+     */
+    static FileChannel create(File f, int depth) throws IOException {
+        AsynchronousFileChannel channel = AsynchronousFileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        try {
+            return new AsyncFileChannel(f, channel, depth);
+        } catch ( IOException | RuntimeException e ) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private class Handler implements CompletionHandler<Integer, Write> {
+
+        @Override
+        public void completed(Integer result, Write w) {
+            if ( w.data.hasRemaining() ) {
+                //  short write, issue the rest
+                try {
+                    channel.write(w.data, w.end - w.data.remaining(), w, this);
+                } catch ( RuntimeException re ) {
+                    failed(re, w);
+                }
+            } else {
+                done(w);
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, Write w) {
+            List<Waiter> failed;
+            IOException cause;
+            synchronized ( AsyncFileChannel.this ) {
+                if ( failure == null ) {
+                    failure = ( exc instanceof IOException ) ? (IOException)exc :
+                        new IOException("async write to " + file + " failed at " + w.start, exc);
+                }
+                cause = failure;
+                failed = new ArrayList<Waiter>(waiters);
+                waiters.clear();
+                AsyncFileChannel.this.notifyAll();
+            }
+    //  every marker not yet landed sits at or after the failed write
+            for ( Waiter waiter : failed ) {
+                waiter.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private void done(Write w) {
+        List<Waiter> landed = null;
+        synchronized ( this ) {
+            w.done = true;
+            while ( !pending.isEmpty() && pending.peekFirst().done ) {
+                Write head = pending.removeFirst();
+                completed = head.end;
+                if ( head.marker != Long.MIN_VALUE ) {
+                    completedMarker = head.marker;
+                }
+                if ( free.size() < depth ) {
+                    head.data.clear();
+                    free.add(head.data);
+                }
+            }
+            while ( !waiters.isEmpty() && waiters.peekFirst().marker <= completedMarker ) {
+                if ( landed == null ) {
+                    landed = new ArrayList<Waiter>();
+                }
+                landed.add(waiters.removeFirst());
+            }
+            notifyAll();
+        }
+    //  complete outside the monitor, dependents run on this thread
+        if ( landed != null ) {
+            for ( Waiter waiter : landed ) {
+                waiter.future.complete(null);
+            }
+        }
+    }
+
+    private ByteBuffer stage(long size) throws IOException {
+        if ( size > Integer.MAX_VALUE ) {
+            throw new IOException("write too large for one stage " + size);
+        }
+        for ( Iterator<ByteBuffer> it = free.iterator(); it.hasNext(); ) {
+            ByteBuffer b = it.next();
+            if ( b.capacity() >= size ) {
+                it.remove();
+                return b;
+            }
+        }
+        if ( !free.isEmpty() ) {
+            free.removeFirst();
+        }
+        return ByteBuffer.allocateDirect((int)Math.max(size, MIN_STAGE));
+    }
+
+    private void checkFailure() throws IOException {
+        if ( failure != null ) {
+            throw new IOException(failure);
+        }
+    }
+
+    /**
+     * wait on this channel's monitor, interrupts close the channel like a blocking
+     * file channel does
+     */
+    private void await() throws IOException {
+        try {
+            wait();
+        } catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new ClosedByInterruptException();
+        }
+    }
+
+    private synchronized long append(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if ( !isOpen() ) {
+            throw new ClosedChannelException();
+        }
+        checkFailure();
+        if ( position != logical ) {
+            throw new IOException("async writes must append, position:" + position + " size:" + logical);
+        }
+        long size = 0;
+        for ( int x = offset; x < offset + length; x++ ) {
+            size += srcs[x].remaining();
+        }
+        if ( size == 0 ) {
+            return 0;
+        }
+        while ( pending.size() >= depth ) {
+            await();
+            checkFailure();
+        }
+        ByteBuffer data = stage(size);
+        for ( int x = offset; x < offset + length; x++ ) {
+            data.put(srcs[x]);
+        }
+        data.flip();
+        Write w = new Write(data, logical);
+        pending.add(w);
+        logical = w.end;
+        position = logical;
+        try {
+            channel.write(data, w.start, w, handler);
+        } catch ( RuntimeException re ) {
+            handler.failed(re, w);
+            checkFailure();
+        }
+        return size;
+    }
+
+    /**
+     * Tag the last write with the marker of the chunk it finished.
+     */
+    synchronized void mark(long marker) {
+        Write last = pending.peekLast();
+        if ( last != null ) {
+            last.marker = marker;
+        } else {
+            completedMarker = marker;
+        }
+        if ( firstMarker == Long.MAX_VALUE ) {
+            firstMarker = marker;
+        }
+        issuedMarker = marker;
+    }
+
+    synchronized long getCompletedMarker() {
+        return completedMarker;
+    }
+
+    /**
+     * @return completes once every write up to and including the one tagged with
+     *         marker has landed, or exceptionally with the first write that failed.
+     *         markers never issued to this channel are complete.
+     */
+    synchronized CompletableFuture<Void> whenWritten(long marker) {
+        if ( failure != null ) {
+            CompletableFuture<Void> failed = new CompletableFuture<Void>();
+            failed.completeExceptionally(failure);
+            return failed;
+        }
+        if ( marker < firstMarker || marker > issuedMarker || marker <= completedMarker ) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Waiter waiter = new Waiter(marker);
+        waiters.add(waiter);
+        return waiter.future;
+    }
+
+    /**
+     * @return true if the caller had to wait for the write of marker to complete
+     */
+    synchronized boolean waitForMarker(long marker) throws InterruptedException, IOException {
+        boolean waited = false;
+        while ( isOpen() && marker >= firstMarker && marker <= issuedMarker && marker > completedMarker ) {
+            checkFailure();
+    //  readers are not allowed to close the channel on interrupt
+            wait();
+            waited = true;
+        }
+        return waited;
+    }
+
+    private synchronized void drain(long through) throws IOException {
+        while ( completed < through ) {
+            checkFailure();
+            await();
+        }
+    }
+
+    /**
+     * wait for every write issued so far to land without forcing the file
+     */
+    synchronized void awaitWrites() throws IOException {
+        drain(logical);
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        awaitWrites();
+        try {
+            channel.force(metaData);
+        } catch ( ClosedChannelException closed ) {
+            close();
+            throw closed;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if ( read > 0 ) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long read = 0;
+        for ( int x = offset; x < offset + length; x++ ) {
+            while ( dsts[x].hasRemaining() ) {
+                int got = read(dsts[x]);
+                if ( got < 0 ) {
+                    return read == 0 ? -1 : read;
+                }
+                read += got;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int)append(new ByteBuffer[] {src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return append(srcs, offset, length);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        drain(Math.min(position + dst.remaining(), size()));
+        try {
+            return channel.read(dst, position).get();
+        } catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new ClosedByInterruptException();
+        } catch ( ExecutionException ee ) {
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        synchronized ( this ) {
+            if ( position != logical ) {
+                throw new IOException("async writes must append, position:" + position + " size:" + logical);
+            }
+            long restore = this.position;
+            try {
+                return (int)append(new ByteBuffer[] {src}, 0, 1);
+            } finally {
+                this.position = restore;
+            }
+        }
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        return logical;
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        force(false);
+        synchronized ( this ) {
+            if ( size < logical ) {
+                channel.truncate(size);
+                logical = size;
+                completed = size;
+            }
+            if ( position > logical ) {
+                position = logical;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        throw new UnsupportedOperationException("async channels only append");
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        throw new UnsupportedOperationException("async channels only append");
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        throw new UnsupportedOperationException("async channels only append");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        throw new UnsupportedOperationException("async channels only append");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        throw new UnsupportedOperationException("async channels only append");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized ( this ) {
+        //  writes in flight still own their buffers, let them land
+                while ( !pending.isEmpty() && failure == null ) {
+                    try {
+                        wait();
+                    } catch ( InterruptedException ie ) {
+                        interrupted = true;
+                    }
+                }
+                if ( failure != null ) {
+                    LOGGER.warn("closing " + file + " after a failed write", failure);
+                }
+                free.clear();
+                notifyAll();
+            }
+        } finally {
+            channel.close();
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
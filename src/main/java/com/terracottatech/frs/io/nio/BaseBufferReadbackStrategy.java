@@ -94,16 +94,6 @@ abstract class BaseBufferReadbackStrategy extends AbstractReadbackStrategy imple
     }
   }
 
-  protected ByteBuffer readFully(int amount, ByteBuffer get) throws IOException {
-    get.mark();
-    get.limit(get.position() + amount);
-    while (get.hasRemaining()) {
-      channel.read(get);
-    }
-    get.reset();
-    return get;
-  }
-
   protected long readFullyFromPos(int amount, ByteBuffer get, long position) throws IOException {
     get.mark();
     get.limit(get.position() + amount);
@@ -132,6 +122,53 @@ abstract class BaseBufferReadbackStrategy extends AbstractReadbackStrategy imple
     return get;
   }
 
+  /**
+   * @return the footer of a closed segment, read from the end of the file in one read,
+   *         or null if the segment was not closed or is too small to bother
+   */
+  protected Footer readFooter() throws IOException {
+    long capacity = channel.size();
+    if ( capacity <= 8192 ) {
+      return null;
+    }
+    ByteBuffer buffer = allocate(8);
+    int num;
+    int magic;
+    try {
+      readDirect(capacity - 8, buffer);
+      num = buffer.getInt();
+      magic = buffer.getInt();
+    } finally {
+      free(buffer);
+    }
+    long stretch = footerLength(magic, num);
+    if ( stretch < 0 || stretch >= capacity || stretch > Integer.MAX_VALUE ) {
+      return null;
+    }
+    ByteBuffer grab = allocate((int)stretch);
+    if ( grab == null ) {
+      return null;
+    }
+    try {
+      readDirect(capacity - stretch, grab);
+      return readFooter(grab);
+    } finally {
+      free(grab);
+    }
+  }
+
+  /**
+   * @param start offset of the chunk header
+   * @param end offset just past the chunk footer
+   * @return the chunk between start and end, read with one positional read when loaded
+   */
+  Chunk region(long start, long end) throws IOException {
+    if ( closeRequested ) {
+      throw new IOException("file closed");
+    }
+    return new VirtualChunk(start, end - start - 20);
+  }
+
   protected int writeDirect(long position, ByteBuffer get) throws IOException {
     throw new UnsupportedOperationException("read only");
   }
@@ -16,7 +16,6 @@
 package com.terracottatech.frs.io.nio;
 
 import com.terracottatech.frs.io.*;
-import com.terracottatech.frs.util.ByteBufferUtils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -67,43 +66,26 @@ class BufferedReadbackStrategy extends BaseBufferReadbackStrategy {
   }
 
     private boolean createIndex(boolean full) throws IOException {
-        long[] jumps = null;
         long lastKey = Long.MIN_VALUE;
-        long capacity = getChannel().size();
-        if ( capacity > 8192 ) {
-          ByteBuffer buffer = allocate(8);
-          int num;
-          int jump;
-          try {
-            readDirect(capacity - 8, buffer);
-            num = buffer.getInt();
-            jump = buffer.getInt();
-          } finally {
-            free(buffer);
-          }
-          if ( num >= 0 && SegmentHeaders.JUMP_LIST.validate(jump) ) {
-            int stretch = (num * ByteBufferUtils.INT_SIZE) + 8 + ByteBufferUtils.INT_SIZE;
-            if ( stretch < capacity ) {
-              ByteBuffer grab = allocate(stretch);
-              if ( grab != null ) {
-                try {
-                  readDirect(capacity - stretch, grab);
-                  jumps = readJumpList(grab);
-                } finally {
-                  free(grab);                   
-                }
-              }
-            }
-          }
-        }
+        Footer footer = readFooter();
+        long[] jumps = ( footer != null ) ? footer.getJumps() : null;
+        long[] markers = ( footer != null ) ? footer.getMarkers() : null;
         
         if ( jumps == null )  {
             return updateIndex();
         } else {
             ByteBuffer buffer = allocate(16);
             try {
-              final long first = getChannel().position();
-              if ( full || jumps.length == 0 ) {
+              final long first = length;
+              if ( markers != null ) {
+ //  the footer carries every marker, no need to visit the chunks
+                long last = first;
+                for (int x=0;x<jumps.length;x++) {
+                    boundaries.put(markers[x],new Marker(last, markers[x]));
+                    last = jumps[x];
+                }
+                lastKey = markers[markers.length-1];
+              } else if ( full || jumps.length == 0 ) {
                 long last = first;
                 buffer.mark();
                 for ( long next : jumps ) {
@@ -143,30 +125,29 @@ class BufferedReadbackStrategy extends BaseBufferReadbackStrategy {
     
     private boolean updateIndex() throws IOException {
       FileChannel channel = getChannel();
-        if ( length + 4 > getChannel().size() ) {
+        if ( length + 4 > channel.size() ) {
             return isConsistent();
-        } else {
-            channel.position(length);
         }
-        long start = channel.position();
+  //  positional reads only, readers of indexed chunks share the channel
+        long start = length;
+        long currentPos = length;
         ByteBuffer buffer = allocate(32);
         int b = buffer.position();
         int e = buffer.limit();
         int chunkStart = 0;
         try {
           try {
-              readFully(4, buffer);
+              currentPos = readFullyFromPos(4, buffer, currentPos);
           } catch ( IOException ioe ) {
-              LOGGER.warn("bad length " + length + " " + channel.position() + " " + channel.size());
+              LOGGER.warn("bad length " + length + " " + currentPos + " " + channel.size());
               throw ioe;
           }
           chunkStart = buffer.getInt();
           while (SegmentHeaders.CHUNK_START.validate(chunkStart)) {
               try {
-                  readFully(8, buffer);
+                  currentPos = readFullyFromPos(8, buffer, currentPos);
                   long len = buffer.getLong();
-                  channel.position(channel.position() + len);
-                  readFully(20, buffer);
+                  currentPos = readFullyFromPos(20, buffer, currentPos + len);
                   if ( len != buffer.getLong() ) {
                       throw new IOException("chunk corruption - head and tail lengths do not match");
                   }
@@ -175,11 +156,11 @@ class BufferedReadbackStrategy extends BaseBufferReadbackStrategy {
                   if ( !SegmentHeaders.FILE_CHUNK.validate(buffer.getInt()) ) {
                       throw new IOException("chunk corruption - file chunk magic is missing");
                   } else {
-                      start = getChannel().position();
+                      start = currentPos;
                   }
                   buffer.position(b).limit(e);
-                  if ( channel.position() < channel.size() ) {
-                      readFully(4, buffer);
+                  if ( currentPos < channel.size() ) {
+                      currentPos = readFullyFromPos(4, buffer, currentPos);
                       chunkStart = buffer.getInt();
                   } else {
                       break;
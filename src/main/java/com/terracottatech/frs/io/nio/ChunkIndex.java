@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2013-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import com.terracottatech.frs.util.ByteBufferUtils;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Where the most recent chunks of the log live, by marker.  Each entry is the 
+ * maximum marker of a chunk, the segment it was written to and where the chunk 
+ * starts and ends in that segment, kept in a fixed size ring of direct memory.
+ * <p>
+ * The writer appends an entry per chunk and recovery prepends the chunks it 
+ * replays, newest first.  When the ring is full the oldest entry is dropped.  The 
+ * index only answers for the unbroken run of markers it holds, anything older is 
+ * left to the segment scan.
+ *
+ * @author mscott
+ */
+class ChunkIndex {
+    //  maximum marker, chunk start, chunk length and segment id
+    static final int ENTRY_SIZE = 2 * ByteBufferUtils.LONG_SIZE + 2 * ByteBufferUtils.INT_SIZE;
+
+    private final ByteBuffer entries;
+    private final int capacity;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //  logical positions of the oldest entry and one past the newest
+    private long head = 0;
+    private long tail = 0;
+    //  markers at or below floor are not covered
+    private long floor = Long.MAX_VALUE;
+
+    /**
+     * @param bytes the most memory the index may use
+     */
+    ChunkIndex(long bytes) {
+        long count = Math.min(bytes / ENTRY_SIZE, Integer.MAX_VALUE / ENTRY_SIZE);
+        if ( count < 1 ) {
+            throw new IllegalArgumentException("chunk index of " + bytes + " bytes holds no entries");
+        }
+        this.capacity = (int)count;
+        this.entries = ByteBuffer.allocateDirect(capacity * ENTRY_SIZE);
+    }
+    
+    static final class Location {
+        private final int segment;
+        private final long start;
+        private final long end;
+
+        Location(int segment, long start, long end) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+        }
+
+        int getSegment() {
+            return segment;
+        }
+
+        /**
+         * @return offset of the chunk header in the segment
+         */
+        long getStart() {
+            return start;
+        }
+
+        /**
+         * @return offset just past the chunk footer, the jump list entry of the chunk
+         */
+        long getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "Location{" + "segment=" + segment + ", start=" + start + ", end=" + end + '}';
+        }
+    }
+    
+    private int slot(long position) {
+        return (int)Math.floorMod(position, (long)capacity) * ENTRY_SIZE;
+    }
+    
+    private long marker(long position) {
+        return entries.getLong(slot(position));
+    }
+    
+    private void put(long position, long marker, int segment, long start, long end) {
+        int slot = slot(position);
+        entries.putLong(slot, marker);
+        entries.putLong(slot + ByteBufferUtils.LONG_SIZE, start);
+        entries.putInt(slot + 2 * ByteBufferUtils.LONG_SIZE, (int)(end - start));
+        entries.putInt(slot + 2 * ByteBufferUtils.LONG_SIZE + ByteBufferUtils.INT_SIZE, segment);
+    }
+    
+    private Location get(long position) {
+        int slot = slot(position);
+        long start = entries.getLong(slot + ByteBufferUtils.LONG_SIZE);
+        int length = entries.getInt(slot + 2 * ByteBufferUtils.LONG_SIZE);
+        int segment = entries.getInt(slot + 2 * ByteBufferUtils.LONG_SIZE + ByteBufferUtils.INT_SIZE);
+        return new Location(segment, start, start + length);
+    }
+    
+    private static boolean fits(long start, long end) {
+        return start >= 0 && end > start && end - start <= Integer.MAX_VALUE;
+    }
+    
+    /**
+     * index a chunk the writer just appended.  a chunk that does not follow the 
+     * newest entry starts the index over from that chunk.
+     * 
+     * @param previous the maximum marker of the chunk before this one
+     * @param marker the maximum marker of the chunk
+     */
+    void append(long previous, long marker, int segment, long start, long end) {
+        Lock writer = lock.writeLock();
+        writer.lock();
+        try {
+            if ( !fits(start, end) || marker <= previous ) {
+                clear(marker);
+                return;
+            }
+            if ( head == tail || marker(tail - 1) != previous ) {
+                head = 0;
+                tail = 0;
+                floor = previous;
+            } else if ( tail - head == capacity ) {
+                floor = marker(head);
+                head += 1;
+            }
+            put(tail, marker, segment, start, end);
+            tail += 1;
+        } finally {
+            writer.unlock();
+        }
+    }
+    
+    /**
+     * index a chunk found walking the log backwards
+     * 
+     * @param previous the maximum marker of the chunk before this one
+     * @param marker the maximum marker of the chunk
+     * @return false if the chunk is not the one just before the oldest entry or 
+     *         the index is full, older chunks will not be taken either
+     */
+    boolean prepend(long previous, long marker, int segment, long start, long end) {
+        Lock writer = lock.writeLock();
+        writer.lock();
+        try {
+            if ( !fits(start, end) || marker <= previous ) {
+                return false;
+            }
+            if ( head == tail ) {
+                head = 0;
+                tail = 0;
+            } else if ( marker != floor || tail - head == capacity ) {
+                return false;
+            }
+            head -= 1;
+            put(head, marker, segment, start, end);
+            floor = previous;
+            return true;
+        } finally {
+            writer.unlock();
+        }
+    }
+    
+    /**
+     * @return where the chunk holding marker is or null if the index does not cover it
+     */
+    Location find(long marker) {
+        Lock reader = lock.readLock();
+        reader.lock();
+        try {
+            if ( head == tail || marker <= floor || marker > marker(tail - 1) ) {
+                return null;
+            }
+            long low = head;
+            long high = tail - 1;
+            while ( low < high ) {
+                long mid = low + (high - low) / 2;
+                if ( marker(mid) < marker ) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return get(low);
+        } finally {
+            reader.unlock();
+        }
+    }
+    
+    /**
+     * drop the entries of segments below segment, they are gone from the log
+     */
+    void trim(int segment) {
+        Lock writer = lock.writeLock();
+        writer.lock();
+        try {
+            while ( head < tail && get(head).getSegment() < segment ) {
+                floor = marker(head);
+                head += 1;
+            }
+        } finally {
+            writer.unlock();
+        }
+    }
+    
+    private void clear(long marker) {
+        head = 0;
+        tail = 0;
+        floor = marker;
+    }
+    
+    int size() {
+        Lock reader = lock.readLock();
+        reader.lock();
+        try {
+            return (int)(tail - head);
+        } finally {
+            reader.unlock();
+        }
+    }
+    
+    int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * @return bytes of direct memory held by the index
+     */
+    long getMemorySize() {
+        return (long)capacity * ENTRY_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkIndex{" + "entries=" + size() + ", capacity=" + capacity + '}';
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2013-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only channel over a file opened with O_DIRECT so segment writes bypass the 
+ * page cache.
+ * <p>
+ * Direct writes must start on a block boundary and cover whole blocks.  Appends are 
+ * staged in an aligned buffer holding the partially filled last block of the file, the
+ * block is rewritten zero padded on each append.  The padding stays on disk while the 
+ * file is written, recovery stops at the zeros, and the file is only truncated back to 
+ * its logical length on {@link #truncate(long)} and on close so an append only changes 
+ * the file size a sync has to persist when it starts a new block.  Reads go through a 
+ * normal channel opened on demand.
+ * <p>
+ * O_DIRECT is only reachable from java 10 on, {@link #create(File)} returns null when the 
+ * runtime or the filesystem does not support it.
+ *
+ * @author mscott
+ */
+class DirectFileChannel extends FileChannel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectFileChannel.class);
+
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int STAGE_SIZE = 1024 * 1024;
+
+    private static final OpenOption DIRECT = lookupDirect();
+    private static final MethodHandle BLOCK_SIZE = lookup(FileStore.class, "getBlockSize", MethodType.methodType(long.class));
+    private static final MethodHandle ALIGNED_SLICE = lookup(ByteBuffer.class, "alignedSlice", MethodType.methodType(ByteBuffer.class, int.class));
+    private static volatile boolean warned = false;
+
+    private final File file;
+    private final FileChannel direct;
+    private final int blockSize;
+    private final ByteBuffer stage;
+    private FileChannel reader;
+    private long blockStart;
+    private int tail;
+    private long logical;
+    private long position;
+
+    DirectFileChannel(File file, FileChannel direct, int blockSize, ByteBuffer stage) throws IOException {
+        if ( stage.capacity() % blockSize != 0 ) {
+            throw new IllegalArgumentException("stage must be a whole number of blocks");
+        }
+        this.file = file;
+        this.direct = direct;
+        this.blockSize = blockSize;
+        this.stage = stage;
+        this.logical = direct.size();
+        if ( logical != 0 ) {
+            truncate(logical);
+        }
+    }
+
+    static boolean isSupported() {
+        return DIRECT != null && ALIGNED_SLICE != null;
+    }
+
+    /**
+     * create or truncate f and open it for direct writes.
+     * 
+     * @return the channel or null if direct IO is not available for this file, the caller 
+     *         falls back to buffered IO
+     */
+    static FileChannel create(File f) {
+        if ( !isSupported() ) {
+            warnOnce("direct IO is not supported by this java runtime, using buffered IO");
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            int block = blockSize(f.getParentFile());
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, 
+                StandardOpenOption.WRITE, DIRECT);
+            ByteBuffer stage = alignedBuffer(STAGE_SIZE, block);
+            //  some filesystems accept the flag and fail the first write
+            ByteBuffer probe = stage.duplicate();
+            probe.limit(block);
+            channel.write(probe, 0);
+            channel.truncate(0);
+            return new DirectFileChannel(f, channel, block, stage);
+        } catch ( IOException | UnsupportedOperationException | IllegalArgumentException e ) {
+            warnOnce("direct IO is not supported for " + f.getParentFile() + ", using buffered IO (" + e + ")");
+            if ( channel != null ) {
+                try {
+                    channel.close();
+                } catch ( IOException ioe ) {
+                    LOGGER.debug("closing direct channel", ioe);
+                }
+            }
+            return null;
+        }
+    }
+
+    static ByteBuffer alignedBuffer(int size, int alignment) {
+        ByteBuffer raw = ByteBuffer.allocateDirect(size + alignment);
+        try {
+            ByteBuffer aligned = (ByteBuffer)ALIGNED_SLICE.invoke(raw, alignment);
+            aligned.limit(size);
+            return aligned.slice();
+        } catch ( Throwable t ) {
+            throw new UnsupportedOperationException(t);
+        }
+    }
+
+    private static int blockSize(File dir) throws IOException {
+        if ( BLOCK_SIZE != null ) {
+            try {
+                long size = (long)BLOCK_SIZE.invoke(Files.getFileStore(dir.toPath()));
+                if ( size > 0 && size <= STAGE_SIZE && Long.bitCount(size) == 1 ) {
+                    return (int)size;
+                }
+            } catch ( IOException ioe ) {
+                throw ioe;
+            } catch ( Throwable t ) {
+                //  fall through to the default
+            }
+        }
+        return DEFAULT_BLOCK_SIZE;
+    }
+
+    private static OpenOption lookupDirect() {
+        try {
+            Class<?> options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for ( Object option : options.getEnumConstants() ) {
+                if ( "DIRECT".equals(((Enum<?>)option).name()) ) {
+                    return (OpenOption)option;
+                }
+            }
+        } catch ( ClassNotFoundException | LinkageError e ) {
+            //  not available
+        }
+        return null;
+    }
+
+    private static MethodHandle lookup(Class<?> type, String name, MethodType signature) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(type, name, signature);
+        } catch ( NoSuchMethodException | IllegalAccessException e ) {
+            return null;
+        }
+    }
+
+    private static void warnOnce(String message) {
+        if ( !warned ) {
+            warned = true;
+            LOGGER.warn(message);
+        }
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    private synchronized long append(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if ( position != logical ) {
+            throw new IOException("direct writes must append, position:" + position + " size:" + logical);
+        }
+        try {
+            return stage(srcs, offset, length);
+        } catch ( ClosedChannelException closed ) {
+        //  an interrupt closed the direct channel, close this one too so callers see it
+            close();
+            throw closed;
+        }
+    }
+
+    private long stage(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long total = 0;
+        stage.clear().position(tail);
+        for ( int x = offset; x < offset + length; x++ ) {
+            ByteBuffer src = srcs[x];
+            while ( src.hasRemaining() ) {
+                if ( !stage.hasRemaining() ) {
+                    flush();
+                }
+                int move = Math.min(src.remaining(), stage.remaining());
+                ByteBuffer piece = src.duplicate();
+                piece.limit(piece.position() + move);
+                stage.put(piece);
+                src.position(src.position() + move);
+                total += move;
+            }
+        }
+        if ( stage.position() > tail ) {
+            flush();
+        }
+        position = logical;
+        return total;
+    }
+
+    //  write the staged blocks, zero padding the last one, and keep the partial block for the next append
+    private void flush() throws IOException {
+        int used = stage.position();
+        int padded = ( used + blockSize - 1 ) / blockSize * blockSize;
+        while ( stage.position() < padded ) {
+            stage.put((byte)0);
+        }
+        ByteBuffer out = stage.duplicate();
+        out.flip();
+        long at = blockStart;
+        while ( out.hasRemaining() ) {
+            at += direct.write(out, at);
+        }
+        logical = blockStart + used;
+        int keep = used % blockSize;
+        int whole = used - keep;
+        if ( keep > 0 && whole > 0 ) {
+            ByteBuffer partial = stage.duplicate();
+            partial.limit(used).position(whole);
+            ByteBuffer front = stage.duplicate();
+            front.clear();
+            front.put(partial);
+        }
+        blockStart += whole;
+        tail = keep;
+        stage.clear().position(tail);
+    }
+
+    private synchronized FileChannel reader() throws IOException {
+        if ( reader == null || !reader.isOpen() ) {
+            reader = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return reader;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = reader().read(dst, position);
+        if ( read > 0 ) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        FileChannel r = reader();
+        synchronized ( r ) {
+            r.position(position);
+            long read = r.read(dsts, offset, length);
+            if ( read > 0 ) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int)append(new ByteBuffer[] {src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return append(srcs, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        return logical;
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long size) throws IOException {
+        if ( size < logical ) {
+            logical = size;
+        }
+    //  also drops the padding past the logical end
+        if ( direct.size() > logical ) {
+            direct.truncate(logical);
+        }
+        blockStart = logical - ( logical % blockSize );
+        tail = (int)( logical - blockStart );
+        ByteBuffer partial = stage.duplicate();
+        partial.clear().limit(tail);
+        long at = blockStart;
+        while ( partial.hasRemaining() ) {
+            int read = reader().read(partial, at);
+            if ( read < 0 ) {
+                throw new IOException("short read of the last block of " + file);
+            }
+            at += read;
+        }
+        if ( position > logical ) {
+            position = logical;
+        }
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        direct.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return reader().transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        throw new UnsupportedOperationException("direct channels only append");
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return reader().read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        synchronized ( this ) {
+            if ( position != logical ) {
+                throw new IOException("direct writes must append, position:" + position + " size:" + logical);
+            }
+            long restore = this.position;
+            this.position = position;
+            try {
+                return (int)append(new ByteBuffer[] {src}, 0, 1);
+            } finally {
+                this.position = restore;
+            }
+        }
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        if ( mode != MapMode.READ_ONLY ) {
+            throw new UnsupportedOperationException("direct channels only map for reading");
+        }
+        return reader().map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return direct.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return direct.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        try {
+            trimPadding();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void trimPadding() throws IOException {
+        long size;
+        synchronized ( this ) {
+            size = logical;
+        }
+        if ( direct.isOpen() ) {
+            if ( direct.size() > size ) {
+                direct.truncate(size);
+            }
+            return;
+        }
+    //  an interrupt closed the direct channel, trim through a plain one
+        try (FileChannel plain = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            if ( plain.size() > size ) {
+                plain.truncate(size);
+            }
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        try {
+            direct.close();
+        } finally {
+            synchronized ( this ) {
+                if ( reader != null ) {
+                    reader.close();
+                }
+            }
+        }
+    }
+}
@@ -35,15 +35,26 @@ public class IntegrityReadbackStrategy extends AbstractReadbackStrategy {
     private static final Logger LOGGER = LoggerFactory.getLogger(IOManager.class);
     private final FileBuffer buffer;
     private final WritingSegmentJumpList jumpList = new WritingSegmentJumpList();
+    private WritingSegmentJumpList markers = new WritingSegmentJumpList();
     private long lastGood = 0;
     private long lastMarker = 0;
+    private final long baseMarker;
     private boolean primed = false;
     private boolean done = false;
     private int exitStatus;
     
 
     public IntegrityReadbackStrategy(FileBuffer src) {
+        this(src, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param baseMarker chunks with a lower marker, or a marker that does not increase, 
+     *        are left over from the segment a recycled file used to hold and end the scan
+     */
+    public IntegrityReadbackStrategy(FileBuffer src, long baseMarker) {
         buffer = src;
+        this.baseMarker = baseMarker;
     }
 
     public FileBuffer getFileBuffer() {
@@ -106,11 +117,21 @@ public class IntegrityReadbackStrategy extends AbstractReadbackStrategy {
                 if (clen != size) {
                     throw new IOException("inconsistent");
                 }
-                lastMarker = buffer.getLong();
+                long marker = buffer.getLong();
+                if (baseMarker != Long.MIN_VALUE && (marker < baseMarker || marker <= lastMarker)) {
+                    throw new IOException("stale chunk with marker " + marker + " after " + lastMarker);
+                }
+                if (markers != null && !WritingSegment.isIndexable(markers, lastMarker, marker)) {
+                    markers = null;
+                }
+                lastMarker = marker;
                 if (SegmentHeaders.FILE_CHUNK.validate(buffer.getInt())) {
                     lastGood = buffer.position();
                 }
                 jumpList.add(lastGood);
+                if (markers != null) {
+                    markers.add(marker);
+                }
             } else {
                 throw new IOException(new String(check));
             }
@@ -145,6 +166,13 @@ public class IntegrityReadbackStrategy extends AbstractReadbackStrategy {
     WritingSegmentJumpList getJumpList() {
         return jumpList;
     }
+    
+    /**
+     * @return the marker of each chunk in the jump list, null if they can not be indexed
+     */
+    WritingSegmentJumpList getMarkers() {
+        return markers;
+    }
 
     void clear() {
         buffer.clear();
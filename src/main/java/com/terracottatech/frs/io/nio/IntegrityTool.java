@@ -69,7 +69,11 @@ public class IntegrityTool {
         if ( !dir.exists() || !dir.isDirectory() ) {
             throw new IOException("target directory does not exist");
         }
-        NIOSegmentList list = new NIOSegmentList(dir);
+        List<File> dirs = SegmentDirectories.all(dir);
+        if ( dirs.size() > 1 ) {
+            System.out.println("segments striped across " + dirs);
+        }
+        NIOSegmentList list = new NIOSegmentList(dirs);
         
         if ( list.getCount() == 0 ) {
             throw new IOException("no segment files for in the specified directory");
@@ -89,7 +93,7 @@ public class IntegrityTool {
     
     
     public long examineSegmentFile(File f) throws Exception {
-        if ( dir != null && !f.getParentFile().equals(dir) ) {
+        if ( dir != null && !SegmentDirectories.all(dir).contains(f.getParentFile()) ) {
             throw new IOException("segment is not part of the current stream");
         }
 
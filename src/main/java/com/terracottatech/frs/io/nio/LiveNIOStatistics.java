@@ -18,6 +18,7 @@ package com.terracottatech.frs.io.nio;
 import com.terracottatech.frs.io.IOStatistics;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 /**
  *
@@ -25,14 +26,15 @@ import java.io.IOException;
  */
 class LiveNIOStatistics implements IOStatistics {
   
-  private final File home;
+  //  home and every stripe on a file store of its own
+  private final List<File> directories;
   private final NIOStreamImpl stream;
   private final long written;
   private final long read;
   
 
-  LiveNIOStatistics(File home, NIOStreamImpl stream, long written, long read) {
-    this.home = home;
+  LiveNIOStatistics(List<File> directories, NIOStreamImpl stream, long written, long read) {
+    this.directories = directories;
     this.stream = stream;
     this.written = written;
     this.read = read;
@@ -40,7 +42,11 @@ class LiveNIOStatistics implements IOStatistics {
 
   @Override
   public long getTotalAvailable() {
-    return home.getUsableSpace();
+    long available = 0;
+    for ( File dir : directories ) {
+      available += dir.getUsableSpace();
+    }
+    return available;
   }
 
   @Override
@@ -76,10 +82,15 @@ class LiveNIOStatistics implements IOStatistics {
     }
   }
 
+  @Override
+  public long getIndexSize() {
+    return this.stream.getChunkIndexSize();
+  }
+
   @Override
   public String toString() {
-    return "LiveNIOStatistics{" + "home=" + home + ", written=" + written + ", read=" + read + 
-        " used:" + getTotalUsed() + 
+    return "LiveNIOStatistics{" + "directories=" + directories + ", written=" + written + ", read=" + read + 
+        " used:" + getTotalUsed() + " index:" + getIndexSize() + 
         '}';
   }
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2013-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only channel that copies writes into a read-write mapping of the file rather 
+ * than calling write for each chunk.  The file is grown a window at a time and forced 
+ * with a ranged msync of the bytes written since the last force.
+ * <p>
+ * The file is longer than the data written until the channel is closed and truncated.  
+ * The readback strategies stop at the first chunk without a valid start marker so the 
+ * zeroed tail of the window reads like an unfinished write, and recovery truncates it 
+ * when it limits an unclosed segment.
+ *
+ * @author mscott
+ */
+class MappedFileChannel extends FileChannel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileChannel.class);
+
+    static final int DEFAULT_WINDOW = 16 * 1024 * 1024;
+    //  java 13 and later
+    private static final MethodHandle RANGED_FORCE = lookupRangedForce();
+
+    private final File file;
+    private final FileChannel channel;
+    private final int window;
+    private final List<Window> dirty = new ArrayList<Window>(2);
+    //  orders forces so one never returns ahead of an earlier one still in msync, 
+    //  taken before the channel monitor
+    private final Object forceLock = new Object();
+    private Window current;
+    private long logical;
+    private long position;
+    private boolean grown;
+
+    private static class Window {
+        private final MappedByteBuffer map;
+        private final long start;
+        private int forced;
+
+        Window(MappedByteBuffer map, long start) {
+            this.map = map;
+            this.start = start;
+        }
+    }
+
+    MappedFileChannel(File file, FileChannel channel, int window) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.window = window;
+        this.logical = channel.size();
+        this.position = logical;
+        current = map(logical);
+    }
+
+    /**
+     * create or truncate f and map the first window
+     */
+    static FileChannel create(File f, int window) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.setLength(0);
+            return new MappedFileChannel(f, raf.getChannel(), window);
+        } catch ( IOException ioe ) {
+            raf.close();
+            throw ioe;
+        }
+    }
+
+    private static MethodHandle lookupRangedForce() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(MappedByteBuffer.class, "force", 
+                MethodType.methodType(MappedByteBuffer.class, int.class, int.class));
+        } catch ( NoSuchMethodException | IllegalAccessException e ) {
+            return null;
+        }
+    }
+
+    private Window map(long start) throws IOException {
+        Window w = new Window(channel.map(MapMode.READ_WRITE, start, window), start);
+        grown = true;
+        dirty.add(w);
+        return w;
+    }
+
+    private synchronized long append(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if ( position != logical ) {
+            throw new IOException("mapped writes must append, position:" + position + " size:" + logical);
+        }
+        long total = 0;
+        for ( int x = offset; x < offset + length; x++ ) {
+            ByteBuffer src = srcs[x];
+            while ( src.hasRemaining() ) {
+                if ( !current.map.hasRemaining() ) {
+                    try {
+                        current = map(current.start + window);
+                    } catch ( ClosedChannelException closed ) {
+                        close();
+                        throw closed;
+                    }
+                }
+                int move = Math.min(src.remaining(), current.map.remaining());
+                ByteBuffer piece = src.duplicate();
+                piece.limit(piece.position() + move);
+                current.map.put(piece);
+                src.position(src.position() + move);
+                total += move;
+            }
+        }
+        logical = current.start + current.map.position();
+        position = logical;
+        return total;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        synchronized ( forceLock ) {
+            try {
+                forceWindows(metaData);
+            } catch ( ClosedChannelException closed ) {
+            //  an interrupt closed the file channel, close this one too so callers see it
+                close();
+                throw closed;
+            }
+        }
+    }
+
+    /**
+     * the dirty ranges are taken under the monitor and synced outside it so appends 
+     * keep copying into the mapping while the msync runs
+     */
+    private void forceWindows(boolean metaData) throws IOException {
+        List<Window> windows;
+        int[] ends;
+        boolean length;
+        synchronized ( this ) {
+            windows = new ArrayList<Window>(dirty);
+            ends = new int[windows.size()];
+            for ( int x = 0; x < ends.length; x++ ) {
+                ends[x] = windows.get(x).map.position();
+            }
+            dirty.clear();
+            if ( current != null ) {
+                dirty.add(current);
+            }
+            length = grown;
+            grown = false;
+        }
+        try {
+            for ( int x = 0; x < ends.length; x++ ) {
+                Window w = windows.get(x);
+                if ( ends[x] > w.forced ) {
+                    force(w.map, w.forced, ends[x] - w.forced);
+                    w.forced = ends[x];
+                }
+            }
+        //  msync does not cover the file length, a new window changed it
+            if ( length || metaData ) {
+                channel.force(metaData);
+            }
+        } catch ( IOException | RuntimeException e ) {
+            synchronized ( this ) {
+                for ( Window w : windows ) {
+                    if ( !dirty.contains(w) ) {
+                        dirty.add(w);
+                    }
+                }
+                grown |= length;
+            }
+            throw e;
+        }
+    }
+
+    private static void force(MappedByteBuffer map, int index, int length) {
+        if ( RANGED_FORCE != null ) {
+            try {
+                RANGED_FORCE.invoke(map, index, length);
+                return;
+            } catch ( Throwable t ) {
+                //  fall back to the whole window
+            }
+        }
+        map.force();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = channel.read(dst, position);
+        if ( read > 0 ) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long read = 0;
+        for ( int x = offset; x < offset + length; x++ ) {
+            while ( dsts[x].hasRemaining() ) {
+                int got = read(dsts[x]);
+                if ( got < 0 ) {
+                    return read == 0 ? -1 : read;
+                }
+                read += got;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int)append(new ByteBuffer[] {src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return append(srcs, offset, length);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if ( position >= logical ) {
+            return -1;
+        }
+        if ( dst.remaining() > logical - position ) {
+            ByteBuffer limited = dst.duplicate();
+            limited.limit(limited.position() + (int)(logical - position));
+            int read = channel.read(limited, position);
+            dst.position(limited.position());
+            return read;
+        }
+        return channel.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        synchronized ( this ) {
+            if ( position != logical ) {
+                throw new IOException("mapped writes must append, position:" + position + " size:" + logical);
+            }
+            long restore = this.position;
+            try {
+                return (int)append(new ByteBuffer[] {src}, 0, 1);
+            } finally {
+                this.position = restore;
+            }
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        return logical;
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        synchronized ( forceLock ) {
+            synchronized ( this ) {
+                if ( size < logical ) {
+                    force(false);
+                    dirty.clear();
+                    logical = size;
+                    channel.truncate(size);
+                    current = map(size);
+                }
+                if ( position > logical ) {
+                    position = logical;
+                }
+                return this;
+            }
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return channel.transferTo(position, Math.min(count, logical - position), target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        throw new UnsupportedOperationException("mapped channels only append");
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return channel.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return channel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return channel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        try {
+            synchronized ( this ) {
+                dirty.clear();
+                current = null;
+                if ( channel.isOpen() && channel.size() != logical ) {
+                    try {
+                        channel.truncate(logical);
+                        channel.force(true);
+                    } catch ( IOException ioe ) {
+                        LOGGER.warn("unable to trim mapped segment " + file + " to " + logical, ioe);
+                    }
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -86,8 +86,8 @@ class MappedReadbackStrategy extends AbstractReadbackStrategy implements Closeab
     }
 
     private void createIndex(boolean full) throws IOException {
-        long[] jumps = readJumpList(data.getBuffers()[0]);
-        if ( jumps == null )  {
+        Footer footer = readFooter(data.getBuffers()[0]);
+        if ( footer == null )  {
             long start = data.position();
             ByteBuffer[] chunk = readChunk(data);
             while (chunk != null) {
@@ -103,12 +103,17 @@ class MappedReadbackStrategy extends AbstractReadbackStrategy implements Closeab
                 data.truncate(start);
             }
         } else {
+            long[] jumps = footer.getJumps();
+            long[] markers = footer.getMarkers();
             long last = data.position();
             long marker = 0;
-            for ( long next : jumps ) {
+            for (int x=0;x<jumps.length;x++) {
+                long next = jumps[x];
                 try {
  //  don't care about marker unless random access
-                  if ( full ) {
+                  if ( markers != null ) {
+                    marker = markers[x];
+                  } else if ( full ) {
                     marker = data.getLong(next - 12);
                   } else {
                     marker++;
@@ -122,7 +127,7 @@ class MappedReadbackStrategy extends AbstractReadbackStrategy implements Closeab
             }
 // replace the last item with the real marker number so getMaximumMarker works
             if ( !boundaries.isEmpty() ) {
-              updateMaxMarker(data.getLong(last - 12));
+              updateMaxMarker(( markers != null ) ? markers[markers.length-1] : data.getLong(last - 12));
             }
             source.close();
         }
@@ -16,7 +16,6 @@
 package com.terracottatech.frs.io.nio;
 
 import com.terracottatech.frs.io.*;
-import com.terracottatech.frs.util.ByteBufferUtils;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -147,45 +146,27 @@ class MinimalReadbackStrategy extends BaseBufferReadbackStrategy {
         
     private boolean createIndex() throws IOException {
       FileChannel channel = getChannel();
-      long[] jumpList = null;
-        long capacity = channel.size();
-        if ( capacity > 8192 ) {
-          ByteBuffer buffer = allocate(8);
-          int num;
-          int jump;
-          try {
-            readDirect(capacity - 8, buffer);
-            num = buffer.getInt();
-            jump = buffer.getInt();
-          } finally {
-            free(buffer);
-          }
-          if ( num >= 0 && SegmentHeaders.JUMP_LIST.validate(jump) ) {
-            long stretch = ((long) num * ByteBufferUtils.INT_SIZE) + 8 + ByteBufferUtils.INT_SIZE;
-            if ( stretch < capacity ) {
-              ByteBuffer grab = allocate((int) stretch);
-              if ( grab != null ) {
-                try {
-                  readDirect(capacity - stretch, grab);
-                  jumpList = readJumpList(grab);
-                } finally {
-                  free(grab);                   
-                }
-              }
-            }
-          }
-        }
+        Footer footer = readFooter();
         
-        if ( jumpList == null )  {
+        if ( footer == null )  {
             return updateIndex();
         } else {
+            long[] jumpList = footer.getJumps();
+            long[] markers = footer.getMarkers();
             index.append(jumpList);
-            ByteBuffer buffer = allocate(16);
-            try {
-              long lastKey = readMark(jumpList.length-1, buffer);
-              seal(true, lastKey);
-            } finally {
-              free(buffer);
+            if ( markers != null ) {
+              for (int x=0;x<markers.length;x++) {
+                index.cache(x, markers[x]);
+              }
+              seal(true, markers[markers.length-1]);
+            } else {
+              ByteBuffer buffer = allocate(16);
+              try {
+                long lastKey = readMark(jumpList.length-1, buffer);
+                seal(true, lastKey);
+              } finally {
+                free(buffer);
+              }
             }
             length = channel.size();
             return true;
@@ -196,8 +177,6 @@ class MinimalReadbackStrategy extends BaseBufferReadbackStrategy {
       FileChannel channel = getChannel();
         if ( length + 4 > channel.size() ) {
             return isConsistent();
-        } else {
-            channel.position(length);
         }
         ByteBuffer buffer = allocate(32);
         int b = buffer.position();
@@ -209,7 +188,7 @@ class MinimalReadbackStrategy extends BaseBufferReadbackStrategy {
           try {
               currentPos = readFullyFromPos(4, buffer, currentPos);
           } catch ( IOException ioe ) {
-              System.out.println("bad length " + length + " " + channel.position() + " " + channel.size());
+              LOGGER.warn("bad length " + length + " " + currentPos + " " + channel.size());
               throw ioe;
           }
           chunkStart = buffer.getInt();
@@ -254,6 +233,32 @@ class MinimalReadbackStrategy extends BaseBufferReadbackStrategy {
         return isConsistent();
     }     
 
+    /**
+     * prepend every chunk indexed so far to chunks, newest first, until it refuses one
+     *
+     * @param base the base marker of the segment, the first chunk holds the markers from it
+     */
+    void indexChunks(ChunkIndex chunks, int segment, long base) throws IOException {
+      ByteBuffer buf = allocate(8);
+      buf.mark();
+      try {
+        int x = index.size() - 1;
+        long marker = ( x >= 0 ) ? readMark(x, buf) : Long.MIN_VALUE;
+        while ( x >= 0 ) {
+          buf.reset();
+          long previous = ( x == 0 ) ? base - 1 : readMark(x - 1, buf);
+          long begin = ( x == 0 ) ? start : index.position(x - 1);
+          if ( !chunks.prepend(previous, marker, segment, begin, index.position(x)) ) {
+            return;
+          }
+          marker = previous;
+          x -= 1;
+        }
+      } finally {
+        free(buf);
+      }
+    }
+
     @Override
     public boolean hasMore(Direction dir) throws IOException {
         return ( dir == Direction.FORWARD ) ? ( position < index.size()) : ( position > 0 );
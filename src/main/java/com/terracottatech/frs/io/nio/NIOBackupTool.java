@@ -16,6 +16,7 @@
 package com.terracottatech.frs.io.nio;
 
 import com.terracottatech.frs.config.Configuration;
+import com.terracottatech.frs.config.FrsProperty;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -28,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * @author tim
@@ -58,11 +60,11 @@ public class NIOBackupTool {
     lock.release();
   }
 
+  // segments from every stripe are gathered into the destination folder
   private static void copyDataFiles(File sourceFrsFolder, File destFrsFolder) throws IOException {
     synchronized (copyLockString(sourceFrsFolder)) {
-      for (String file : listSortedFiles(sourceFrsFolder)) {
-        File sourceFile = new File(sourceFrsFolder, file);
-        File destFile = new File(destFrsFolder, file);
+      for (File sourceFile : listSortedFiles(SegmentDirectories.all(sourceFrsFolder))) {
+        File destFile = new File(destFrsFolder, sourceFile.getName());
         copyFile(sourceFile, destFile);
       }
     }
@@ -98,11 +100,16 @@ public class NIOBackupTool {
     throw new IOException("Failed to lock data folder " + frsFolder);
   }
 
-  private static List<String> listSortedFiles(File frsFolder) {
-    List<String> files = new ArrayList<String>(Arrays.asList(
-            frsFolder.list(NIOConstants.SEGMENT_FILENAME_FILTER)));
+  private static List<File> listSortedFiles(List<File> frsFolders) {
+    List<File> files = new ArrayList<File>();
+    for (File frsFolder : frsFolders) {
+      File[] list = frsFolder.listFiles(NIOConstants.SEGMENT_FILENAME_FILTER);
+      if (list != null) {
+        files.addAll(Arrays.asList(list));
+      }
+    }
 
-    Collections.sort(files, NIOConstants.SEGMENT_NAME_COMPARATOR);
+    Collections.sort(files, NIOConstants.SEGMENT_FILE_COMPARATOR);
     return files;
   }
 
@@ -110,7 +117,25 @@ public class NIOBackupTool {
     File sourceConfiguration = new File(sourceFrsFolder,
                                         Configuration.USER_PROPERTIES_FILE);
     if (sourceConfiguration.exists() && sourceConfiguration.isFile()) {
-      copyFile(sourceConfiguration, new File(destFrsFolder, Configuration.USER_PROPERTIES_FILE));
+      File destConfiguration = new File(destFrsFolder, Configuration.USER_PROPERTIES_FILE);
+      Properties properties = new Properties();
+      FileInputStream fis = new FileInputStream(sourceConfiguration);
+      try {
+        properties.load(fis);
+      } finally {
+        fis.close();
+      }
+      // the backup is a single folder, it must not write into the source stripes once restored
+      if (properties.remove(FrsProperty.IO_NIO_STRIPE_DIRECTORIES.shortName()) != null) {
+        FileOutputStream fos = new FileOutputStream(destConfiguration);
+        try {
+          properties.store(fos, null);
+        } finally {
+          fos.close();
+        }
+      } else {
+        copyFile(sourceConfiguration, destConfiguration);
+      }
     }
   }
 
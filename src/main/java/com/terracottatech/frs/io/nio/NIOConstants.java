@@ -27,10 +27,30 @@ import java.util.Formatter;
  */
 public abstract class NIOConstants {
   public static final String BACKUP_LOCKFILE = "frs.backup.lck";
+  public static final String STRIPES_FILE = "frs.stripes";
 
   public static final String SEGMENT_NAME_FORMAT = "seg%09d.frs";
   public static final String SEG_NUM_FORMAT = "000000000";
 
+  public static final String RECYCLED_NAME_FORMAT = "recycled%09d.frs";
+
+  public static final FilenameFilter RECYCLED_FILENAME_FILTER = new FilenameFilter() {
+    @Override
+    public boolean accept(File file, String string) {
+      return string.startsWith("recycled") && string.endsWith(".frs");
+    }
+  };
+
+  //  a trimmed segment still open for a lease, deleted when the lease is released
+  public static final String TRIMMED_NAME_FORMAT = "trimmed%09d.frs";
+
+  public static final FilenameFilter TRIMMED_FILENAME_FILTER = new FilenameFilter() {
+    @Override
+    public boolean accept(File file, String string) {
+      return string.startsWith("trimmed") && string.endsWith(".frs");
+    }
+  };
+
   public static final FilenameFilter SEGMENT_FILENAME_FILTER = new FilenameFilter() {
     @Override
     public boolean accept(File file, String string) {
@@ -33,6 +33,7 @@ import com.terracottatech.frs.io.SLABBufferSource;
 import com.terracottatech.frs.io.SplittingBufferSource;
 import com.terracottatech.frs.util.NullFuture;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -58,6 +59,9 @@ import java.util.concurrent.Future;
  */
 public class NIOManager implements IOManager {
     private final File          directory;
+    private final List<File>    stripes;
+    //  home and the recorded stripes, one per file store
+    private List<File>          spaceDirectories;
     private File                lockFile;
     private File                backupLockFile;
     private FileLock            lock;
@@ -84,7 +88,17 @@ public class NIOManager implements IOManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(IOManager.class);
      
     public NIOManager(String home, String method, String memoryType, long segmentSize, long memorySize, long randomAccessSize, boolean randomAccess, BufferSource src) throws IOException {
+        this(home, Collections.<File>emptyList(), method, memoryType, segmentSize, memorySize, randomAccessSize, randomAccess, src);
+    }
+    
+    /**
+     * @param stripes additional directories new segments are placed in round-robin 
+     *        with home.  stripes are recorded in home and stay part of the stream.
+     */
+    public NIOManager(String home, List<File> stripes, String method, String memoryType, long segmentSize, long memorySize, long randomAccessSize, boolean randomAccess, BufferSource src) throws IOException {
         directory = new File(home);
+        
+        this.stripes = stripes;
                 
         this.segmentSize = segmentSize;
         
@@ -103,6 +117,7 @@ public class NIOManager implements IOManager {
     
     public NIOManager(Configuration config, BufferSource writer) throws IOException {
         this(config.getDBHome().getAbsolutePath(),
+            SegmentDirectories.parse(config.getDBHome(), config.getString(FrsProperty.IO_NIO_STRIPE_DIRECTORIES)),
             config.getString(FrsProperty.IO_NIO_ACCESS_METHOD),
             config.getString(FrsProperty.IO_NIO_BUFFER_SOURCE),
             config.getLong(FrsProperty.IO_NIO_SEGMENT_SIZE),
@@ -133,6 +148,45 @@ public class NIOManager implements IOManager {
         if ( config.getBoolean(FrsProperty.IO_DISABLE_SYNC) ) {
           this.backend.disableSync(true);
         }
+        
+        boolean directIO = config.getBoolean(FrsProperty.IO_NIO_DIRECT_IO);
+        boolean mappedWrites = config.getBoolean(FrsProperty.IO_NIO_MAPPED_WRITES);
+        int asyncWrites = config.getInt(FrsProperty.IO_NIO_ASYNC_WRITES);
+        int recycle = config.getInt(FrsProperty.IO_NIO_RECYCLE_SEGMENTS);
+//  segments are written one way.  direct IO wins over mapped writes, mapped writes over async writes
+        if ( directIO && ( mappedWrites || asyncWrites > 0 ) ) {
+          LOGGER.warn(FrsProperty.IO_NIO_DIRECT_IO.shortName() + " is set, ignoring " + 
+              FrsProperty.IO_NIO_MAPPED_WRITES.shortName() + "=" + mappedWrites + " and " + 
+              FrsProperty.IO_NIO_ASYNC_WRITES.shortName() + "=" + asyncWrites);
+          mappedWrites = false;
+          asyncWrites = 0;
+        } else if ( mappedWrites && asyncWrites > 0 ) {
+          LOGGER.warn(FrsProperty.IO_NIO_MAPPED_WRITES.shortName() + " is set, ignoring " + 
+              FrsProperty.IO_NIO_ASYNC_WRITES.shortName() + "=" + asyncWrites);
+          asyncWrites = 0;
+        }
+        if ( recycle > 0 && ( directIO || mappedWrites || asyncWrites > 0 ) ) {
+          LOGGER.warn("only buffered writes reuse segment files, ignoring " + 
+              FrsProperty.IO_NIO_RECYCLE_SEGMENTS.shortName() + "=" + recycle);
+        }
+        
+        this.backend.directIO(directIO);
+        this.backend.mappedWrites(mappedWrites);
+        this.backend.asyncWrites(asyncWrites);
+        this.backend.recycleSegments(recycle);
+        
+        if ( config.getBoolean(FrsProperty.IO_NIO_PREALLOCATE) ) {
+          this.backend.preallocate(true);
+        }
+        
+        this.backend.backgroundFlush(config.getLong(FrsProperty.IO_NIO_FLUSH_BYTES), 
+            config.getLong(FrsProperty.IO_NIO_FLUSH_INTERVAL));
+        
+        this.backend.chunkIndex(config.getLong(FrsProperty.IO_NIO_CHUNK_INDEX_SIZE));
+        
+        if ( config.getBoolean(FrsProperty.IO_NIO_PIPELINED_SYNC) ) {
+          this.backend.pipelineSync(true);
+        }
     }
 // for tests
     void setBufferBuilder(BufferBuilder builder) {
@@ -141,6 +195,10 @@ public class NIOManager implements IOManager {
         }
     }
 
+    NIOStreamImpl getStream() {
+        return backend;
+    }
+
     @Override
     public long write(Chunk region, long marker) throws IOException {
         if (backend == null) {
@@ -194,6 +252,22 @@ public class NIOManager implements IOManager {
         long pos = backend.sync();
     }
     
+    @Override
+    public Future<Void> writtenAsync(long marker) throws IOException {
+        if (backend == null) {
+            throw new IOException("stream is closed");
+        }
+        return backend.writtenAsync(marker);
+    }
+
+    @Override
+    public Future<Void> syncAsync() throws IOException {
+        if (backend == null) {
+            throw new IOException("stream is closed");
+        }
+        return backend.syncAsync();
+    }
+    
     @Override
     public long seek(long marker) throws IOException {
         if (backend == null) {
@@ -253,6 +327,31 @@ public class NIOManager implements IOManager {
         }
     }
     
+    @Override
+    public Closeable pin(long marker) throws IOException {
+        if (backend == null) {
+            throw new IOException("stream is closed");
+        }    
+        try {
+            this.backend.waitForWriteOf(marker);
+            if ( reader == null ) {
+                this.reader = backend.createRandomAccess(getRandomAccessBufferSource());
+            }
+            Closeable pin = this.reader.pin(marker);
+            if ( pin == null ) {
+                throw new AssertionError("Marker " + marker + ":" + this.backend.getMarker() + " not found in " + directory + " during pin");
+            }
+            return pin;
+        } catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            if ( this.isClosed() ) {
+                throw new IllegalStateException("closed during get operation");
+            } else {
+                throw new InterruptedIOException("random access interrupted");
+            }
+        }
+    }
+    
     @Override
     public Chunk read(Direction dir) throws IOException {         
         if (backend == null) {
@@ -299,7 +398,6 @@ public class NIOManager implements IOManager {
             throw new IOException("DB home " + directory.getAbsolutePath() + " does not exist.");
         }
         LOGGER.info("opening with " + method + " access method");
-        backend = new NIOStreamImpl(directory, method, segmentSize, this.mainBuffers, this.getRecoveryBufferSource(method));
 
         lockFile = new File(directory, "FRS.lck");
         boolean crashed = !lockFile.createNewFile();
@@ -310,6 +408,13 @@ public class NIOManager implements IOManager {
         if (lock == null) {
             throw new IOException(LOCKFILE_ACTIVE);
         }
+        
+        List<File> segmentDirectories = SegmentDirectories.record(directory, stripes);
+        if ( segmentDirectories.size() > 1 ) {
+            LOGGER.info("striping segments across " + segmentDirectories);
+        }
+        spaceDirectories = SegmentDirectories.distinctStores(segmentDirectories);
+        backend = new NIOStreamImpl(directory, segmentDirectories, method, segmentSize, this.mainBuffers, this.getRecoveryBufferSource(method));
 
         backupLockFile = new File(directory, NIOConstants.BACKUP_LOCKFILE);
         backupLockFile.createNewFile();
@@ -336,7 +441,7 @@ public class NIOManager implements IOManager {
             throw new IOException("stream is closed");
         }
         
-        return new LiveNIOStatistics(directory, backend, written, read);
+        return new LiveNIOStatistics(spaceDirectories, backend, written, read);
     }
     
     @Override
@@ -22,10 +22,15 @@ import com.terracottatech.frs.io.RandomAccess;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +43,7 @@ class NIORandomAccess implements RandomAccess, Closeable {
     private final NIOSegmentList segments;
     private final NavigableMap<Long,Integer> fileIndex;
     private volatile FileCache cache;
-    private int maxFiles = Integer.MAX_VALUE;
+    private volatile int maxFiles = Integer.MAX_VALUE;
     private final BufferSource src;
     private static final Logger LOGGER = LoggerFactory.getLogger(NIORandomAccess.class);
 
@@ -47,7 +52,7 @@ class NIORandomAccess implements RandomAccess, Closeable {
         this.stream = stream;
         this.segments = segments;
         this.fileIndex = new ConcurrentSkipListMap<Long, Integer>();
-        this.cache = new FileCache(segments.getBeginningSegmentId(),0,new ReadOnlySegment[1]);
+        this.cache = new FileCache(segments.getBeginningSegmentId());
         this.src = src;
     }
     
@@ -59,62 +64,139 @@ class NIORandomAccess implements RandomAccess, Closeable {
       this.cache = cache;
     }
 // for tests
-    FileCache createCache(int offset, int length, ReadOnlySegment[] cache) {
-      return new FileCache(offset, length, cache);
+    FileCache getCache() {
+      return cache;
     }
 
     @Override
     public Chunk scan(long marker) throws IOException {
+        Chunk indexed = scanIndex(marker);
+        if ( indexed != null ) {
+            return indexed;
+        }
         Map.Entry<Long,Integer> cacheId = fileIndex.floorEntry(marker);
         int segId = ( cacheId != null ) ? cacheId.getValue() : cache.getOffset();
         int startId = segId;
         Chunk c = null;
         while ( c == null ) {
-            ReadOnlySegment seg = findSegment(segId);
-            if ( seg == null ) {
+            PinnedSegment pin = pinSegment(segId);
+            if ( pin == null ) {
+                if ( segId < cache.getOffset() ) {
+      //  trimmed while it was opened, scan again from the first live segment
+                    segId = cache.getOffset();
+                    continue;
+                }
                 return null;
-            } else {
+            }
+            try {
+                ReadOnlySegment seg = pin.getSegment();
                 if ( marker < seg.load(src).getBaseMarker() ) {
                   LOGGER.info("overshoot: " + marker + " < " + seg + " " + startId + " " + cacheId + " " + segId + " " + cache.getOffset() + " " + fileIndex);
                   return null;        // Let NIOManager re-drive
                 }
-            }
-            boolean segComplete = seg.isComplete();     // null result from "incomplete" segment is re-driven
-            c = seg.scan(marker);
-            if ( c == null ) {
-              if ( LOGGER.isDebugEnabled() ) {
-                LOGGER.debug(marker + " " + seg);
-              }
-              if ( segComplete ) {
-                if (marker > seg.getMaximumMarker()) {
-                  segId += 1;
-                }
-              } else if ( LOGGER.isDebugEnabled() ) {
-                if ( segments.getCount() + segments.getBeginningSegmentId() != seg.getSegmentId() ) {
-                  throw new AssertionError();
+                boolean segComplete = seg.isComplete();     // null result from "incomplete" segment is re-driven
+                c = seg.scan(marker);
+                if ( c == null ) {
+                  if ( LOGGER.isDebugEnabled() ) {
+                    LOGGER.debug(marker + " " + seg);
+                  }
+                  if ( segComplete ) {
+                    if (marker > seg.getMaximumMarker()) {
+                      segId += 1;
+                    }
+                  } else if ( LOGGER.isDebugEnabled() ) {
+                    if ( segments.getCount() + segments.getBeginningSegmentId() != seg.getSegmentId() ) {
+                      throw new AssertionError();
+                    }
+                    LOGGER.debug("not advanced " + segId);
+                  }
                 }
-                LOGGER.debug("not advanced " + segId);
-              }
+            } finally {
+                pin.release();
             }
         }
         return c;
     }
 
+    /**
+     * @return the chunk holding marker read straight from the location in the 
+     *         chunk index, or null if the index does not know where it is
+     */
+    private Chunk scanIndex(long marker) throws IOException {
+        ChunkIndex index = stream.getChunkIndex();
+        ChunkIndex.Location loc = ( index != null ) ? index.find(marker) : null;
+        if ( loc == null || loc.getSegment() < cache.getOffset() ) {
+            return null;
+        }
+        PinnedSegment pin = pinSegment(loc.getSegment());
+        if ( pin == null ) {
+            return null;
+        }
+        try {
+            return pin.getSegment().load(src).read(loc.getStart(), loc.getEnd());
+        } finally {
+            pin.release();
+        }
+    }
+
+    /**
+     * @return a lease on the segment marker was written to, the segment stays open and 
+     *         its file is kept until the lease is closed.  null if no segment holds marker
+     */
+    Closeable pin(long marker) throws IOException {
+        ChunkIndex index = stream.getChunkIndex();
+        ChunkIndex.Location loc = ( index != null ) ? index.find(marker) : null;
+        if ( loc != null && loc.getSegment() >= cache.getOffset() ) {
+            PinnedSegment pin = pinSegment(loc.getSegment());
+            if ( pin != null ) {
+                return lease(pin);
+            }
+        }
+        Map.Entry<Long,Integer> cacheId = fileIndex.floorEntry(marker);
+        int segId = ( cacheId != null ) ? cacheId.getValue() : cache.getOffset();
+        PinnedSegment pin = pinSegment(segId);
+        while ( pin == null && segId < cache.getOffset() ) {
+    //  trimmed while it was opened, start again from the first live segment
+            segId = cache.getOffset();
+            pin = pinSegment(segId);
+        }
+        while ( pin != null ) {
+            if ( marker < pin.getSegment().load(src).getBaseMarker() ) {
+                pin.release();
+                return null;
+            }
+    //  the marker belongs to the last segment that starts at or before it
+            PinnedSegment next = pinSegment(segId + 1);
+            if ( next == null || marker < next.getSegment().load(src).getBaseMarker() ) {
+                if ( next != null ) {
+                    next.release();
+                }
+                return lease(pin);
+            }
+            pin.release();
+            pin = next;
+            segId += 1;
+        }
+        return null;
+    }
+    
+    private static Closeable lease(final PinnedSegment pin) {
+        final AtomicBoolean held = new AtomicBoolean(true);
+        pin.lease();
+        return new Closeable() {
+            @Override
+            public void close() {
+                if ( held.compareAndSet(true, false) ) {
+                    pin.unlease();
+                }
+            }
+        };
+    }
+
     @Override
     public void close() throws IOException {
       cache.close();
     }
- 
-    private ReadOnlySegment findSegment(int segNo) throws IOException {
-        ReadOnlySegment ro = cache.findSegment(segNo);
-        if ( ro == null ) {
-            ro = createSegment(segNo);
-        }
-        if ( ro != null && ro.getSegmentId() != segNo ) {
-          throw new AssertionError();
-        }
-        return ro;
-    }  
     
     ReadOnlySegment seek(long marker) throws IOException {
         Map.Entry<Long,Integer> cacheId = fileIndex.floorEntry(marker);
@@ -122,26 +204,55 @@ class NIORandomAccess implements RandomAccess, Closeable {
         ReadOnlySegment seg = null;
         while ( seg == null ) {
             int getId = segId++;
-            seg = findSegment(getId);
-            if ( seg == null ) {
+            PinnedSegment pin = pinSegment(getId);
+            if ( pin == null ) {
+                if ( getId < cache.getOffset() ) {
+//  trimmed while it was opened
+                    segId = cache.getOffset();
+                    continue;
+                }
 //  segment overflow
                 return null;
-            } else {
-                seg.load(src);
-                if ( seg.getMaximumMarker() >= marker ) {
-                    break;
-                } else {
+            }
+            try {
+                seg = pin.getSegment().load(src);
+                if ( seg.getMaximumMarker() < marker ) {
                     seg = null;
                 }
+            } finally {
+                pin.release();
             }
         }
         return seg;
     }   
     
-    synchronized void closeToReadHead() throws IOException {
+    /**
+     * close the segments before the read head.  segments still leased stay open 
+     * for their leases instead of holding up the trim.
+     * 
+     * @return accepts the files of leased segments.  they are moved out of the 
+     *         segment names and deleted when their last lease is released rather 
+     *         than by the caller
+     */
+    Predicate<File> closeToReadHead() throws IOException {
       int current = segments.getSegmentPosition();
         
-        cache = cache.closeSegments(current);
+      final Map<File, PinnedSegment> leased = cache.closeSegments(current);
+      return f -> {
+          PinnedSegment pin = leased.get(f);
+          if ( pin == null ) {
+              return false;
+          }
+    //  a restart must not find the trimmed segment under its old name
+          File aside = new File(f.getParentFile(), String.format(NIOConstants.TRIMMED_NAME_FORMAT, pin.getSegment().getSegmentId()));
+          if ( f.renameTo(aside) ) {
+              pin.deleteOnClose(aside);
+          } else {
+              LOGGER.warn("unable to set aside leased segment " + f);
+              pin.deleteOnClose(f);
+          }
+          return true;
+      };
     }
     
     private void cleanCache() throws IOException {
@@ -150,20 +261,24 @@ class NIORandomAccess implements RandomAccess, Closeable {
         Map.Entry<Long,Integer> first = this.fileIndex.firstEntry();
         
         while (first != null && fid > first.getValue()) {
-            fileIndex.remove(first.getKey());
+            fileIndex.remove(first.getKey(), first.getValue());
             first = this.fileIndex.firstEntry();
         }
         
-        cache = cache.removeSegments(fid);
+        cache.removeSegments(fid);
     }
     
     void hint(long marker, int segment) {
         fileIndex.put(marker, segment);
     }
 
-    private synchronized ReadOnlySegment createSegment(int segId) throws IOException {
-        ReadOnlySegment seg = cache.findSegment(segId);
-        if ( seg == null ) {
+    /**
+     * @return the segment pinned for the caller, who must release it, or null 
+     *         if the segment does not exist yet
+     */
+    private PinnedSegment pinSegment(int segId) throws IOException {
+        PinnedSegment pin = cache.acquire(segId);
+        if ( pin == null ) {
             // first clear any old caches not needed anymore
             cleanCache();
             try {
@@ -171,118 +286,250 @@ class NIORandomAccess implements RandomAccess, Closeable {
                 if ( f == null ) {
                     return null;
                 }
-                seg = new ReadOnlySegment(stream, stream.getAccessMethod(), f, Direction.RANDOM);
-                cache = cache.addSegment(seg);
+                pin = cache.add(new ReadOnlySegment(stream, stream.getAccessMethod(), f, Direction.RANDOM));
+                if ( pin == null ) {
+                    return null;
+                }
             } catch ( HeaderException header ) {
                 throw new IOException(header);
             }
         }
-        return seg;
+        if ( pin.getSegment().getSegmentId() != segId ) {
+          pin.release();
+          throw new AssertionError(segId + " " + pin.getSegment().getSegmentId());
+        }
+        return pin;
     }    
     
-    class FileCache implements Closeable {
-        private final int offset;
-        private int livecount = 0;
-        private final ReadOnlySegment[] segments;
+    /**
+     * A cached segment and the readers using it.  The cache holds one pin of its own 
+     * which it gives up when the segment is evicted, whoever drops the last pin closes 
+     * the segment so it is never closed under a reader.
+     */
+    static class PinnedSegment {
+        private final ReadOnlySegment segment;
+        private final AtomicInteger pins = new AtomicInteger(1);
+        private final AtomicInteger leases = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        private volatile File deleteOnClose;
 
-        FileCache(int offset, int live, ReadOnlySegment[] segments) {
-            this.offset = offset;
-            this.livecount = live;
-            this.segments = segments;
-            for (int x=0;x<segments.length;x++) {
-              if ( segments[x] != null ) {
-                if ( segments[x].getSegmentId() != offset + x ) {
-                  throw new AssertionError();
+        PinnedSegment(ReadOnlySegment segment) {
+            this.segment = segment;
+        }
+        
+        ReadOnlySegment getSegment() {
+            return segment;
+        }
+        
+        /**
+         * @return false if the segment was evicted and its last reader is done with it
+         */
+        boolean pin() {
+            while ( true ) {
+                int count = pins.get();
+                if ( count <= 0 ) {
+                    return false;
+                }
+                if ( pins.compareAndSet(count, count + 1) ) {
+                    return true;
                 }
-              }
             }
         }
         
-        public ReadOnlySegment findSegment(int segno) {
-            int pos = segno - offset;
-            if ( pos >= segments.length ) {
-                return null;
-            }
-            ReadOnlySegment ro = segments[pos];
-            if ( ro != null && ro.getSegmentId() != segno ) {
-              throw new AssertionError(segno + " " + segments[pos].getSegmentId());
+        void release() {
+            if ( pins.decrementAndGet() == 0 ) {
+                try {
+                    segment.close();
+                } catch ( IOException ioe ) {
+                    LOGGER.warn("error closing " + segment.getFile(), ioe);
+                } finally {
+                    closed.countDown();
+                }
+                if ( deleteOnClose != null ) {
+                    delete();
+                }
             }
-            return ro;
         }
-
-        public int getOffset() {
-            return offset;
+        
+        /**
+         * a lease is a pin the caller already holds that may be kept for as long as 
+         * the caller likes
+         */
+        void lease() {
+            leases.incrementAndGet();
         }
-
- // under lock       
-        public FileCache removeSegments(int limit) throws IOException {
-            if ( limit <= offset ) {
-              return this;
+        
+        void unlease() {
+            leases.decrementAndGet();
+            release();
+        }
+        
+        /**
+         * the segment was trimmed from the log while leased, delete the file 
+         * once the last pin is released
+         * 
+         * @param file where the segment file was set aside
+         */
+        void deleteOnClose(File file) {
+            deleteOnClose = file;
+            if ( closed.getCount() == 0 ) {
+                delete();
             }
-            if ( limit > offset + segments.length ) {
-                limit = offset + segments.length;
+        }
+        
+        private void delete() {
+            File file = deleteOnClose;
+            if ( deleted.compareAndSet(false, true) && !file.delete() ) {
+                LOGGER.warn("unable to delete trimmed segment " + file);
             }
-            int x = 0;
-            for (;x + offset < limit;x++) {
-                if ( segments[x] != null ) {
-                    segments[x].close();
-                    segments[x] = null;
-                    livecount--;
+        }
+        
+        /**
+         * @return false if the segment is still open for a lease, it closes when the 
+         *         last lease is released
+         */
+        boolean awaitClosed() {
+            boolean interrupted = false;
+            try {
+                while ( closed.getCount() > 0 ) {
+                    if ( leases.get() > 0 ) {
+                        return false;
+                    }
+                    try {
+      //  a reader may turn its pin into a lease while this waits
+                        closed.await(10, TimeUnit.MILLISECONDS);
+                    } catch ( InterruptedException ie ) {
+                        interrupted = true;
+                    }
+                }
+                return true;
+            } finally {
+                if ( interrupted ) {
+                    Thread.currentThread().interrupt();
                 }
             }
-            return new FileCache(limit,livecount,Arrays.copyOfRange(segments, x,segments.length+1));
+        }
+    }
+    
+    /**
+     * Open segments by id.  Readers pin segments without locking, segments past
+     * the open file limit are evicted lowest id first.
+     */
+    class FileCache implements Closeable {
+        private final ConcurrentSkipListMap<Integer, PinnedSegment> segments = new ConcurrentSkipListMap<Integer, PinnedSegment>();
+        private final AtomicInteger livecount = new AtomicInteger();
+        private final AtomicInteger offset;
+
+        FileCache(int offset) {
+            this.offset = new AtomicInteger(offset);
         }
         
-  // under lock       
-       public FileCache closeSegments(int limit) throws IOException {
-            if ( limit <= offset ) {
-              return this;
+        /**
+         * @return the cached segment pinned for the caller or null if it is not cached
+         */
+        PinnedSegment acquire(int segno) {
+            PinnedSegment ro = segments.get(segno);
+    //  a segment is removed from the map before the cache gives up its pin, failing to pin is a miss
+            return ( ro != null && ro.pin() ) ? ro : null;
+        }
+
+        int getOffset() {
+            return offset.get();
+        }
+        
+        int getLiveCount() {
+            return livecount.get();
+        }
+        
+        /**
+         * @return the cached segment for ro's id pinned for the caller.  if another 
+         *         reader cached the same segment first ro is dropped unopened.  null 
+         *         if the segment was trimmed from the log, even while it was added.
+         */
+        PinnedSegment add(ReadOnlySegment ro) {
+            Integer id = ro.getSegmentId();
+            if ( id < offset.get() ) {
+              return null;
             }
-            if ( limit > offset + segments.length ) {
-                limit = offset + segments.length;
+            PinnedSegment created = new PinnedSegment(ro);
+            created.pin();
+            while ( true ) {
+                PinnedSegment raced = segments.putIfAbsent(id, created);
+                if ( raced == null ) {
+                    if ( livecount.incrementAndGet() > maxFiles ) {
+                        evictOne(id);
+                    }
+      //  removeSegments moves the offset before it sweeps, an entry it may have missed is dropped here
+                    if ( id < offset.get() ) {
+                        retire(id, created);
+                        created.release();
+                        return null;
+                    }
+                    return created;
+                } else if ( raced.pin() ) {
+                    if ( id < offset.get() ) {
+                        raced.release();
+                        return null;
+                    }
+                    return raced;
+                }
             }
-            int x = 0;
-            for (;x + offset < limit;x++) {
-                if ( segments[x] != null ) {
-                    segments[x].close();
-                    segments[x] = null;
-                    livecount--;
+        }
+        
+        private void evictOne(int keep) {
+            for ( Map.Entry<Integer, PinnedSegment> e : segments.entrySet() ) {
+                if ( e.getKey() != keep && retire(e.getKey(), e.getValue()) ) {
+                    return;
                 }
             }
-            return this;
-        }        
- // under lock       
-        public FileCache addSegment(ReadOnlySegment ro) throws IOException {
-            if ( ro.getSegmentId() < offset ) {
-              throw new AssertionError(ro.getSegmentId() + " " + offset);
+        }
+        
+        private boolean retire(Integer id, PinnedSegment ro) {
+            if ( segments.remove(id, ro) ) {
+                livecount.decrementAndGet();
+                ro.release();
+                return true;
             }
-            if (livecount++ > maxFiles ) {
-              for ( int k=0;k<segments.length;k++ ) {
-                if ( segments[k] != null ) {
-                  segments[k].close();
-                  segments[k] = null;
-                  livecount--;
-                  break;
-                }
-              }
+            return false;
+        }
+        
+        /**
+         * segments below limit are gone from the log, they close as their readers finish
+         */
+        void removeSegments(int limit) {
+            int current = offset.get();
+            while ( limit > current && !offset.compareAndSet(current, limit) ) {
+                current = offset.get();
             }
-            if ( segments.length <= ro.getSegmentId() - offset ) {
-                ReadOnlySegment[] na = Arrays.copyOf(segments, ro.getSegmentId() - offset + segments.length + 1);
-                na[ro.getSegmentId() - offset] = ro;
-                return new FileCache(offset,livecount,na);  // buffer by adding the current length to the required length + 1
+            for ( Map.Entry<Integer, PinnedSegment> e : segments.headMap(limit).entrySet() ) {
+                retire(e.getKey(), e.getValue());
             }
-            segments[ro.getSegmentId() - offset] = ro;
-            return this;
         }
         
+        /**
+         * close the segments below limit, waiting for their readers to finish 
+         * but not for leases
+         * 
+         * @return the segments left open for leases by file
+         */
+        Map<File, PinnedSegment> closeSegments(int limit) {
+            Map<File, PinnedSegment> leased = new HashMap<File, PinnedSegment>();
+            for ( Map.Entry<Integer, PinnedSegment> e : segments.headMap(limit).entrySet() ) {
+                retire(e.getKey(), e.getValue());
+                if ( !e.getValue().awaitClosed() ) {
+                    leased.put(e.getValue().getSegment().getFile(), e.getValue());
+                }
+            }
+            return leased;
+        }        
+        
+        /**
+         * leases may outlive the stream, their segments close as they are released
+         */
         @Override
         public void close() throws IOException {
-          for ( ReadOnlySegment ro : segments ) {
-            if ( ro != null ) {
-              ro.close();
-            }
-          }
+          removeSegments(Integer.MAX_VALUE);
         }
-    
     }
 }
@@ -154,7 +154,8 @@ public class NIOSegment {
         buffer.clear();
         buffer.position(buffer.size() - buffer.capacity()).read(1);
         int fileEnd = buffer.getInt(buffer.remaining() - ByteBufferUtils.INT_SIZE);
-        return (SegmentHeaders.CLOSE_FILE.validate(fileEnd) || SegmentHeaders.JUMP_LIST.validate(fileEnd));
+        return (SegmentHeaders.CLOSE_FILE.validate(fileEnd) || SegmentHeaders.JUMP_LIST.validate(fileEnd) 
+            || SegmentHeaders.MARKER_INDEX.validate(fileEnd));
     }
 
   @Override
@@ -20,6 +20,7 @@ import com.terracottatech.frs.io.Direction;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,18 +30,54 @@ import org.slf4j.LoggerFactory;
  */
 class NIOSegmentList implements Iterable<File> {
     private final List<File>              segments;
-    private final File                    directory;
+    private final List<File>              directories;
     private File                          readHead;
     private int                           position;
     private int                           segmentId;
     private long                           cachedTotalSize; 
+    private final List<File>              recycled = new ArrayList<File>();
+    private int                           recycleLimit = 0;
+    private int                           recycleCount = 0;
     private static final Logger LOGGER = LoggerFactory.getLogger(NIOSegmentList.class);
 
     NIOSegmentList(File directory) throws IOException {
-        this.directory = directory;  
-        File[] list = directory.listFiles(NIOConstants.SEGMENT_FILENAME_FILTER);
-        if ( list == null ) list = new File[0];
-        segments = new LinkedList<File>(Arrays.asList(list));
+        this(Collections.singletonList(directory));
+    }
+    
+    /**
+     * @param directories segments are read from all of these and new segments are 
+     *        placed round-robin across them by segment number
+     */
+    NIOSegmentList(List<File> directories) throws IOException {
+        this.directories = new ArrayList<File>(directories);
+        segments = new LinkedList<File>();
+        for ( File directory : directories ) {
+            File[] list = directory.listFiles(NIOConstants.SEGMENT_FILENAME_FILTER);
+            if ( list != null ) {
+                segments.addAll(Arrays.asList(list));
+            }
+    //  left over from leases outstanding when the log last closed
+            File[] trimmed = directory.listFiles(NIOConstants.TRIMMED_FILENAME_FILTER);
+            if ( trimmed != null ) {
+                for ( File f : trimmed ) {
+                    if ( !f.delete() ) {
+                        LOGGER.warn("unable to delete trimmed segment file " + f);
+                    }
+                }
+            }
+            File[] free = directory.listFiles(NIOConstants.RECYCLED_FILENAME_FILTER);
+            if ( free != null ) {
+                for ( File f : free ) {
+                    recycled.add(f);
+                    String name = f.getName();
+                    try {
+                        recycleCount = Math.max(recycleCount, Integer.parseInt(name.substring(8, name.length() - 4)) + 1);
+                    } catch ( NumberFormatException nfe ) {
+                        LOGGER.debug("unexpected recycled file name " + name);
+                    }
+                }
+            }
+        }
         Collections.sort(segments, NIOConstants.SEGMENT_FILE_COMPARATOR);
         if ( segments.isEmpty() ) {
           segmentId = 0;
@@ -63,10 +100,19 @@ class NIOSegmentList implements Iterable<File> {
         return size;
     }
     
+    //  the file appendFile will add next
+    synchronized File nextFile() {
+        return placeSegment(segmentId + segments.size());
+    }
+    
+    private File placeSegment(int seg) {
+        return new File(directories.get(seg % directories.size()),NIOConstants.convertToSegmentFileName(seg));
+    }
+    
     synchronized File appendFile() throws IOException {
         int seg = segmentId + segments.size();
         
-        File writeHead = new File(directory,NIOConstants.convertToSegmentFileName(seg));
+        File writeHead = placeSegment(seg);
         
         if ( !segments.isEmpty() ) {
           cachedTotalSize += segments.get(segments.size()-1).length();
@@ -116,13 +162,60 @@ class NIOSegmentList implements Iterable<File> {
       return segmentId;
     }
     
+    /**
+     * keep up to limit dead segment files to be reused as new segments rather than
+     * deleting them
+     */
+    synchronized void setRecycleLimit(int limit) {
+        recycleLimit = Math.max(limit, 0);
+        while ( recycled.size() > recycleLimit ) {
+            File f = recycled.remove(recycled.size() - 1);
+            if ( !f.delete() ) {
+                LOGGER.warn("unable to delete recycled segment file " + f);
+            }
+        }
+    }
+    
+    /**
+     * @return a dead segment file in directory, no longer tracked by this list, or null
+     */
+    synchronized File takeRecycled(File directory) {
+        for ( Iterator<File> it = recycled.iterator(); it.hasNext(); ) {
+            File f = it.next();
+            if ( f.getParentFile().equals(directory) ) {
+                it.remove();
+                return f;
+            }
+        }
+        return null;
+    }
+    
+    private boolean retire(File f) {
+        if ( recycled.size() < recycleLimit ) {
+            File free = new File(f.getParentFile(), String.format(NIOConstants.RECYCLED_NAME_FORMAT, recycleCount++));
+            if ( f.renameTo(free) ) {
+                recycled.add(free);
+                return true;
+            }
+        }
+        return f.delete();
+    }
+    
     synchronized long removeFilesFromTail() throws IOException {
+        return removeFilesFromTail(f -> false);
+    }
+    
+    /**
+     * @param deferred accepts the files it will delete itself later, they leave the 
+     *        list without being recycled
+     */
+    synchronized long removeFilesFromTail(Predicate<File> deferred) throws IOException {
         int count = 0;
         long size = 0;
         while ( count < position ) {
             File f = segments.remove(0);
             size += f.length();
-            if ( !f.delete() ) {
+            if ( !deferred.test(f) && !retire(f) ) {
                 size -= f.length();
                 segments.add(0,f);
                 break;
@@ -26,6 +26,7 @@ import com.terracottatech.frs.io.HeapBufferSource;
 import com.terracottatech.frs.io.IOManager;
 import com.terracottatech.frs.io.Stream;
 import com.terracottatech.frs.util.Log2LatencyBins;
+import com.terracottatech.frs.util.NullFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +34,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -40,7 +42,10 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.Exchanger;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BooleanSupplier;
@@ -66,6 +71,9 @@ class NIOStreamImpl implements Stream {
     private final long segmentSize;
     
     private boolean syncDisabled = false;
+    private boolean directIO = false;
+    private boolean mappedWrites = false;
+    private int asyncDepth = 0;
 
     private UUID streamId;
     private volatile long lowestMarker = Constants.GENESIS_LSN;
@@ -73,12 +81,15 @@ class NIOStreamImpl implements Stream {
     private volatile long fsyncdMarker = 0;
     private volatile long currentMarker = Constants.GENESIS_LSN;  //  init lsn is 100
     private int  markerWaiters = 0;
-    private WritingSegment writeHead;
+    private volatile WritingSegment writeHead;
     private ReadOnlySegment readHead;
     private long offset = 0;
     private final BufferSource filePool;
     private BufferSource replayPool;
     private FSyncer syncer;
+    private SegmentFlusher flusher;
+    private SegmentPreallocator preallocator;
+    private volatile ChunkIndex chunkIndex;
     private volatile boolean closed = false;
     private BufferBuilder createBuffer;
     private final NIOAccessMethod method;
@@ -92,6 +103,13 @@ class NIOStreamImpl implements Stream {
     }
     
     NIOStreamImpl(File filePath, NIOAccessMethod method, long recommendedSize, BufferSource writeBuffers, BufferSource recoveryBuffers) throws IOException {
+        this(filePath, Collections.singletonList(filePath), method, recommendedSize, writeBuffers, recoveryBuffers);
+    }
+    
+    /**
+     * @param segmentDirectories directories segments are striped across, see {@link NIOSegmentList}
+     */
+    NIOStreamImpl(File filePath, List<File> segmentDirectories, NIOAccessMethod method, long recommendedSize, BufferSource writeBuffers, BufferSource recoveryBuffers) throws IOException {
         directory = filePath;
         this.fsyncLatencyBin = new Log2LatencyBins("FRS Sync: " + directory);
 
@@ -108,7 +126,7 @@ class NIOStreamImpl implements Stream {
 
         LOGGER.debug("==CONFIG(nio)==" + filePath.getAbsolutePath() + " using a segment size of " + (segmentSize / (1024*1024)));
                 
-        segments = new NIOSegmentList(directory);
+        segments = new NIOSegmentList(segmentDirectories);
         if (segments.isEmpty()) {
             streamId = UUID.randomUUID();
         } else {
@@ -165,6 +183,114 @@ class NIOStreamImpl implements Stream {
       syncDisabled = disabled;
     }
     
+    /**
+     * write new segments with O_DIRECT where the runtime and filesystem allow it
+     */
+    void directIO(boolean enabled) {
+      directIO = enabled;
+    }
+    
+    boolean isDirectIO() {
+      return directIO;
+    }
+    
+    /**
+     * append to new segments through a mapping of the file, ignored when direct IO 
+     * is enabled
+     */
+    void mappedWrites(boolean enabled) {
+      mappedWrites = enabled;
+    }
+    
+    boolean isMappedWrites() {
+      return mappedWrites;
+    }
+    
+    /**
+     * keep up to depth writes to new segments in flight at once, 0 to write one at a 
+     * time.  ignored when direct IO or mapped writes are enabled
+     */
+    void asyncWrites(int depth) {
+      asyncDepth = Math.max(depth, 0);
+    }
+    
+    int getAsyncDepth() {
+      return ( directIO || mappedWrites ) ? 0 : asyncDepth;
+    }
+    
+    /**
+     * rename up to count dead segment files aside when the log tail is trimmed and 
+     * reuse them for new segments.  only buffered writes reuse files, direct, mapped 
+     * and async writes always create them.
+     */
+    void recycleSegments(int count) {
+      segments.setRecycleLimit(( directIO || mappedWrites || asyncDepth > 0 ) ? 0 : count);
+    }
+    
+    long getSegmentSize() {
+      return segmentSize;
+    }
+    
+    File takeRecycledFile(File directory) {
+      return segments.takeRecycled(directory);
+    }
+    
+    /**
+     * create the next segment file in the background while the current one fills
+     */
+    void preallocate(boolean enabled) {
+      if ( enabled && preallocator == null ) {
+        preallocator = new SegmentPreallocator(directory, this);
+      } else if ( !enabled && preallocator != null ) {
+        preallocator.close();
+        preallocator = null;
+      }
+    }
+    
+    /**
+     * force the write head in the background every flushBytes appended or every 
+     * flushInterval milliseconds, 0 for both turns background flushing off
+     */
+    void backgroundFlush(long flushBytes, long flushInterval) {
+      if ( flusher != null ) {
+        flusher.close();
+        flusher = null;
+      }
+      if ( flushBytes > 0 || flushInterval > 0 ) {
+        flusher = new SegmentFlusher(directory, this, flushBytes, flushInterval);
+      }
+    }
+    
+    /**
+     * keep the location of the most recent chunks in an index of at most bytes so 
+     * random access can go straight to them, 0 for no index
+     */
+    void chunkIndex(long bytes) {
+      if ( bytes > 0 ) {
+        chunkIndex = new ChunkIndex(bytes);
+        LOGGER.debug("==CONFIG(nio)==" + directory.getAbsolutePath() + " indexing up to " + chunkIndex.getCapacity() + " chunks");
+      } else {
+        chunkIndex = null;
+      }
+    }
+    
+    ChunkIndex getChunkIndex() {
+      return chunkIndex;
+    }
+    
+    /**
+     * @return bytes of memory held by the chunk index
+     */
+    long getChunkIndexSize() {
+      ChunkIndex index = chunkIndex;
+      return ( index != null ) ? index.getMemorySize() : 0;
+    }
+    
+    WritingSegment getWriteHead() {
+      WritingSegment head = writeHead;
+      return ( head != null && !head.isClosed() ) ? head : null;
+    }
+    
     private void hintRandomAccess(long marker, int segmentId) {
         if ( randomAccess != null ) {
             randomAccess.hint(marker, segmentId);
@@ -226,10 +352,6 @@ class NIOStreamImpl implements Stream {
         }
 
     boolean open() throws IOException {
-/* TODO:   disable fsyncer for now.  validate for speed and accuracy
-        syncer = new FSyncer();
-        syncer.start();
-*/
         if (segments.isEmpty()) {
             return false;
         }
@@ -404,10 +526,14 @@ class NIOStreamImpl implements Stream {
             File last = segments.getCurrentReadFile();
             assert(last!=null);
             if ( doubleCheck(last) ) {  //  make sure this is the right file, assert?!
-                if ( randomAccess != null ) {
-                  randomAccess.closeToReadHead();
+                NIORandomAccess ra = randomAccess;
+                long size = ( ra != null ) ? 
+                    segments.removeFilesFromTail(ra.closeToReadHead()) : 
+                    segments.removeFilesFromTail();
+                ChunkIndex index = chunkIndex;
+                if ( index != null ) {
+                  index.trim(segments.getBeginningSegmentId());
                 }
-                long size = segments.removeFilesFromTail();
                 return size;
             }
         }
@@ -418,19 +544,34 @@ class NIOStreamImpl implements Stream {
     public long append(Chunk c, long marker) throws IOException {
       if (writeHead == null || writeHead.isClosed()) {
             File f = segments.appendFile();
+            FileChannel prepared = ( preallocator != null ) ? preallocator.take(f) : null;
             
             try {
-                writeHead = new WritingSegment(this, f).open();
+                writeHead = ( prepared != null ) ? 
+                    new WritingSegment(this, f, prepared).open() : 
+                    new WritingSegment(this, f).open();
             } catch ( HeaderException header ) {
                 throw new IOException(header);
             }
             
             writeHead.insertFileHeader(lowestMarker, currentMarker+1);
             hintRandomAccess(currentMarker+1, writeHead.getSegmentId());
+            if ( preallocator != null ) {
+                preallocator.prepare(segments.nextFile());
+            }
         }
 
+        long start = writeHead.getChunkOffset();
+        long previous = currentMarker;
         long w = writeHead.append(c, marker);
         updateCurrentMarker(marker);
+        ChunkIndex index = chunkIndex;
+        if ( index != null ) {
+            index.append(previous, marker, writeHead.getSegmentId(), start, writeHead.getChunkOffset());
+        }
+        if ( flusher != null ) {
+            flusher.written(w);
+        }
         if (writeHead.size() > segmentSize || c instanceof SnapshotRequest ) {
             closeSegment(writeHead);
         }
@@ -438,44 +579,147 @@ class NIOStreamImpl implements Stream {
 
     }
 
+    private static final class SyncRequest {
+        private final WritingSegment segment;
+        private final long marker;
+        private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+        SyncRequest(WritingSegment segment, long marker) {
+            this.segment = segment;
+            this.marker = marker;
+        }
+    }
+    
+    private static final SyncRequest STOP = new SyncRequest(null, -1);
+
+    /**
+     * forces the write head in the background so the IO thread can keep appending.  
+     * requests queued while a force is in flight are covered by the next single force 
+     * and complete in marker order.
+     */
     class FSyncer extends Thread {
 
-        private Exchanger<WritingSegment> pivot = new Exchanger<WritingSegment>();
+        private final BlockingQueue<SyncRequest> requests = new LinkedBlockingQueue<SyncRequest>();
+        private volatile IOException failure;
 
         public FSyncer() {
-            setName("fsync helper");
+            setName("fsync helper - " + directory.getName());
             setDaemon(true);
         }
 
-        WritingSegment pivot(WritingSegment target) {
-            try {
-                return pivot.exchange(target);
-            } catch (InterruptedException ie) {
-            } 
-            return null;
+        Future<Void> request(WritingSegment segment, long marker) {
+            SyncRequest request = new SyncRequest(segment, marker);
+            requests.add(request);
+            return request.done;
+        }
+        
+        void shutdown() throws IOException {
+            requests.add(STOP);
+            boolean interrupted = false;
+            while ( isAlive() ) {
+                try {
+                    join();
+                } catch ( InterruptedException ie ) {
+                    interrupted = true;
+                }
+            }
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
         }
 
+        @Override
         public void run() {
+            List<SyncRequest> batch = new ArrayList<SyncRequest>();
+            boolean running = true;
+            while ( running ) {
+                try {
+                    batch.add(requests.take());
+                } catch ( InterruptedException ie ) {
+                    continue;
+                }
+                requests.drainTo(batch);
+                if ( batch.get(batch.size() - 1) == STOP ) {
+                    batch.remove(batch.size() - 1);
+                    running = false;
+                }
+                if ( !batch.isEmpty() ) {
+                    force(batch);
+                }
+                batch.clear();
+            }
+        }
+        
+        private void force(List<SyncRequest> batch) {
+    //  earlier requests in the batch on other segments were covered when those segments closed
+            SyncRequest last = batch.get(batch.size() - 1);
             try {
-                WritingSegment seg = null;
-                seg = pivot.exchange(seg);
-                while (!Thread.interrupted()) {
-                    if ( seg == null ) {
-                        
-                    } else if (seg.isClosed()) {
-                        seg.close();
-                    } else {
-                        seg.fsync(false);
+                if ( failure != null ) {
+                    throw failure;
+                }
+                if ( last.segment != null ) {
+                    synchronized ( last.segment ) {
+                        if ( !last.segment.isClosed() ) {
+                            last.segment.fsync(false);
+                            lowestMarkerOnDisk = last.segment.getMinimumMarker();
+                        }
                     }
-                    updateSyncMarker(seg.getMaximumMarker());
-                    lowestMarkerOnDisk = seg.getMinimumMarker();
-                    seg = pivot.exchange(seg);
                 }
-            } catch (InterruptedException ie) {
-            } catch (IOException ioe) {
-            } 
+                advanceSyncMarker(last.marker);
+                for ( SyncRequest r : batch ) {
+                    r.done.complete(null);
+                }
+            } catch ( IOException ioe ) {
+                failure = ioe;
+                for ( SyncRequest r : batch ) {
+                    r.done.completeExceptionally(ioe);
+                }
+            }
         }
     }
+    
+    /**
+     * force writes in the background, see {@link #syncAsync()}
+     */
+    void pipelineSync(boolean enabled) throws IOException {
+      if ( enabled && syncer == null ) {
+        syncer = new FSyncer();
+        syncer.start();
+      } else if ( !enabled && syncer != null ) {
+        syncer.shutdown();
+        syncer = null;
+      }
+    }
+    
+    /**
+     * @return completes once the append of marker has reached the file.  only
+     *         async writes complete after append returns.
+     */
+    Future<Void> writtenAsync(long marker) {
+        WritingSegment head = writeHead;
+        if ( head != null && !head.isClosed() ) {
+            return head.whenWritten(marker);
+        }
+    //  closed segments wait for their writes
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Start forcing everything appended so far.  Without a pipelined syncer this 
+     * is the same as {@link #sync()}.
+     * 
+     * @return completes once every marker appended before this call is durable, 
+     *         requests complete in the order they are made
+     */
+    Future<Void> syncAsync() throws IOException {
+        if ( syncer == null || syncDisabled ) {
+            sync();
+            return NullFuture.INSTANCE;
+        }
+        WritingSegment head = ( writeHead != null && !writeHead.isClosed() ) ? writeHead : null;
+        return syncer.request(head, currentMarker);
+    }
+    
     //  fsync current segment.  old segments are fsyncd on close
 
     @Override
@@ -486,14 +730,11 @@ class NIOStreamImpl implements Stream {
         if (writeHead != null && !writeHead.isClosed()) {
             if (this.currentMarker == this.fsyncdMarker) {
               return writeHead.position();
-            } else if (syncer != null) {
-                syncer.pivot(writeHead);
-            //  get it back
-                WritingSegment check = syncer.pivot(null);
-                assert(check == writeHead);
-                return  writeHead.position();
             } else {
                 long pos = writeHead.fsync(false);
+                if ( flusher != null ) {
+                    flusher.synced();
+                }
                 updateSyncMarker(writeHead.getMaximumMarker());
                 this.lowestMarkerOnDisk = writeHead.getMinimumMarker();
                 return pos;
@@ -510,11 +751,19 @@ class NIOStreamImpl implements Stream {
     public void close() throws IOException {
         closed = true;
         reporterShutdown.set(true);
+        
+        if (flusher != null) {
+            flusher.close();
+            flusher = null;
+        }
 
         if (writeHead != null && !writeHead.isClosed()) {
             closeSegment(writeHead);
         }
         writeHead = null;
+        if (preallocator != null) {
+            preallocator.close();
+        }
         if (readHead != null && !readHead.isClosed()) {
             readHead.close();
         }
@@ -525,12 +774,9 @@ class NIOStreamImpl implements Stream {
         }
 
         if (syncer != null) {
-            syncer.interrupt();
-            try {
-                syncer.join();
-            } catch ( InterruptedException ie ) {
-                throw new IOException(ie);
-            }
+    //  the write head was forced when it closed so anything still queued is durable
+            syncer.shutdown();
+            syncer = null;
         } 
         
         if ( randomAccess != null ) {
@@ -570,6 +816,9 @@ class NIOStreamImpl implements Stream {
                 ReadOnlySegment nextHead = new ReadOnlySegment(this, method, f, dir);
                 nextHead.load(replayPool);
                 hintRandomAccess(nextHead.getBaseMarker(), nextHead.getSegmentId());
+                if ( chunkIndex != null && dir == Direction.REVERSE ) {
+                    nextHead.indexChunks(chunkIndex);
+                }
                                 
                 if ( readHead != null ) {
                     int expected = readHead.getSegmentId() + ((dir == Direction.REVERSE) ? -1 : +1);
@@ -603,6 +852,16 @@ class NIOStreamImpl implements Stream {
         return readHead.next(dir);
     }
     
+    //  the syncer trails the writer, the marker only moves forward
+    private synchronized void advanceSyncMarker(long marker) {
+      if ( marker > this.fsyncdMarker ) {
+        this.fsyncdMarker = marker;
+        if (markerWaiters > 0) {
+          notifyAll();
+        }
+      }
+    }
+    
     private synchronized void updateSyncMarker(long marker) {
       this.fsyncdMarker = marker;
       if ( this.currentMarker != this.fsyncdMarker ) {
@@ -614,6 +873,7 @@ class NIOStreamImpl implements Stream {
     }
     
     boolean waitForWriteOf(long lsn) throws InterruptedException, IOException {
+        boolean waited = false;
         if (lsn > this.currentMarker) {
             synchronized (this) {
                 markerWaiters += 1;
@@ -625,10 +885,14 @@ class NIOStreamImpl implements Stream {
                     markerWaiters -= 1;
                 }
             }
-            return true;
-        } else {
-            return false;
+            waited = true;
+        }
+    //  appended is not the same as written when writes are in flight
+        WritingSegment head = writeHead;
+        if ( head != null && head.waitForWrite(lsn) ) {
+            waited = true;
         }
+        return waited;
     }
 
     private void updateCurrentMarker(long lsn) throws IOException {
@@ -737,14 +1001,10 @@ class NIOStreamImpl implements Stream {
 
     private void closeSegment(WritingSegment nio) throws IOException {
         nio.prepareForClose();
-        if ( syncer != null ) {
-          syncer.pivot(nio);
-        } else {
-          nio.close();
-          this.currentMarker = nio.getMaximumMarker();
-          updateSyncMarker(this.currentMarker);
-          lowestMarkerOnDisk = nio.getMinimumMarker();
-        }
+        nio.close();
+        this.currentMarker = nio.getMaximumMarker();
+        updateSyncMarker(this.currentMarker);
+        lowestMarkerOnDisk = nio.getMinimumMarker();
     }
 
     public void recordFsyncLatency(long ns) {
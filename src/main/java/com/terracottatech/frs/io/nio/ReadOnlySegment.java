@@ -22,6 +22,7 @@ import com.terracottatech.frs.io.SimpleBufferSource;
 import com.terracottatech.frs.io.WrappingChunk;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -65,15 +66,20 @@ class ReadOnlySegment extends NIOSegment implements Closeable {
         return this;
     }
 
+  /**
+   * read the header with positional reads, then leave the channel where the 
+   * chunks start for the strategy
+   */
   private void readFullyFirstBytes(ByteBuffer buffer) throws IOException {
-    int startPosition = buffer.position();
+    long position = 0;
     while (buffer.hasRemaining()) {
-      try {
-        source.read(buffer);
-      } catch (PositionLostException e) {
-        source.position(buffer.position() - startPosition);
+      int amt = source.read(buffer, position);
+      if (amt < 0) {
+        throw new EOFException();
       }
+      position += amt;
     }
+    source.position(FILE_HEADER_SIZE);
   }
 
     private ReadbackStrategy openForReplay(BufferSource src) throws IOException, HeaderException {
@@ -136,7 +142,28 @@ class ReadOnlySegment extends NIOSegment implements Closeable {
      
     public Chunk scan(long marker) throws IOException {
         return strategy.scan(marker);
-    }   
+    }
+
+    /**
+     * @param start offset of the chunk header
+     * @param end offset just past the chunk footer
+     * @return the chunk or null if the strategy can not read chunks by location
+     */
+    Chunk read(long start, long end) throws IOException {
+        if ( strategy instanceof BaseBufferReadbackStrategy ) {
+            return ((BaseBufferReadbackStrategy)strategy).region(start, end);
+        }
+        return null;
+    }
+
+    /**
+     * add the chunks of this segment to index, newest first
+     */
+    void indexChunks(ChunkIndex index) throws IOException {
+        if ( strategy instanceof MinimalReadbackStrategy ) {
+            ((MinimalReadbackStrategy)strategy).indexChunks(index, getSegmentId(), getBaseMarker());
+        }
+    }
      
     public long getMaximumMarker() throws IOException {
         return strategy.getMaximumMarker();
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Directories holding the segments of one stream.  The home directory always holds 
+ * segments, stripe directories listed in {@link NIOConstants#STRIPES_FILE} in the 
+ * home directory hold the rest.  Once a stripe is recorded it stays part of the 
+ * layout so segments written there are never lost by dropping it from the configuration.
+ *
+ * @author mscott
+ */
+final class SegmentDirectories {
+
+    private SegmentDirectories() {
+    }
+
+    /**
+     * @param paths stripe directories separated by the platform path separator, 
+     *        relative paths are resolved against home
+     */
+    static List<File> parse(File home, String paths) throws IOException {
+        if ( paths == null || paths.trim().isEmpty() ) {
+            return Collections.emptyList();
+        }
+        List<File> stripes = new ArrayList<File>();
+        for ( String path : paths.split(File.pathSeparator) ) {
+            path = path.trim();
+            if ( path.isEmpty() ) {
+                continue;
+            }
+            File dir = new File(path);
+            if ( !dir.isAbsolute() ) {
+                dir = new File(home, path);
+            }
+            if ( !dir.exists() || !dir.isDirectory() ) {
+                throw new IOException("stripe directory " + dir.getAbsolutePath() + " does not exist.");
+            }
+            stripes.add(dir.getCanonicalFile());
+        }
+        return stripes;
+    }
+
+    static List<File> recorded(File home) throws IOException {
+        File layout = new File(home, NIOConstants.STRIPES_FILE);
+        if ( !layout.exists() ) {
+            return Collections.emptyList();
+        }
+        List<File> stripes = new ArrayList<File>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(layout), StandardCharsets.UTF_8));
+        try {
+            String line = reader.readLine();
+            while ( line != null ) {
+                if ( !line.trim().isEmpty() ) {
+                    stripes.add(new File(line.trim()));
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        return stripes;
+    }
+
+    /**
+     * add any new stripes to the recorded layout
+     * 
+     * @return home followed by every recorded stripe
+     */
+    static List<File> record(File home, List<File> stripes) throws IOException {
+        List<File> layout = new ArrayList<File>(recorded(home));
+        boolean changed = false;
+        for ( File stripe : stripes ) {
+            if ( !layout.contains(stripe) && !stripe.equals(home.getCanonicalFile()) ) {
+                layout.add(stripe);
+                changed = true;
+            }
+        }
+        if ( changed ) {
+            File temp = new File(home, NIOConstants.STRIPES_FILE + ".tmp");
+            FileOutputStream out = new FileOutputStream(temp);
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            try {
+                for ( File stripe : layout ) {
+                    writer.write(stripe.getAbsolutePath());
+                    writer.write('\n');
+                }
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                writer.close();
+            }
+            File target = new File(home, NIOConstants.STRIPES_FILE);
+            if ( !temp.renameTo(target) ) {
+                if ( !target.delete() || !temp.renameTo(target) ) {
+                    throw new IOException("unable to record stripe layout in " + target.getAbsolutePath());
+                }
+            }
+        }
+        return all(home, layout);
+    }
+
+    /**
+     * @return home followed by every recorded stripe
+     */
+    static List<File> all(File home) throws IOException {
+        return all(home, recorded(home));
+    }
+
+    /**
+     * @return one of the directories for each file store they are on, so the space 
+     *         of stripes sharing a file store is only counted once
+     */
+    static List<File> distinctStores(List<File> directories) {
+        List<File> distinct = new ArrayList<File>(directories.size());
+        Set<FileStore> stores = new HashSet<FileStore>();
+        for ( File dir : directories ) {
+            try {
+                if ( stores.add(Files.getFileStore(dir.toPath())) ) {
+                    distinct.add(dir);
+                }
+            } catch ( IOException ioe ) {
+        //  store unknown, count it on its own
+                distinct.add(dir);
+            }
+        }
+        return distinct;
+    }
+
+    private static List<File> all(File home, List<File> stripes) {
+        List<File> dirs = new ArrayList<File>(stripes.size() + 1);
+        dirs.add(home);
+        dirs.addAll(stripes);
+        return dirs;
+    }
+}
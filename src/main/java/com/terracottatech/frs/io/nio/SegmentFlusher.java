@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forces the write head in the background every so many bytes or milliseconds so
+ * that dirty pages do not pile up in the OS until the next sync or segment close.
+ * Explicit syncs still do their own force, there is just less left for them to flush.
+ * <p>
+ * Background forces make no durability promises and do not move the sync marker or
+ * show up in the fsync latency histogram, which keeps measuring the syncs that callers
+ * wait on.
+ *
+ * @author mscott
+ */
+class SegmentFlusher implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentFlusher.class);
+
+    private final NIOStreamImpl stream;
+    private final long bytes;
+    private final long interval;
+    private final Thread worker;
+    private long unflushed;
+    private boolean requested;
+    private boolean closed;
+
+    /**
+     * @param bytes force once this many bytes are appended, 0 to only flush on time
+     * @param interval force at least this often in milliseconds if anything was appended,
+     *                 0 to only flush on size
+     */
+    SegmentFlusher(File directory, NIOStreamImpl stream, long bytes, long interval) {
+        if ( bytes <= 0 && interval <= 0 ) {
+            throw new IllegalArgumentException("a flush size or interval is required");
+        }
+        this.stream = stream;
+        this.bytes = bytes;
+        this.interval = interval;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        });
+        worker.setDaemon(true);
+        worker.setName("segment flusher - " + directory.getName());
+        worker.start();
+    }
+
+    synchronized void written(long amount) {
+        unflushed += amount;
+        if ( bytes > 0 && unflushed >= bytes && !requested ) {
+            requested = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * an explicit sync covered everything written so far
+     */
+    synchronized void synced() {
+        unflushed = 0;
+    }
+
+    synchronized long getUnflushed() {
+        return unflushed;
+    }
+
+    private synchronized boolean await() {
+        long deadline = ( interval > 0 ) ? System.nanoTime() + interval * 1000000L : 0;
+        while ( !closed && !requested ) {
+            try {
+                if ( interval > 0 ) {
+                    long left = deadline - System.nanoTime();
+                    if ( left <= 0 ) {
+                        break;
+                    }
+                    wait(Math.max(1, left / 1000000L));
+                } else {
+                    wait();
+                }
+            } catch ( InterruptedException ie ) {
+    //  only close stops the flusher
+            }
+        }
+        if ( closed ) {
+            return false;
+        }
+        requested = false;
+        return true;
+    }
+
+    private void flushLoop() {
+        while ( await() ) {
+            long amount;
+            synchronized ( this ) {
+                amount = unflushed;
+                unflushed = 0;
+            }
+            if ( amount == 0 ) {
+                continue;
+            }
+            WritingSegment head = stream.getWriteHead();
+            if ( head == null ) {
+                continue;
+            }
+            try {
+                head.flush();
+            } catch ( IOException ioe ) {
+    //  the next explicit sync reports a real problem with the file
+                LOGGER.warn("background flush of " + head + " failed", ioe);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized ( this ) {
+            closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while ( worker.isAlive() ) {
+            try {
+                worker.join();
+            } catch ( InterruptedException ie ) {
+                interrupted = true;
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -26,6 +26,7 @@ public enum SegmentHeaders {
     LOG_FILE("%flf"),
     CLOSE_FILE("!ctl"),
     JUMP_LIST("+jmp"),
+    MARKER_INDEX("+lsn"),
     CHUNK_START("-st-"),
     FILE_CHUNK("~fc~");
     
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the next segment file ahead of the write head so that rolling to a new 
+ * segment does not pay for file creation or block allocation on the commit path.  
+ * One file is prepared at a time.
+ * <p>
+ * Buffered files, new or recycled, are zero filled out to the segment size and forced 
+ * so the write head only ever overwrites allocated blocks.  Readers stop at the first 
+ * zeroed chunk as they do for a recycled file, and the segment is truncated to what 
+ * was written when it is closed.  Direct, mapped and async channels track their own 
+ * length and are prepared empty.
+ * <p>
+ * The prepared file is created under its final segment name but is not part of
+ * the segment list until it is taken.  If the process dies before that, recovery finds 
+ * a segment with no header at the end of the list and removes it like any other 
+ * partially written segment.
+ *
+ * @author mscott
+ */
+class SegmentPreallocator implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentPreallocator.class);
+    private static final int ZERO_BLOCK = 1024 * 1024;
+
+    private final ExecutorService worker;
+    private final NIOStreamImpl stream;
+    private File preparing;
+    private Future<FileChannel> prepared;
+    //  the write head is waiting on the file, stop zeroing it
+    private volatile boolean wanted;
+
+    SegmentPreallocator(final File directory, NIOStreamImpl stream) {
+        this.stream = stream;
+        worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName("segment preallocator - " + directory.getName());
+                return t;
+            }
+        });
+    }
+
+    synchronized void prepare(final File next) {
+        discard();
+        wanted = false;
+        preparing = next;
+        prepared = worker.submit(new Callable<FileChannel>() {
+            @Override
+            public FileChannel call() throws IOException {
+                FileChannel channel = WritingSegment.createNewFile(next, stream);
+                try {
+                    if ( !(channel instanceof DirectFileChannel || channel instanceof MappedFileChannel 
+                        || channel instanceof AsyncFileChannel) ) {
+                        allocate(channel, Math.max(channel.size(), stream.getSegmentSize()));
+                    }
+                    return channel;
+                } catch ( IOException | RuntimeException e ) {
+                    channel.close();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * zero the whole file, stale chunks of a recycled file included, and force it so 
+     * neither the allocation nor the zeros are paid for by the first sync of the segment.
+     * if the write head wants the file first, the rest is cut off rather than waited for.
+     */
+    private void allocate(FileChannel channel, long size) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocateDirect((int)Math.min(ZERO_BLOCK, Math.max(size, 1)));
+        long position = 0;
+        while ( position < size ) {
+            if ( wanted ) {
+                channel.truncate(position);
+                return;
+            }
+            zeros.clear();
+            zeros.limit((int)Math.min(zeros.capacity(), size - position));
+            position += channel.write(zeros, position);
+        }
+        channel.force(true);
+    }
+
+    /**
+     * @return an open channel on the prepared file or null if next was not prepared, 
+     *         in which case the caller creates the file itself
+     */
+    synchronized FileChannel take(File next) {
+        if ( prepared == null ) {
+            return null;
+        }
+        if ( !next.equals(preparing) ) {
+            discard();
+            return null;
+        }
+        wanted = true;
+        Future<FileChannel> channel = prepared;
+        prepared = null;
+        preparing = null;
+        try {
+            return get(channel);
+        } catch ( ExecutionException ee ) {
+            LOGGER.warn("unable to preallocate " + next, ee.getCause());
+            return null;
+        }
+    }
+
+    synchronized boolean isPrepared(File next) {
+        return prepared != null && prepared.isDone() && next.equals(preparing);
+    }
+
+    private void discard() {
+        if ( prepared == null ) {
+            return;
+        }
+        wanted = true;
+        try {
+            get(prepared).close();
+        } catch ( ExecutionException ee ) {
+            //  nothing was created
+        } catch ( IOException ioe ) {
+            LOGGER.warn("unable to close preallocated segment " + preparing, ioe);
+        }
+        if ( preparing.exists() && !preparing.delete() ) {
+            LOGGER.warn("unable to delete preallocated segment " + preparing);
+        }
+        prepared = null;
+        preparing = null;
+    }
+
+    //  file creation is short, wait it out rather than leave a half made file behind
+    private static FileChannel get(Future<FileChannel> channel) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return channel.get();
+                } catch ( InterruptedException ie ) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        discard();
+        worker.shutdown();
+    }
+}
@@ -19,6 +19,7 @@ import com.terracottatech.frs.io.Chunk;
 import com.terracottatech.frs.io.Direction;
 import com.terracottatech.frs.io.FileBuffer;
 import com.terracottatech.frs.util.ByteBufferUtils;
+import com.terracottatech.frs.util.Crc32c;
 
 import java.io.Closeable;
 import java.io.EOFException;
@@ -27,8 +28,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Checksum;
 
 /**
  *
@@ -40,8 +44,20 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
     private static final short IMPL_NUMBER = 02;
     private long maxMarker;
     private WritingSegmentJumpList writeJumpList;
+    //  marker of each chunk in the jump list, null if the markers can not be indexed
+    private WritingSegmentJumpList markerList;
+    private long lastIndexed;
     private long totalWrite;
     private boolean existingFile = false;
+    private boolean recycled = false;
+    //  everything past the write position is already zero
+    private boolean zeroed = false;
+    //  end of the stale bytes of a recycled file and how far ahead of the write position they are zeroed
+    private long staleEnd;
+    private long zeroedTo;
+    private FileChannel prepared;
+    //  never written to, only duplicated
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(256 * 1024);
 
     WritingSegment(NIOStreamImpl p, File file) {
         super(p, file);
@@ -50,6 +66,16 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
         } 
     }
 
+    /**
+     * @param prepared channel on a file created ahead of time by a {@link SegmentPreallocator}, 
+     *                 either empty or zero filled
+     */
+    WritingSegment(NIOStreamImpl p, File file, FileChannel prepared) {
+        super(p, file);
+        this.prepared = prepared;
+        this.zeroed = true;
+    }
+
     long getMaximumMarker() {
         return maxMarker;
     }
@@ -73,6 +99,36 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
         buffer.putLong(super.getBaseMarker());
 
         buffer.write(1);
+        terminate();
+        if ( buffer.getFileChannel() instanceof AsyncFileChannel ) {
+    //  random access readers open the file as soon as it is the write head, the header must be there
+            ((AsyncFileChannel)buffer.getFileChannel()).awaitWrites();
+        }
+    }
+    
+    /**
+     * A recycled file still holds the chunks of the segment it used to be past the 
+     * write position.  Readers of this segment must stop at the next chunk start rather 
+     * than at a stale chunk that happens to line up, so the stale bytes are zeroed a 
+     * stride ahead of the write position.  Each stale byte is zeroed once rather than 
+     * every chunk paying for a terminator write.
+     */
+    private void terminate() throws IOException {
+        if ( !recycled || zeroed ) {
+            return;
+        }
+        long offset = buffer.offset();
+        if ( offset >= staleEnd ) {
+            zeroed = true;
+        } else if ( offset + ByteBufferUtils.INT_SIZE > zeroedTo ) {
+            ByteBuffer zeros = ZEROS.duplicate();
+            zeros.limit((int)Math.min(zeros.capacity(), staleEnd - offset));
+            long position = offset;
+            while ( zeros.hasRemaining() ) {
+                position += buffer.getFileChannel().write(zeros, position);
+            }
+            zeroedTo = position;
+        }
     }
 
     //  open and write the header.
@@ -82,11 +138,18 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
                 getStream().createFileBuffer(createFileChannel(), 512 * 1024) :
                 new FileBuffer(createFileChannel(), ByteBuffer.allocate(512 * 1024));
         }
+//  the mapping or the async stage is the staging area, gathering small buffers first is a wasted copy
+        buffer.setCoalescing(!(buffer.getFileChannel() instanceof MappedFileChannel 
+            || buffer.getFileChannel() instanceof AsyncFileChannel));
 
         if ( existingFile ) {
             try {
                 buffer.partition(FILE_HEADER_SIZE);
                 buffer.read(1);
+                if ( buffer.peekInt() == 0 ) {
+        //  a recycled file that was renamed but never written
+                    throw new EOFException("unwritten header");
+                }
                 readFileHeader(buffer);
             } catch ( HeaderException header ) {
                 throw new IOException(header);
@@ -95,21 +158,133 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
             }
         } else {
             this.writeJumpList = new WritingSegmentJumpList();
+            this.markerList = new WritingSegmentJumpList();
+            staleEnd = buffer.getFileChannel().size();
+            recycled = staleEnd > 0;
         }
         
         return this;
     }
     
     private FileChannel createFileChannel() throws IOException {
-        if ( existingFile ) {
+        if ( prepared != null ) {
+            FileChannel channel = prepared;
+            prepared = null;
+            return channel;
+        } else if ( existingFile ) {
             return new RandomAccessFile(getFile(), "rw").getChannel();
         } else {
-            return new FileOutputStream(getFile()).getChannel();
+            return createNewFile(getFile(), getStream());
         }
     }
     
-    void setJumpList(WritingSegmentJumpList jumps) {
+    /**
+     * @param stream write mode of the stream, null for a plain buffered channel
+     */
+    static FileChannel createNewFile(File f, NIOStreamImpl stream) throws IOException {
+        if ( stream != null && stream.isDirectIO() ) {
+            FileChannel channel = DirectFileChannel.create(f);
+            if ( channel != null ) {
+                return channel;
+            }
+        } else if ( stream != null && stream.isMappedWrites() ) {
+            return MappedFileChannel.create(f, MappedFileChannel.DEFAULT_WINDOW);
+        } else if ( stream != null && stream.getAsyncDepth() > 0 ) {
+            return AsyncFileChannel.create(f, stream.getAsyncDepth());
+        }
+        if ( stream != null ) {
+            File free = stream.takeRecycledFile(f.getParentFile());
+            if ( free != null ) {
+                FileChannel channel = recycle(free, f);
+                if ( channel != null ) {
+                    return channel;
+                }
+            }
+        }
+        return new FileOutputStream(f).getChannel();
+    }
+    
+    /**
+     * Reuse the blocks of a dead segment for f.  The header and the jump list footer 
+     * are zeroed and forced before the rename so the stale segment can never be read 
+     * under its new name.  
+     * 
+     * @return channel on f positioned at the start, or null if free could not be reused
+     */
+    static FileChannel recycle(File free, File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(free, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            channel.write(ByteBuffer.allocate((int)Math.min(size, FILE_HEADER_SIZE)), 0);
+            int footer = 3 * ByteBufferUtils.INT_SIZE;
+            if ( size > FILE_HEADER_SIZE + footer ) {
+                channel.write(ByteBuffer.allocate(footer), size - footer);
+            }
+            channel.force(false);
+        } finally {
+            raf.close();
+        }
+        if ( !free.renameTo(f) ) {
+            if ( !free.delete() ) {
+                throw new IOException("unable to reuse or delete " + free);
+            }
+            return null;
+        }
+        return new RandomAccessFile(f, "rw").getChannel();
+    }
+    
+    void setJumpList(WritingSegmentJumpList jumps, WritingSegmentJumpList markers) {
         this.writeJumpList = jumps;
+        this.markerList = markers;
+    }
+    
+    /**
+     * markers are indexed as int deltas so they must climb by no more than an int 
+     * from chunk to chunk
+     */
+    static boolean isIndexable(WritingSegmentJumpList markers, long last, long next) {
+        return markers.size() == 0 || ( next > last && next - last <= Integer.MAX_VALUE );
+    }
+    
+    private void addChunk(long end, long marker) {
+        if ( markerList != null ) {
+            if ( isIndexable(markerList, this.lastIndexed, marker) ) {
+                markerList.add(marker);
+                this.lastIndexed = marker;
+            } else {
+                markerList = null;
+            }
+        }
+        writeJumpList.add(end);
+        if ( buffer.getFileChannel() instanceof AsyncFileChannel ) {
+            ((AsyncFileChannel)buffer.getFileChannel()).mark(marker);
+        }
+    }
+    
+    /**
+     * @return completes once the write of marker has reached the file
+     */
+    CompletableFuture<Void> whenWritten(long marker) {
+        synchronized ( this ) {
+            if ( buffer != null && buffer.getFileChannel() instanceof AsyncFileChannel ) {
+                return ((AsyncFileChannel)buffer.getFileChannel()).whenWritten(marker);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return true if the caller waited for the async write of marker to complete
+     */
+    boolean waitForWrite(long marker) throws InterruptedException, IOException {
+        AsyncFileChannel async = null;
+        synchronized ( this ) {
+            if ( buffer != null && buffer.getFileChannel() instanceof AsyncFileChannel ) {
+                async = (AsyncFileChannel)buffer.getFileChannel();
+            }
+        }
+        return async != null && async.waitForMarker(marker);
     }
 
     private long piggybackBufferOptimization(ByteBuffer used) throws IOException {
@@ -129,7 +304,8 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
 //   write it all out
         amt = buffer.writeFully(used);
 
-        writeJumpList.add(buffer.offset());
+        addChunk(buffer.offset(), this.getMaximumMarker());
+        terminate();
         return amt;
     }
 
@@ -162,13 +338,18 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
             try {
                 return buffer.write(writeCount);
             } finally {
-                writeJumpList.add(buffer.offset());
+                addChunk(buffer.offset(), maxMarker);
+                terminate();
             }
         }
     }
 
     synchronized void prepareForClose() throws IOException {
         if (buffer != null && buffer.isOpen()) {
+            if ( buffer.getFileChannel() instanceof AsyncFileChannel ) {
+    //  readers trust the jump list of a closed segment, it must not land before the chunks it points at
+                ((AsyncFileChannel)buffer.getFileChannel()).awaitWrites();
+            }
             buffer.clear();
             buffer.put(SegmentHeaders.CLOSE_FILE.getBytes());
             writeJumpList(buffer);
@@ -182,6 +363,11 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
         //  don't need any memory buffers anymore       
         if ( buffer != null && buffer.isOpen() ) {
             totalWrite = buffer.getTotal();
+            if ( recycled || buffer.getFileChannel() instanceof DirectFileChannel ) {
+        //  readers expect the jump list at the end of a closed segment, not a stale 
+        //  segment or direct IO block padding, so trim before the final sync
+                buffer.getFileChannel().truncate(buffer.offset());
+            }
             long delta = System.nanoTime();
             buffer.sync(true);
             delta = System.nanoTime() - delta;
@@ -199,7 +385,7 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
     @Override
     public long size() {
         try {
-            return buffer.size();
+            return recycled ? buffer.offset() : buffer.size();
         } catch (IOException ioe) {
             return -1;
         }
@@ -261,12 +447,55 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
             target.putInt(-1);
         }
         target.put(SegmentHeaders.JUMP_LIST.getBytes());
+        if ( markerList != null && markerList.size() > 0 && markerList.size() == writeJumpList.size() ) {
+            writeMarkerIndex(target);
+        }
+    }
+
+    /**
+     * Follow the jump list with the marker of every chunk so random access readers 
+     * can index a closed segment from the footer alone.  Layout is described in 
+     * {@link AbstractReadbackStrategy#readFooter(ByteBuffer)}.
+     */
+    private void writeMarkerIndex(FileBuffer target) throws IOException {
+        Checksum crc = Crc32c.create();
+        boolean first = true;
+        long last = 0;
+        for (long marker : markerList) {
+            if (target.remaining() < ByteBufferUtils.LONG_SIZE
+                    + ByteBufferUtils.INT_SIZE
+                    + ByteBufferUtils.INT_SIZE
+                    + ByteBufferUtils.INT_SIZE) {
+                target.write(1);
+                target.clear();
+            }
+            if ( first ) {
+                target.putLong(marker);
+                AbstractReadbackStrategy.checksum(crc, marker, ByteBufferUtils.LONG_SIZE);
+                first = false;
+            } else {
+                int delta = (int)(marker - last);
+                target.putInt(delta);
+                AbstractReadbackStrategy.checksum(crc, delta, ByteBufferUtils.INT_SIZE);
+            }
+            last = marker;
+        }
+        target.putInt((int)crc.getValue());
+        target.putInt(markerList.size());
+        target.put(SegmentHeaders.MARKER_INDEX.getBytes());
     }
 
     public long position() throws IOException {
         return (buffer == null) ? 0 : buffer.position();
     }
 
+    /**
+     * @return file offset the next chunk is written at, the end of the last one
+     */
+    long getChunkOffset() {
+        return (buffer == null) ? -1 : buffer.offset();
+    }
+
 //  assume single threaded
     public long fsync(boolean meta) throws IOException {
         if ( buffer == null ) {
@@ -280,6 +509,25 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
         return pos;
     }
     
+    /**
+     * force what has been written so far without waiting on the writer.  a segment 
+     * closed underneath the flush was forced by its close.
+     */
+    void flush() throws IOException {
+        FileBuffer target;
+        synchronized ( this ) {
+            target = buffer;
+        }
+        if ( target == null ) {
+            return;
+        }
+        try {
+            target.sync(false);
+        } catch ( ClosedChannelException closed ) {
+            //  closed and forced by the writer
+        }
+    }
+    
     protected void limit(long pos) throws IOException {
         if ( buffer == null ) {
             throw new IOException("segment is closed");
@@ -289,6 +537,8 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
         buffer.put(SegmentHeaders.CLOSE_FILE.getBytes());
         writeJumpList(buffer);
         buffer.write(1);
+        //  anything past the jump list is from a torn write, readers expect the jump list at the end
+        buffer.getFileChannel().truncate(buffer.offset());
         long delta = System.nanoTime();
         buffer.sync(true);
         delta = System.nanoTime() - delta;
@@ -301,7 +551,7 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
         }
         buffer.clear();
         buffer.position(FILE_HEADER_SIZE);
-        IntegrityReadbackStrategy find = new IntegrityReadbackStrategy(buffer);
+        IntegrityReadbackStrategy find = new IntegrityReadbackStrategy(buffer, getBaseMarker());
         int count = 0;
         try {
             while (find.hasMore(Direction.FORWARD)) {
@@ -316,20 +566,31 @@ class WritingSegment extends NIOSegment implements Iterable<Chunk>, Closeable {
             buffer.clear();
             maxMarker = find.getMaximumMarker();           
             buffer.position(find.getLastValidPosition());
-            setJumpList(find.getJumpList());
+            setJumpList(find.getJumpList(), find.getMarkers());
         }
         
         if ( count == 0 ) {
             return false;
         }
         
-        if ( !find.wasClosed() && verifyChunkMark(this.position()) ) {
+        if ( !isClosedAtEnd(find) && verifyChunkMark(this.position()) ) {
             this.limit(this.position());
         }
         
         return true;
     }
     
+    //  a close mark followed by more than the footer is left over from a recycled file
+    private boolean isClosedAtEnd(IntegrityReadbackStrategy find) throws IOException {
+        if ( !find.wasClosed() ) {
+            return false;
+        }
+        int count = find.getJumpList().size();
+        long remaining = buffer.size() - find.getLastValidPosition();
+        return remaining == AbstractReadbackStrategy.footerLength(SegmentHeaders.JUMP_LIST.getIntValue(), count) 
+            || remaining == AbstractReadbackStrategy.footerLength(SegmentHeaders.MARKER_INDEX.getIntValue(), count);
+    }
+    
     private boolean verifyChunkMark(long pos) throws IOException {
         buffer.clear();
         buffer.position(pos - ByteBufferUtils.INT_SIZE);
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+/**
+ * Chooses the capacity of the next commit list region from the observed
+ * record arrival rate and the latency of writing a region to the IOManager.
+ * <p>
+ * The goal is a region that fills in roughly the time it takes to write the
+ * previous one, so the IO thread is never idle and writers are never stuck
+ * waiting on a full list.  Regions that fill completely double the capacity,
+ * otherwise the capacity drifts towards the estimate.
+ *
+ * @author mscott
+ */
+public class AdaptiveCommitListSizer {
+
+    private static final double SMOOTHING = 0.25;
+    private static final int HEADROOM = 2;
+
+    private final int minSize;
+    private final int maxSize;
+
+    private volatile int capacity;
+//  records per nanosecond
+    private volatile double arrivalRate = 0;
+//  nanoseconds
+    private volatile double writeLatency = 0;
+
+    public AdaptiveCommitListSizer(int initial, int minSize, int maxSize) {
+        if ( minSize <= 0 || maxSize < minSize ) {
+            throw new IllegalArgumentException("bad commit list bounds min:" + minSize + " max:" + maxSize);
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.capacity = clamp(initial);
+    }
+
+    public int nextSize() {
+        return capacity;
+    }
+
+    public int getMinimumSize() {
+        return minSize;
+    }
+
+    public int getMaximumSize() {
+        return maxSize;
+    }
+
+    /**
+     * called by the write queuer each time a region is closed and handed off for writing
+     *
+     * @param records number of records in the closed region
+     * @param regionCapacity the capacity the region was created with
+     * @param elapsed nanoseconds since the previous region was closed
+     */
+    public void regionClosed(int records, int regionCapacity, long elapsed) {
+        if ( records <= 0 || elapsed <= 0 ) {
+            return;
+        }
+        double rate = ((double)records) / elapsed;
+        arrivalRate = ( arrivalRate == 0 ) ? rate : arrivalRate + (rate - arrivalRate) * SMOOTHING;
+
+        int current = capacity;
+        if ( records >= regionCapacity ) {
+  //  the region filled before the write queuer got to it, writers are likely spinning
+            capacity = clamp((long)current * 2);
+        } else if ( writeLatency > 0 ) {
+            long target = Math.round(arrivalRate * writeLatency * HEADROOM);
+            capacity = clamp(current + Math.round((target - current) * SMOOTHING));
+        }
+    }
+
+    /**
+     * called by the IO thread after each region is written (and synced if requested)
+     *
+     * @param latency nanoseconds spent writing the region
+     */
+    public void regionWritten(long latency) {
+        if ( latency <= 0 ) {
+            return;
+        }
+        writeLatency = ( writeLatency == 0 ) ? latency : writeLatency + (latency - writeLatency) * SMOOTHING;
+    }
+
+    private int clamp(long size) {
+        if ( size < minSize ) {
+            return minSize;
+        } else if ( size > maxSize ) {
+            return maxSize;
+        } else {
+            return (int)size;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveCommitListSizer{" + "capacity=" + capacity + ", min=" + minSize + ", max=" + maxSize +
+                ", arrivalRate=" + arrivalRate * 1e9 + "/s, writeLatency=" + writeLatency * 1e-3 + "us}";
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How threads wait on the log.  Appenders wait for an older region to be written
+ * when they run too far ahead of the IO thread and the write queuer waits for a
+ * region to become contiguous.
+ * <p>
+ * BLOCKING parks on the future or latch and is the historical behavior.  BUSY_SPIN
+ * and YIELD keep the thread on cpu for the lowest hand-off latency, PARK backs off
+ * exponentially for dense deployments where cpu is scarce.  Waiting on a region no
+ * record has reached yet always blocks so an idle log does not hold a cpu.
+ *
+ * @author mscott
+ */
+public abstract class AppendWaitStrategy {
+
+    public static final String BUSY_SPIN = "BUSY_SPIN";
+    public static final String YIELD = "YIELD";
+    public static final String PARK = "PARK";
+    public static final String BLOCKING = "BLOCKING";
+
+    //  regions an appender hops over before it waits for the one it missed to be written
+    static final int RETRIES = 512;
+
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+
+    public static AppendWaitStrategy create(String type) {
+        if ( BLOCKING.equals(type) ) {
+            return new Blocking();
+        } else if ( BUSY_SPIN.equals(type) ) {
+            return new BusySpin();
+        } else if ( YIELD.equals(type) ) {
+            return new Yield();
+        } else if ( PARK.equals(type) ) {
+            return new Park();
+        } else {
+            throw new IllegalArgumentException("unknown append wait strategy " + type);
+        }
+    }
+
+    /**
+     * wait for a write to complete.  Failures are ignored here, the waiter only
+     * cares that the write is no longer outstanding.
+     */
+    public abstract void waitFor(Future<Void> write);
+
+    /**
+     * @return true if the latch reached zero, false on timeout
+     */
+    public abstract boolean await(CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * called each time an append misses its region because it was already closed or
+     * full.  the appender moves on to the next region, every {@link #RETRIES} misses
+     * it waits for the region it missed so it cannot run unbounded ahead of the IO thread.
+     *
+     * @param round misses so far by this append
+     * @param write the write of the region that was missed
+     */
+    public void retry(int round, Future<Void> write) {
+        if ( round > 0 && round % RETRIES == 0 ) {
+            waitFor(write);
+        }
+    }
+
+    /**
+     * wait on a latch nothing is counting down yet.  this always blocks, whatever the
+     * strategy, there is no hand-off to be quick about.
+     *
+     * @return true if the latch reached zero, false on timeout
+     */
+    public boolean awaitIdle(CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException {
+        if ( latch.getCount() == 0 ) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            return latch.await(timeout, unit);
+        } finally {
+            recordWait(System.nanoTime() - start);
+        }
+    }
+
+    protected void recordWait(long nanos) {
+        waitTime.addAndGet(nanos);
+        waitCount.incrementAndGet();
+    }
+
+    /**
+     * @return total nanoseconds spent waiting
+     */
+    public long getWaitTime() {
+        return waitTime.get();
+    }
+
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{waits=" + waitCount.get() + ", waited=" + (waitTime.get() / 1000000) + "ms}";
+    }
+
+    static class Blocking extends AppendWaitStrategy {
+
+        @Override
+        public void waitFor(Future<Void> write) {
+            if ( write.isDone() ) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                write.get();
+            } catch ( InterruptedException ie ) {
+
+            } catch ( ExecutionException ee ) {
+
+            } finally {
+                recordWait(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean await(CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException {
+            return awaitIdle(latch, timeout, unit);
+        }
+    }
+
+    /**
+     * keeps checking on the thread, idling between checks
+     */
+    abstract static class Polling extends AppendWaitStrategy {
+
+        @Override
+        public void waitFor(Future<Void> write) {
+            if ( write.isDone() ) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                int round = 0;
+                while ( !write.isDone() && !Thread.currentThread().isInterrupted() ) {
+                    idle(round++);
+                }
+            } finally {
+                recordWait(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean await(CountDownLatch latch, long timeout, TimeUnit unit) throws InterruptedException {
+            if ( latch.getCount() == 0 ) {
+                return true;
+            }
+            long start = System.nanoTime();
+            long deadline = start + unit.toNanos(timeout);
+            try {
+                int round = 0;
+                while ( latch.getCount() != 0 ) {
+                    if ( Thread.interrupted() ) {
+                        throw new InterruptedException();
+                    }
+                    if ( System.nanoTime() - deadline >= 0 ) {
+                        return false;
+                    }
+                    idle(round++);
+                }
+                return true;
+            } finally {
+                recordWait(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void retry(int round, Future<Void> write) {
+            if ( round > 0 && round % RETRIES == 0 ) {
+                waitFor(write);
+            } else {
+                idle(round);
+            }
+        }
+
+        protected abstract void idle(int round);
+    }
+
+    static class BusySpin extends Polling {
+
+        @Override
+        protected void idle(int round) {
+
+        }
+    }
+
+    static class Yield extends Polling {
+
+        @Override
+        protected void idle(int round) {
+            Thread.yield();
+        }
+    }
+
+    static class Park extends Polling {
+        private static final int SPINS = 64;
+        private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+        @Override
+        protected void idle(int round) {
+            if ( round < SPINS ) {
+                return;
+            }
+            int shift = Math.min(round - SPINS, 20);
+            LockSupport.parkNanos(Math.min(1000L << shift, MAX_PARK));
+        }
+    }
+}
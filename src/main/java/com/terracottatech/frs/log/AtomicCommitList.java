@@ -19,7 +19,6 @@ import com.terracottatech.frs.SnapshotRequest;
 import java.util.Iterator;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -43,8 +42,27 @@ public class AtomicCommitList implements CommitList {
     private volatile CommitList next;
     private final int      wait;
     private volatile boolean        atHead = false;
+    private final AdaptiveCommitListSizer sizer;
+    private final AppendWaitStrategy waits;
+    private final GroupCommitPolicy groupCommit;
+    private final AtomicLong firstSync = new AtomicLong();
 
     public AtomicCommitList(long startLsn, int maxSize,int waitTime) {
+        this(startLsn, maxSize, waitTime, null);
+    }
+
+    public AtomicCommitList(long startLsn, int maxSize,int waitTime, AdaptiveCommitListSizer sizer) {
+        this(startLsn, maxSize, waitTime, sizer, AppendWaitStrategy.create(AppendWaitStrategy.BLOCKING));
+    }
+
+    public AtomicCommitList(long startLsn, int maxSize,int waitTime, AdaptiveCommitListSizer sizer, AppendWaitStrategy waits) {
+        this(startLsn, maxSize, waitTime, sizer, waits, null);
+    }
+
+    public AtomicCommitList(long startLsn, int maxSize,int waitTime, AdaptiveCommitListSizer sizer, AppendWaitStrategy waits, GroupCommitPolicy groupCommit) {
+        this.sizer = sizer;
+        this.waits = waits;
+        this.groupCommit = groupCommit;
         baseLsn = startLsn;
         endLsn = new AtomicLong();
         regions = new AtomicReferenceArray<LogRecord>(maxSize);
@@ -72,11 +90,14 @@ public class AtomicCommitList implements CommitList {
    //  record actually gets dropped here we need to ensure the sync request moves
    //  with the highest lsn that reqested it.  a couple extra syncs are ok.
             close = setSyncRequest(record.getLsn());
+            if ( groupCommit != null ) {
+                firstSync.compareAndSet(0, System.nanoTime());
+            }
         }
         
         if ( regions.compareAndSet((int) (record.getLsn() - baseLsn), null, record) ) {
             goLatch.countDown();
-            if ( (atHead && close && syncRequest.get() == record.getLsn()) || record instanceof SnapshotRequest) {
+            if ( (atHead && closeOnAppend(close, record.getLsn())) || record instanceof SnapshotRequest) {
               checkForClosed();
             }
         } else {
@@ -87,6 +108,34 @@ public class AtomicCommitList implements CommitList {
         return true;
     }
     
+    private boolean closeOnAppend(boolean close, long lsn) {
+        if ( groupCommit == null ) {
+            return close && syncRequest.get() == lsn;
+        } else {
+  //  hold the region open for more sync writers until the group commit window is over
+            return isSyncRequested() && groupCommitHold() <= 0;
+        }
+    }
+    
+    /**
+     * @return nanoseconds this region should be held open for more sync requests
+     */
+    private long groupCommitHold() {
+        if ( groupCommit == null || !isSyncRequested() ) {
+            return 0;
+        }
+        return groupCommit.remaining(firstSync.get(), regions.length() - (int)goLatch.getCount());
+    }
+    
+    private long pollTime() {
+        long poll = TimeUnit.MILLISECONDS.toNanos(wait);
+        if ( groupCommit != null ) {
+            long hold = groupCommitHold();
+            poll = ( hold > 0 ) ? hold : Math.min(poll, groupCommit.getMaxDelay());
+        }
+        return poll;
+    }
+
     private boolean setSyncRequest(long newRequest) {
         long csync = syncRequest.get();
         while (  csync < newRequest ) {
@@ -119,7 +168,13 @@ public class AtomicCommitList implements CommitList {
     
     @Override
     public CommitList create(long nextLsn) {
-        return new AtomicCommitList( nextLsn, regions.length(), wait);
+        int size = ( sizer == null ) ? regions.length() : sizer.nextSize();
+        return new AtomicCommitList( nextLsn, size, wait, sizer, waits, groupCommit);
+    }
+
+    @Override
+    public int getCapacity() {
+        return regions.length();
     }
 
     @Override
@@ -179,7 +234,7 @@ public class AtomicCommitList implements CommitList {
     }
 
     @Override
-    public Future<Void> getWriteFuture() {
+    public CompletableFuture<Void> getWriteFuture() {
         return written;
     }  
 
@@ -201,12 +256,12 @@ public class AtomicCommitList implements CommitList {
     @Override
     public void waitForContiguous() throws InterruptedException {
         atHead = true;
-        if ( goLatch.getCount() != regions.length() ) {
+        if ( goLatch.getCount() != regions.length() && groupCommitHold() <= 0 ) {
             checkForClosed();
         }
         
-        while ( !goLatch.await(wait, TimeUnit.MILLISECONDS) ) {
-            if ( goLatch.getCount() != regions.length() ) {
+        while ( !await(pollTime()) ) {
+            if ( goLatch.getCount() != regions.length() && groupCommitHold() <= 0 ) {
                 checkForClosed();
             }
         }
@@ -217,6 +272,14 @@ public class AtomicCommitList implements CommitList {
         assert(baseLsn == 0 || checkValues());
     }
 
+    private boolean await(long nanos) throws InterruptedException {
+  //  no record has reached this region yet, nothing to spin for
+        if ( goLatch.getCount() == regions.length() ) {
+            return waits.awaitIdle(goLatch, nanos, TimeUnit.NANOSECONDS);
+        }
+        return waits.await(goLatch, nanos, TimeUnit.NANOSECONDS);
+    }
+
     private void checkForClosed() {
         if ( endLsn.get() == 0 ) {
             int size = regions.length() - (int)goLatch.getCount();
@@ -29,15 +29,28 @@ import java.util.List;
 public class BufferListWrapper extends AbstractChunk implements Closeable {
     
     private final ByteBuffer[]  converted;
+    private final ByteBuffer[]  owned;
     private final BufferSource  source;
     
     public BufferListWrapper(List<ByteBuffer> base) {
         converted = base.toArray(new ByteBuffer[base.size()]);
+        owned = converted;
         this.source = null;
     }    
     
     public BufferListWrapper(List<ByteBuffer> base, BufferSource source) {
         converted = base.toArray(new ByteBuffer[base.size()]);
+        owned = converted;
+        this.source = source;
+    }
+    
+    /**
+     * @param owned the buffers in base that came from source and are returned on close, 
+     *              the rest are only referenced
+     */
+    public BufferListWrapper(List<ByteBuffer> base, List<ByteBuffer> owned, BufferSource source) {
+        converted = base.toArray(new ByteBuffer[base.size()]);
+        this.owned = owned.toArray(new ByteBuffer[owned.size()]);
         this.source = source;
     }
 
@@ -49,7 +62,7 @@ public class BufferListWrapper extends AbstractChunk implements Closeable {
     @Override
     public void close() throws IOException {
       if ( source != null ) {
-        for ( ByteBuffer bb : converted ) {
+        for ( ByteBuffer bb : owned ) {
           source.returnBuffer(bb);
         }
       }
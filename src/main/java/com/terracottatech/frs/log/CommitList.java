@@ -15,7 +15,7 @@
  */
 package com.terracottatech.frs.log;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 /**
  *
@@ -30,8 +30,9 @@ public interface CommitList extends Iterable<LogRecord> {
     boolean isEmpty();
     long getEndLsn();
     long getBaseLsn();
+    int getCapacity();
     void written();
     void exceptionThrown(Exception exp);
     CommitList create(long baseLsn);
-    Future<Void> getWriteFuture();
+    CompletableFuture<Void> getWriteFuture();
 }
@@ -18,7 +18,9 @@ package com.terracottatech.frs.log;
 import com.terracottatech.frs.io.BufferSource;
 import com.terracottatech.frs.io.Chunk;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -28,22 +30,79 @@ public class CopyingPacker extends LogRegionPacker {
     
     private final BufferSource pool;
     private static final int FUTURE_SPACER = 64;
+    private final int zeroCopyThreshold;
     
     public CopyingPacker(Signature sig, String forceLogRegionFormat, BufferSource copyInto) {
-        super(sig, forceLogRegionFormat);
+        this(sig, forceLogRegionFormat, copyInto, Integer.MAX_VALUE);
+    }   
+    
+    /**
+     * @param zeroCopyThreshold payload buffers with at least this many bytes remaining are 
+     *        passed to the IO layer by reference rather than copied into the pool
+     */
+    public CopyingPacker(Signature sig, String forceLogRegionFormat, BufferSource copyInto, int zeroCopyThreshold) {
+        this(sig, forceLogRegionFormat, NEW_REGION_FORMAT_STRING, copyInto, zeroCopyThreshold);
+    }   
+    
+    public CopyingPacker(Signature sig, String forceLogRegionFormat, String regionFormat, BufferSource copyInto, int zeroCopyThreshold) {
+        this(sig, forceLogRegionFormat, regionFormat, false, copyInto, zeroCopyThreshold);
+    }   
+    
+    public CopyingPacker(Signature sig, String forceLogRegionFormat, String regionFormat, boolean compactRecords, BufferSource copyInto, int zeroCopyThreshold) {
+        super(sig, null, forceLogRegionFormat, regionFormat, compactRecords);
         pool = copyInto;
+        this.zeroCopyThreshold = zeroCopyThreshold;
     }   
 
     @Override
     protected Chunk writeRecords(Iterable<LogRecord> records) {     
       Chunk base = super.writeRecords(records);
-      ByteBuffer grp = pool.getBuffer((int)base.length() + FUTURE_SPACER * 2);
-      grp.position(FUTURE_SPACER);
-      for ( ByteBuffer b : base.getBuffers() ) { 
-        grp.put(b);
+      ByteBuffer[] raw = base.getBuffers();
+      if ( !hasLargeBuffer(raw) ) {
+        ByteBuffer grp = pool.getBuffer((int)base.length() + FUTURE_SPACER * 2);
+        grp.position(FUTURE_SPACER);
+        for ( ByteBuffer b : raw ) { 
+          grp.put(b);
+        }
+        grp.flip();
+        grp.position(FUTURE_SPACER);
+        return new BufferListWrapper(Collections.singletonList(grp), pool);
+      }
+//  copy runs of small buffers, large payloads go by reference.  the checksum 
+//  was already taken over every buffer in the region
+      List<ByteBuffer> gather = new ArrayList<ByteBuffer>();
+      List<ByteBuffer> copies = new ArrayList<ByteBuffer>();
+      int x = 0;
+      while ( x < raw.length ) {
+        if ( raw[x].remaining() >= zeroCopyThreshold ) {
+          gather.add(raw[x++]);
+        } else {
+          int run = x;
+          long size = 0;
+          while ( run < raw.length && raw[run].remaining() < zeroCopyThreshold ) {
+            size += raw[run++].remaining();
+          }
+          ByteBuffer grp = pool.getBuffer((int)size);
+          while ( x < run ) {
+            grp.put(raw[x++]);
+          }
+          grp.flip();
+          gather.add(grp);
+          copies.add(grp);
+        }
+      }
+      return new BufferListWrapper(gather, copies, pool);
+    }
+    
+    private boolean hasLargeBuffer(ByteBuffer[] raw) {
+      if ( zeroCopyThreshold == Integer.MAX_VALUE ) {
+        return false;
+      }
+      for ( ByteBuffer b : raw ) {
+        if ( b.remaining() >= zeroCopyThreshold ) {
+          return true;
+        }
       }
-      grp.flip();
-      grp.position(FUTURE_SPACER);
-      return new BufferListWrapper(Collections.singletonList(grp), pool);
+      return false;
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds how long a commit list holds a sync request open so that more
+ * synchronous writers can share the same region and the same fsync.
+ * <p>
+ * A region holding a sync request is closed once the delay since the first
+ * sync request has elapsed or the region holds maxRecords records, whichever
+ * comes first.
+ *
+ * @author mscott
+ */
+public class GroupCommitPolicy {
+
+    private final long maxDelay;
+    private final int maxRecords;
+
+    /**
+     * @param maxRecords close the region early once it holds this many records,
+     *                   zero or less for no limit
+     */
+    public GroupCommitPolicy(long maxDelay, TimeUnit unit, int maxRecords) {
+        if ( maxDelay <= 0 ) {
+            throw new IllegalArgumentException("group commit delay must be positive " + maxDelay);
+        }
+        this.maxDelay = unit.toNanos(maxDelay);
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * @return maximum delay in nanoseconds
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * @param firstSync nanoTime the first sync request arrived in the region
+     * @param records number of records currently in the region
+     * @return nanoseconds the region should still be held open, zero or less to close now
+     */
+    public long remaining(long firstSync, int records) {
+        if ( maxRecords > 0 && records >= maxRecords ) {
+            return 0;
+        }
+        return maxDelay - (System.nanoTime() - firstSync);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitPolicy{" + "maxDelay=" + (maxDelay / 1000) + "us, maxRecords=" + maxRecords + '}';
+    }
+}
@@ -17,8 +17,10 @@ package com.terracottatech.frs.log;
 
 import com.terracottatech.frs.Snapshot;
 import com.terracottatech.frs.io.IOStatistics;
+import com.terracottatech.frs.util.CompletionStages;
 
 import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -42,6 +44,15 @@ public interface LogManager {
   
   Future<Void> appendAndSync(LogRecord record);
 
+  /**
+   * Append the record and sync without blocking the caller.
+   *
+   * @return stage completed once the record is on disk
+   */
+  default CompletionStage<Void> appendAndSyncAsync(LogRecord record) {
+    return CompletionStages.toStage(appendAndSync(record));
+  }
+
   Snapshot snapshot() throws ExecutionException, InterruptedException;
 
   Future<Snapshot> snapshotAsync();
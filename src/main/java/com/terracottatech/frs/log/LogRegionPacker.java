@@ -20,7 +20,10 @@ import com.terracottatech.frs.config.FrsProperty;
 import com.terracottatech.frs.io.BufferSource;
 import com.terracottatech.frs.io.Chunk;
 import com.terracottatech.frs.io.SimpleBufferSource;
+import com.terracottatech.frs.io.WrappingChunk;
 import com.terracottatech.frs.util.ByteBufferUtils;
+import com.terracottatech.frs.util.Crc32c;
+import com.terracottatech.frs.util.LZ4BlockCodec;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -33,9 +36,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.zip.Adler32;
+import java.util.zip.Checksum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.terracottatech.frs.PutAction.COMPACT_PUT_ACTION_OVERHEAD;
 import static com.terracottatech.frs.PutAction.PUT_ACTION_OVERHEAD;
 import static com.terracottatech.frs.action.ActionCodecImpl.ACTION_HEADER_OVERHEAD;
 import static java.nio.charset.StandardCharsets.US_ASCII;
@@ -57,37 +62,85 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
     */
     private static final long RECORD_HEADER_OVERHEAD = 18;
 
+    /* LogRegionPacker.formCompactRecordHeader
+    1-10 bytes - lsn less the region base lsn
+    1-10 bytes - payload length
+    */
+    private static final long COMPACT_RECORD_HEADER_OVERHEAD = 2;
+    static final int MAX_COMPACT_RECORD_HEADER_SIZE = 2 * ByteBufferUtils.MAX_VARLONG_SIZE;
+
     private static final long MINIMUM_RECORD_OVERHEAD = RECORD_HEADER_OVERHEAD + ACTION_HEADER_OVERHEAD + PUT_ACTION_OVERHEAD;
+    private static final long MINIMUM_COMPACT_RECORD_OVERHEAD = COMPACT_RECORD_HEADER_OVERHEAD + ACTION_HEADER_OVERHEAD + COMPACT_PUT_ACTION_OVERHEAD;
 
     private final BufferSource source;
 
     //  just hinting
     private int tuningMax = 10;
     static final short REGION_VERSION = 02;
+    //  same layout as REGION_VERSION, checksummed with CRC32C rather than Adler32
+    static final short CRC32C_REGION_VERSION = 03;
     //we only use the first two US-ASCII bytes of these strings (limited space in the header)
     public static final String OLD_REGION_FORMAT_STRING = "NF";
     public static final String NEW_REGION_FORMAT_STRING = "HT";
+    //  HT region with the hints and records compressed as a single LZ4 block
+    public static final String LZ_REGION_FORMAT_STRING = "LZ";
+    //  HT region with a base lsn after the hints and compact record headers
+    public static final String COMPACT_REGION_FORMAT_STRING = "HV";
+    //  HV region compressed the same way as LZ
+    public static final String LZ_COMPACT_REGION_FORMAT_STRING = "LV";
     //the old region format bytes sequence (notice the default charset use!)
     static final byte[] OLD_REGION_FORMAT = OLD_REGION_FORMAT_STRING.getBytes();
     static final byte[] NEW_REGION_FORMAT = NEW_REGION_FORMAT_STRING.getBytes(US_ASCII);
+    static final byte[] LZ_REGION_FORMAT = LZ_REGION_FORMAT_STRING.getBytes(US_ASCII);
+    static final byte[] COMPACT_REGION_FORMAT = COMPACT_REGION_FORMAT_STRING.getBytes(US_ASCII);
+    static final byte[] LZ_COMPACT_REGION_FORMAT = LZ_COMPACT_REGION_FORMAT_STRING.getBytes(US_ASCII);
     static final short LR_FORMAT = 02;
     private static final String BAD_CHECKSUM = "bad checksum";
     private final Signature cType;
     private final String forcedLogRegionFormat;
+    private final boolean compress;
+    private final boolean compact;
 
     private static final ThreadLocal<byte[]> buffer = new ThreadLocal<byte[]>();
+    private static final ThreadLocal<byte[]> compressBuffer = new ThreadLocal<byte[]>();
+    //  larger regions are written uncompressed, this bounds the scratch each packing thread keeps
+    static final int MAX_COMPRESSED_REGION = 4 * 1024 * 1024;
      
     public LogRegionPacker(Signature sig, String forcedLogRegionFormat) {
         this(sig, new SimpleBufferSource(), forcedLogRegionFormat);
     }   
     
     public LogRegionPacker(Signature sig, BufferSource src, String forcedLogRegionFormat) {
+        this(sig, src, forcedLogRegionFormat, NEW_REGION_FORMAT_STRING);
+    }   
+    
+    /**
+     * @param regionFormat format regions are written in, {@link #NEW_REGION_FORMAT_STRING} or 
+     *        {@link #LZ_REGION_FORMAT_STRING}.  LZ regions that do not compress are written as HT.
+     */
+    public LogRegionPacker(Signature sig, BufferSource src, String forcedLogRegionFormat, String regionFormat) {
+        this(sig, src, forcedLogRegionFormat, regionFormat, false);
+    }   
+    
+    /**
+     * @param compactRecords write record headers as varints with the lsn relative to the 
+     *        first record in the region, turning HT regions into HV and LZ into LV
+     */
+    public LogRegionPacker(Signature sig, BufferSource src, String forcedLogRegionFormat, String regionFormat, boolean compactRecords) {
         cType = sig;
         
-        assert(cType == Signature.NONE || cType == Signature.ADLER32);
+        assert(cType == Signature.NONE || cType == Signature.ADLER32 || cType == Signature.CRC32C);
         
         this.source = ( src == null ) ? new SimpleBufferSource() : src;
         this.forcedLogRegionFormat = forcedLogRegionFormat;
+        if ( LZ_REGION_FORMAT_STRING.equals(regionFormat) ) {
+            this.compress = true;
+        } else if ( NEW_REGION_FORMAT_STRING.equals(regionFormat) ) {
+            this.compress = false;
+        } else {
+            throw new IllegalArgumentException("unknown log region format " + regionFormat);
+        }
+        this.compact = compactRecords;
     }   
     
     @Override
@@ -129,10 +182,14 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
     }
     
     public static LogRecord extract(Signature type, String forcedLogRegionFormat, Chunk data, long match) throws FormatException, IOException {
-        long[] spreads = readRegionHeader(forcedLogRegionFormat, data,type == Signature.ADLER32);
+        Region region = readRegionHeader(forcedLogRegionFormat, data,type != Signature.NONE);
+        long[] spreads = region.spreads;
+        data = region.data;
         long skip = 0;
         for ( long j : spreads ) {
-          long mark = data.getLong(data.position() + skip + j + ByteBufferUtils.SHORT_SIZE);
+          long mark = region.compact ? 
+              region.base + peekVarLong(data, data.position() + skip + j) : 
+              data.getLong(data.position() + skip + j + ByteBufferUtils.SHORT_SIZE);
           if ( mark > match ) {
             break;
           } else {
@@ -147,29 +204,29 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
           if ( !data.hasRemaining() ) {
             return null;
           }
-          target = readRecord(data,match);
+          target = readRecord(region,match);
         }
         return target;
     }
     
     public static List<LogRecord> unpack(Signature type, String forcedLogRegionFormat, Chunk data) throws FormatException {
-        readRegionHeader(forcedLogRegionFormat, data,type == Signature.ADLER32);
+        Region region = readRegionHeader(forcedLogRegionFormat, data,type != Signature.NONE);
         
         LinkedList<LogRecord> queue = new LinkedList<LogRecord>();
                 
-        while ( data.hasRemaining() ) {
-            queue.add(readRecord(data,-1));
+        while ( region.data.hasRemaining() ) {
+            queue.add(readRecord(region,-1));
         }
         return queue;
     }
     
      public static List<LogRecord> unpackInReverse(Signature type, String forcedLogRegionFormat, Chunk data) throws FormatException {
-        readRegionHeader(forcedLogRegionFormat, data,type == Signature.ADLER32);
+        Region region = readRegionHeader(forcedLogRegionFormat, data,type != Signature.NONE);
         
         LinkedList<LogRecord> queue = new LinkedList<LogRecord>();
                 
-        while ( data.hasRemaining() ) {
-            queue.push(readRecord(data,-1));
+        while ( region.data.hasRemaining() ) {
+            queue.push(readRecord(region,-1));
         }
         return queue;
     }   
@@ -177,12 +234,12 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
 
     @Override
     public List<LogRecord> unpack(Chunk data) throws FormatException {
-        readRegionHeader(forcedLogRegionFormat, data,false);
+        Region region = readRegionHeader(forcedLogRegionFormat, data,false);
         
         ArrayList<LogRecord> queue = new ArrayList<LogRecord>();
                 
-        while ( data.hasRemaining() ) {
-            queue.add(readRecord(data,-1));
+        while ( region.data.hasRemaining() ) {
+            queue.add(readRecord(region,-1));
         }
         return queue;
     }
@@ -199,6 +256,13 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
         buffers.add(regionHeader);
         buffers.add(hints);
         
+        ByteBuffer base = null;
+        if ( compact ) {
+            base = source.getBuffer(ByteBufferUtils.LONG_SIZE);
+            buffers.add(base);
+        }
+        long baseLsn = 0;
+        
         ArrayList<Long> spreads = new ArrayList<Long>(HINTS_MAX_SIZE+1);
         long pos = 0;
         for (LogRecord record : records) {
@@ -222,7 +286,7 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
                 hintSpread <<= 1;
               }
             }
-            ByteBuffer rhead = source.getBuffer(LOG_RECORD_HEADER_SIZE);
+            ByteBuffer rhead = source.getBuffer(compact ? MAX_COMPACT_RECORD_HEADER_SIZE : LOG_RECORD_HEADER_SIZE);
             
             buffers.add(rhead);
 
@@ -232,11 +296,22 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
                 len += bb.remaining();
                 buffers.add(bb);
             }
+            if ( compact ) {
+                if ( count == 0 ) {
+                    baseLsn = record.getLsn();
+                }
+                formCompactRecordHeader(len,record.getLsn() - baseLsn,rhead);
+            } else {
+                formRecordHeader(len,record.getLsn(),rhead);
+            }
+            rhead.flip();
             pos += len;
-            pos += LOG_RECORD_HEADER_SIZE;
+            pos += rhead.remaining();
             count++;
-            formRecordHeader(len,record.getLsn(),rhead);
-            rhead.flip();
+        }
+        
+        if ( base != null ) {
+            base.putLong(baseLsn).flip();
         }
         
         hints.putShort((short)spreads.size());
@@ -246,17 +321,88 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
         
         hints.flip();
 
-        formRegionHeader(doChecksum() ? checksum(buffers.subList(2, buffers.size())) : 0,regionHeader);
+        long check = doChecksum() ? checksum(newChecksum(cType), buffers.subList(2, buffers.size())) : 0;
         tuningMax = tuningMax + (int)Math.round((count - tuningMax) * .1);
         
+        if ( compress ) {
+            ByteBuffer body = compress(buffers.subList(1, buffers.size()));
+            if ( body != null ) {
+                formRegionHeader(check, regionHeader, compact ? LZ_COMPACT_REGION_FORMAT : LZ_REGION_FORMAT);
+                return new BufferListWrapper(Arrays.asList(regionHeader, body), source);
+            }
+        }
+        
+        formRegionHeader(check, regionHeader, compact ? COMPACT_REGION_FORMAT : NEW_REGION_FORMAT);
         return new BufferListWrapper(buffers, source);
     }
     
+    /*  LZ region body
+    4 bytes - uncompressed length
+    4 bytes - compressed length
+    n bytes - LZ4 block of the hints and records as they would be written in an HT region
+    
+    the region checksum is taken over the uncompressed records so it is verified after inflating
+    */
+    private ByteBuffer compress(List<ByteBuffer> body) {
+        long size = 0;
+        for ( ByteBuffer bb : body ) {
+            size += bb.remaining();
+        }
+        if ( size > MAX_COMPRESSED_REGION ) {
+            return null;
+        }
+        int len = (int)size;
+        long bound = (long)len + LZ4BlockCodec.maxCompressedLength(len);
+        byte[] scratch = compressBuffer.get();
+        if ( scratch == null || scratch.length < bound ) {
+            scratch = new byte[(int)bound];
+            compressBuffer.set(scratch);
+        }
+        int pos = 0;
+        for ( ByteBuffer bb : body ) {
+            int r = bb.remaining();
+            bb.duplicate().get(scratch, pos, r);
+            pos += r;
+        }
+        int clen = LZ4BlockCodec.compress(scratch, 0, len, scratch, len);
+        if ( clen + 2 * ByteBufferUtils.INT_SIZE >= len ) {
+            return null;
+        }
+        ByteBuffer packed = source.getBuffer(clen + 2 * ByteBufferUtils.INT_SIZE);
+        packed.putInt(len);
+        packed.putInt(clen);
+        packed.put(scratch, len, clen);
+        packed.flip();
+        return packed;
+    }
+    
     protected boolean doChecksum() {
-        return cType == Signature.ADLER32;
+        return cType != Signature.NONE;
+    }
+    
+    private static Checksum newChecksum(Signature type) {
+        return type == Signature.CRC32C ? Crc32c.create() : new Adler32();
     }
     
-    private static long[] readRegionHeader(String forcedLogRegionFormat, Chunk data, boolean checksum) throws FormatException {
+    private static class Region {
+        private final Chunk data;
+        private final long[] spreads;
+        private final boolean compact;
+        private final long base;
+
+        Region(Chunk data, long[] spreads, boolean compact, long base) {
+            this.data = data;
+            this.spreads = spreads;
+            this.compact = compact;
+            this.base = base;
+        }
+    }
+    
+    /**
+     * @return the spreads and the chunk holding the records, which is not the 
+     *         chunk passed in when the region is compressed
+     */
+    private static Region readRegionHeader(String forcedLogRegionFormat, Chunk data, boolean checksum) throws FormatException {
         Chunk header = data.getChunk(ByteBufferUtils.LONG_SIZE * 2 + ByteBufferUtils.SHORT_SIZE + 2);
         try {
             short region = header.getShort();
@@ -276,12 +422,18 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
                 throw new FormatException("log region has mismatched checksums");
             }
 
-            if ( region != REGION_VERSION ) {
+            if ( region != REGION_VERSION && region != CRC32C_REGION_VERSION ) {
                 throw new FormatException("log region has an unrecognized version code");
             }
+            Signature type = region == CRC32C_REGION_VERSION ? Signature.CRC32C : Signature.ADLER32;
+
+            boolean compact = Arrays.equals(COMPACT_REGION_FORMAT, regionFormat) || Arrays.equals(LZ_COMPACT_REGION_FORMAT, regionFormat);
+            if (Arrays.equals(LZ_REGION_FORMAT, regionFormat) || Arrays.equals(LZ_COMPACT_REGION_FORMAT, regionFormat)) {
+                data = inflate(data);
+            }
 
             long[] spreads;
-            if (Arrays.equals(NEW_REGION_FORMAT, regionFormat)) {
+            if (compact || Arrays.equals(NEW_REGION_FORMAT, regionFormat) || Arrays.equals(LZ_REGION_FORMAT, regionFormat)) {
                 spreads = readSpreads(data);
             } else {
                 spreads = new long[0];
@@ -289,14 +441,17 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
 
             if ( check != 0 && checksum ) {
                 long value = data.getBuffers() == null ? 
-                    checksum(data) : checksum(Arrays.asList(data.getBuffers()));
+                    checksum(newChecksum(type), data) : checksum(newChecksum(type), Arrays.asList(data.getBuffers()));
 
                 if (check != value ) {
-                    throw new FormatException("Adler32 checksum is not correct",check,value,data.length());
+                    throw new FormatException(type + " checksum is not correct",check,value,data.length());
                 }
             }    
             
-            return spreads;
+            //  the base lsn is covered by the checksum so is read after it
+            long base = compact ? data.getLong() : 0;
+            
+            return new Region(data, spreads, compact, base);
         } catch ( IOException ioe ) {
           throw new RuntimeException(ioe);
         } finally {
@@ -310,6 +465,25 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
         }
     }
     
+    private static Chunk inflate(Chunk data) throws FormatException {
+        int len = data.getInt();
+        int clen = data.getInt();
+        if ( len < 0 || clen < 0 || clen > data.remaining() ) {
+            throw new FormatException("compressed log region has bad lengths " + len + " " + clen);
+        }
+        byte[] compressed = new byte[clen];
+        data.get(compressed);
+        byte[] raw = new byte[len];
+        try {
+            if ( LZ4BlockCodec.decompress(compressed, 0, clen, raw, 0, len) != len ) {
+                throw new FormatException("compressed log region is short");
+            }
+        } catch ( IllegalArgumentException iae ) {
+            throw new FormatException("compressed log region is corrupt " + iae.getMessage());
+        }
+        return new WrappingChunk(ByteBuffer.wrap(raw));
+    }
+    
     private static long[] readSpreads(Chunk data) throws IOException {
       short len = data.getShort();
       long[] list = new long[len];
@@ -324,11 +498,15 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
     }
     
     protected int formRegionHeader(long checksum, ByteBuffer header) {
+        return formRegionHeader(checksum, header, NEW_REGION_FORMAT);
+    }
+    
+    protected int formRegionHeader(long checksum, ByteBuffer header, byte[] format) {
         header.clear();
-        header.putShort(REGION_VERSION);
+        header.putShort(cType == Signature.CRC32C ? CRC32C_REGION_VERSION : REGION_VERSION);
         header.putLong(checksum);
         header.putLong(checksum);
-        header.put(NEW_REGION_FORMAT);
+        header.put(format);
         header.flip();
 
         return header.remaining();
@@ -341,10 +519,19 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
         return header.remaining();
     }
     
+    protected int formCompactRecordHeader(long length, long lsnOffset, ByteBuffer header) {
+        ByteBufferUtils.putVarLong(header, lsnOffset);
+        ByteBufferUtils.putVarLong(header, length);
+        return header.remaining();
+    }
+    
     protected static long checksum(Chunk bufs) {
+        return checksum(new Adler32(), bufs);
+    }
+    
+    private static long checksum(Checksum checksum, Chunk bufs) {
         long pos = bufs.position();
         long lim = bufs.length();
-        Adler32 checksum = new Adler32();
         byte[] temp = new byte[8192];
         while (bufs.hasRemaining()) {
             int got = bufs.get(temp);
@@ -357,7 +544,10 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
     }
     
     protected static long checksum(Iterable<ByteBuffer> bufs) {
-        Adler32 checksum = new Adler32();
+        return checksum(new Adler32(), bufs);
+    }
+    
+    private static long checksum(Checksum checksum, Iterable<ByteBuffer> bufs) {
         for (ByteBuffer buf : bufs) {
             if (buf.hasArray()) {
                 checksum.update(buf.array(),buf.arrayOffset() + buf.position(),(buf.limit()-buf.position()));
@@ -400,6 +590,59 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
         }
     }  
     
+    private static LogRecord readRecord(Region region,long match) throws FormatException {
+        return region.compact ? 
+            readCompactRecord(region.data, region.base, match) : 
+            readRecord(region.data, match);
+    }
+    
+    private static LogRecord readCompactRecord(Chunk buffer,long base,long match) throws FormatException {
+        long lsn = base + getVarLong(buffer);
+        long len = getVarLong(buffer);
+        try {
+            if ( match < 0 || match == lsn ) {
+                Chunk payload = buffer.getChunk(len);
+                LogRecord record = ( payload instanceof Closeable ) ? 
+                        new DisposableLogRecordImpl(payload) : 
+                        new LogRecordImpl(payload.getBuffers(), null);
+                record.updateLsn(lsn);
+                return record;
+            } else {
+                if ( lsn > match ) {
+                  throw new AssertionError();
+                }
+                buffer.skip(len);
+                return null;
+            } 
+        } catch ( Exception exp ) {
+          throw new RuntimeException("lsn:" + lsn + " len:" + len + " match:" + match,exp);
+        }
+    }
+    
+    private static long getVarLong(Chunk buffer) throws FormatException {
+        long value = 0;
+        for ( int shift = 0; shift < Long.SIZE; shift += 7 ) {
+            byte b = buffer.get();
+            value |= (long)(b & 0x7f) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+        throw new FormatException("log record has a malformed header");
+    }
+    
+    private static long peekVarLong(Chunk buffer, long pos) throws FormatException {
+        long value = 0;
+        for ( int shift = 0; shift < Long.SIZE; shift += 7 ) {
+            byte b = buffer.get(pos++);
+            value |= (long)(b & 0x7f) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+        throw new FormatException("log record has a malformed header");
+    }
+
     private static LogRecord readRecord(Chunk buffer,long match) throws FormatException {
         Chunk header = buffer.getChunk(ByteBufferUtils.LONG_SIZE * 2 + ByteBufferUtils.SHORT_SIZE);
         long lsn = 0;
@@ -443,4 +686,12 @@ public class LogRegionPacker implements LogRegionFactory<LogRecord> {
     public static long getMinimumRecordOverhead() {
         return MINIMUM_RECORD_OVERHEAD;
     }
+
+    /**
+     * @param compact true if records are written with compact headers, both by the
+     *        packer and by {@link com.terracottatech.frs.PutAction}
+     */
+    public static long getMinimumRecordOverhead(boolean compact) {
+        return compact ? MINIMUM_COMPACT_RECORD_OVERHEAD : MINIMUM_RECORD_OVERHEAD;
+    }
 }
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+import com.terracottatech.frs.SnapshotRequest;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Commit list backed by a preallocated ring of record slots shared by every 
+ * region in the chain.  Records are published into the slot for their lsn and 
+ * stay there, a region is only a range of lsns over the ring.  Closing a region 
+ * early never moves records, the next region starts at the following lsn and 
+ * finds them already in place.  The write queuer publishes regions by 
+ * advancing a single contiguous cursor over the ring.
+ * <p>
+ * Slots are released when a region is written.  Appenders that run a full ring 
+ * ahead of the IO thread wait for their slot to be released.
+ *
+ * @author mscott
+ */
+public class RingCommitList implements CommitList {
+  
+    //  number of maximum sized regions the ring holds
+    static final int RING_REGIONS = 8;
+    private static final long CLOSING = -1;
+
+    private final Ring ring;
+    private final long baseLsn;
+    private final int size;
+    private final AtomicLong endLsn = new AtomicLong();
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+    private final Object guard = new Object();
+    private volatile CommitList next;
+    private final int wait;
+    private volatile boolean atHead = false;
+    private final AdaptiveCommitListSizer sizer;
+    private final AppendWaitStrategy waits;
+
+    public RingCommitList(long startLsn, int maxSize, int waitTime) {
+        this(startLsn, maxSize, waitTime, null, AppendWaitStrategy.create(AppendWaitStrategy.BLOCKING));
+    }
+
+    public RingCommitList(long startLsn, int maxSize, int waitTime, AdaptiveCommitListSizer sizer, AppendWaitStrategy waits) {
+        this(new Ring(startLsn, ringSize(maxSize, sizer)), startLsn, maxSize, waitTime, sizer, waits);
+    }
+
+    private RingCommitList(Ring ring, long startLsn, int maxSize, int waitTime, AdaptiveCommitListSizer sizer, AppendWaitStrategy waits) {
+        this.ring = ring;
+        this.baseLsn = startLsn;
+        this.size = Math.min(maxSize, ring.capacity() / 2);
+        this.wait = waitTime;
+        this.sizer = sizer;
+        this.waits = waits;
+    }
+    
+    private static int ringSize(int maxSize, AdaptiveCommitListSizer sizer) {
+        int largest = ( sizer == null ) ? maxSize : Math.max(maxSize, sizer.getMaximumSize());
+        return Integer.highestOneBit(Math.max(largest * RING_REGIONS - 1, 1)) << 1;
+    }
+
+    @Override
+    public boolean append(LogRecord record, boolean sync) {
+        if ( record == null ) return true;
+        
+        long lsn = record.getLsn();
+        assert (lsn >= baseLsn);
+
+        if ( lsn >= baseLsn + size ) {
+            return false;
+        }
+        
+        long end = endLsn.get();
+        if ( end > 0 && end < lsn ) return false;
+        
+        if ( sync ) {
+            ring.requestSync(lsn);
+        }
+        
+        if ( !ring.publish(record) ) {
+            return false;
+        }
+  //  the region may have closed below this lsn while the record was published,
+  //  if so the record already sits in the next region's range
+        if ( !owns(lsn) ) {
+            return false;
+        }
+        
+        if ( (atHead && sync) || record instanceof SnapshotRequest ) {
+            closeAtHighest();
+        }
+        return true;
+    }
+    
+    private boolean owns(long lsn) {
+        long end = settledEnd();
+        return end == 0 || lsn <= end;
+    }
+    
+    private long settledEnd() {
+        long end = endLsn.get();
+        while ( end == CLOSING ) {
+  //  the closer is only scanning the region for the highest record
+            Thread.yield();
+            end = endLsn.get();
+        }
+        return end;
+    }
+    
+  /*  close on the highest record published in this region so that any appender 
+      that saw the region open owns its record */
+    private boolean closeAtHighest() {
+        if ( !endLsn.compareAndSet(0, CLOSING) ) {
+            return false;
+        }
+        long end = ring.highestPublished(baseLsn, baseLsn + size - 1);
+        if ( end < baseLsn ) {
+            endLsn.set(0);
+            return false;
+        }
+        endLsn.set(end);
+        ring.wake();
+        return true;
+    }
+
+    @Override
+    public boolean close(long end) {
+        if ( end >= baseLsn + size ) {
+            return false;
+        }
+        if ( endLsn.compareAndSet(0, end) ) {
+            ring.wake();
+            return true;
+        }
+        return end <= settledEnd();
+    }
+
+    @Override
+    public void waitForContiguous() throws InterruptedException {
+        atHead = true;
+        long last = baseLsn + size - 1;
+        if ( ring.highestPublished(baseLsn, last) >= baseLsn ) {
+            closeAtHighest();
+        }
+        long poll = TimeUnit.MILLISECONDS.toNanos(wait);
+        long deadline = System.nanoTime() + poll;
+  //  register before checking so a publish between the check and the park is not missed
+        ring.enterWait();
+        long parked = 0;
+        try {
+            while ( true ) {
+                long contiguous = ring.advance();
+                long end = settledEnd();
+                if ( end != 0 ) {
+                    if ( contiguous >= end ) {
+                        return;
+                    }
+                } else if ( contiguous >= last ) {
+                    endLsn.compareAndSet(0, last);
+                    continue;
+                } else if ( System.nanoTime() - deadline >= 0 ) {
+                    deadline = System.nanoTime() + poll;
+                    if ( closeAtHighest() ) {
+                        continue;
+                    }
+                }
+                long start = System.nanoTime();
+                ring.await(Math.max(deadline - start, 1));
+                parked += System.nanoTime() - start;
+            }
+        } finally {
+            ring.exitWait();
+            if ( parked > 0 ) {
+                waits.recordWait(parked);
+            }
+        }
+    }
+
+    @Override
+    public CommitList next() {
+        if ( next == null ) {
+            endLsn.compareAndSet(0, baseLsn + size - 1);
+            long nextLsn = settledEnd() + 1;
+            synchronized (guard) {
+                if ( next == null ) {
+                    int nextSize = ( sizer == null ) ? size : sizer.nextSize();
+                    next = new RingCommitList(ring, nextLsn, nextSize, wait, sizer, waits);
+                }
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public CommitList create(long baseLsn) {
+        return new RingCommitList(baseLsn, size, wait, sizer, waits);
+    }
+
+    @Override
+    public boolean isSyncRequested() {
+        return ring.syncRequest() >= baseLsn && !isEmpty();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return baseLsn > endLsn.get();
+    }
+
+    @Override
+    public long getEndLsn() {
+        return endLsn.get();
+    }
+
+    @Override
+    public long getBaseLsn() {
+        return baseLsn;
+    }
+
+    @Override
+    public int getCapacity() {
+        return size;
+    }
+
+    @Override
+    public void written() {
+        if ( !isEmpty() ) {
+            ring.release(baseLsn, endLsn.get());
+        }
+        written.complete(null);
+    }
+
+    @Override
+    public void exceptionThrown(Exception exp) {
+        CommitList chain = null;
+        written.completeExceptionally(exp);
+        ring.fail();
+        synchronized (guard) {
+            chain = next;
+        }
+        if ( chain != null ) {
+            chain.exceptionThrown(exp);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> getWriteFuture() {
+        return written;
+    }
+
+//  iterator interface
+    @Override
+    public Iterator<LogRecord> iterator() {
+        assert(endLsn.get() > 0);
+        
+        final long end = endLsn.get();
+        
+        return new Iterator<LogRecord>() {
+            long current = baseLsn;
+            @Override
+            public boolean hasNext() {
+                return ( current <= end );
+            }
+
+            @Override
+            public LogRecord next() {
+                return ring.get(current++);
+            }
+
+            @Override
+            public void remove() {
+
+            }
+        };
+    }
+    
+    static class Ring {
+        private final AtomicReferenceArray<LogRecord> slots;
+        private final int mask;
+        private final AtomicLong syncRequest = new AtomicLong();
+    //  highest lsn that is contiguous from the start of the ring, only moved by the write queuer
+        private volatile long cursor;
+    //  highest lsn whose slot has been written and may be reused
+        private volatile long released;
+        private volatile boolean failed = false;
+        private volatile Thread waiter;
+
+        Ring(long startLsn, int capacity) {
+            if ( Integer.bitCount(capacity) != 1 ) {
+                throw new IllegalArgumentException("ring capacity must be a power of two " + capacity);
+            }
+            slots = new AtomicReferenceArray<LogRecord>(capacity);
+            mask = capacity - 1;
+            cursor = startLsn - 1;
+            released = startLsn - 1;
+        }
+        
+        int capacity() {
+            return slots.length();
+        }
+        
+        LogRecord get(long lsn) {
+            return slots.get((int)(lsn & mask));
+        }
+        
+        private boolean isPublished(long lsn) {
+            LogRecord r = get(lsn);
+            return r != null && r.getLsn() == lsn;
+        }
+        
+        /**
+         * @return false only if a different record already holds this lsn
+         */
+        boolean publish(LogRecord record) {
+            long lsn = record.getLsn();
+            if ( lsn - released > slots.length() ) {
+                awaitSlot(lsn);
+            }
+            int index = (int)(lsn & mask);
+            while ( true ) {
+                LogRecord current = slots.get(index);
+                if ( current == record ) {
+                    return true;
+                }
+                if ( current != null && current.getLsn() >= lsn ) {
+  //  a later lap only exists once this record was written by a region that owned it
+                    return current.getLsn() > lsn;
+                }
+                if ( lsn <= released ) {
+  //  republished after the region that owned it was written
+                    return true;
+                }
+  //  anything older in the slot is from a released lap
+                if ( slots.compareAndSet(index, current, record) ) {
+                    wake();
+                    return true;
+                }
+            }
+        }
+        
+        private synchronized void awaitSlot(long lsn) {
+            boolean interrupted = false;
+            while ( lsn - released > slots.length() && !failed ) {
+                try {
+                    this.wait();
+                } catch ( InterruptedException ie ) {
+                    interrupted = true;
+                }
+            }
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        synchronized void release(long from, long to) {
+            for ( long lsn = from; lsn <= to; lsn++ ) {
+                slots.lazySet((int)(lsn & mask), null);
+            }
+            if ( to > released ) {
+                released = to;
+            }
+            this.notifyAll();
+        }
+        
+        synchronized void fail() {
+            failed = true;
+            this.notifyAll();
+        }
+        
+        void requestSync(long lsn) {
+            long csync = syncRequest.get();
+            while ( csync < lsn && !syncRequest.compareAndSet(csync, lsn) ) {
+                csync = syncRequest.get();
+            }
+        }
+        
+        long syncRequest() {
+            return syncRequest.get();
+        }
+        
+        long highestPublished(long from, long to) {
+            for ( long lsn = to; lsn >= from; lsn-- ) {
+                if ( isPublished(lsn) ) {
+                    return lsn;
+                }
+            }
+            return from - 1;
+        }
+        
+        long advance() {
+            long c = cursor;
+            while ( isPublished(c + 1) ) {
+                c++;
+            }
+            cursor = c;
+            return c;
+        }
+        
+        void enterWait() {
+            waiter = Thread.currentThread();
+        }
+        
+        void exitWait() {
+            waiter = null;
+        }
+        
+        void await(long nanos) throws InterruptedException {
+            LockSupport.parkNanos(this, nanos);
+            if ( Thread.interrupted() ) {
+                throw new InterruptedException();
+            }
+        }
+        
+        void wake() {
+            Thread w = waiter;
+            if ( w != null ) {
+                LockSupport.unpark(w);
+            }
+        }
+    }
+}
@@ -17,7 +17,6 @@ package com.terracottatech.frs.log;
 
 import java.util.Iterator;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
 
 /**
  *
@@ -40,8 +39,20 @@ public class StackingCommitList implements CommitList {
     private final Object guard = new Object();
     private volatile CommitList next;
     private final int wait;
+    private final AdaptiveCommitListSizer sizer;
+    private final AppendWaitStrategy waits;
 
     public StackingCommitList(long startLsn, int maxSize, int wait) {
+        this(startLsn, maxSize, wait, null);
+    }
+
+    public StackingCommitList(long startLsn, int maxSize, int wait, AdaptiveCommitListSizer sizer) {
+        this(startLsn, maxSize, wait, sizer, AppendWaitStrategy.create(AppendWaitStrategy.BLOCKING));
+    }
+
+    public StackingCommitList(long startLsn, int maxSize, int wait, AdaptiveCommitListSizer sizer, AppendWaitStrategy waits) {
+        this.sizer = sizer;
+        this.waits = waits;
         baseLsn = startLsn;
         endLsn = startLsn-1;
         regions = new LogRecord[maxSize];
@@ -82,7 +93,13 @@ public class StackingCommitList implements CommitList {
     }
     
     public CommitList create(long nextLsn) {
-        return new StackingCommitList( nextLsn, regions.length, wait);
+        int size = ( sizer == null ) ? regions.length : sizer.nextSize();
+        return new StackingCommitList( nextLsn, size, wait, sizer, waits);
+    }
+
+    @Override
+    public int getCapacity() {
+        return regions.length;
     }
 
     @Override
@@ -160,7 +177,10 @@ public class StackingCommitList implements CommitList {
         }
         
         while ((!closed && count != regions.length) || (closed && count != endLsn - baseLsn + 1)) {
+//  appenders hand off through the monitor so this list always blocks, only the time is counted
+            long start = System.nanoTime();
             this.wait(wait);
+            waits.recordWait(System.nanoTime() - start);
             if ( timedout ) {
                 if ( count > 0 ) {
                     this.close(baseLsn + count - 1);
@@ -177,7 +197,7 @@ public class StackingCommitList implements CommitList {
     }
 
     @Override
-    public Future<Void> getWriteFuture() {
+    public CompletableFuture<Void> getWriteFuture() {
         return written;
     }
     
@@ -28,6 +28,7 @@ import com.terracottatech.frs.io.IOManager;
 import com.terracottatech.frs.io.IOStatistics;
 import com.terracottatech.frs.io.MaskingBufferSource;
 import com.terracottatech.frs.io.SplittingBufferSource;
+import com.terracottatech.frs.util.CompletionStages;
 import java.io.Closeable;
 
 import java.io.IOException;
@@ -38,14 +39,18 @@ import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  *
@@ -70,11 +75,18 @@ public class StagingLogManager implements LogManager {
     private int MAX_QUEUE_SIZE;
     private int RECOVERY_QUEUE_SIZE = 64;
     private String forceLogRegionFormat;
+    private String regionFormat = LogRegionPacker.NEW_REGION_FORMAT_STRING;
+    private boolean compactRecords = false;
 
     private ChunkExchange                               exchanger;
-    private final BlockingQueue<WritingPackage>         queue = new ArrayBlockingQueue<WritingPackage>(8);
+    private BlockingQueue<WritingPackage>         queue = new ArrayBlockingQueue<WritingPackage>(8);
+    private int packerThreads = 0;
+    private int zeroCopyThreshold = Integer.MAX_VALUE;
     
     private BufferSource    buffers;
+    private AdaptiveCommitListSizer sizer;
+    private AppendWaitStrategy waits = AppendWaitStrategy.create(AppendWaitStrategy.BLOCKING);
+    private GroupCommitPolicy groupCommit;
 
     public StagingLogManager(IOManager io) {
         this(Signature.ADLER32,new AtomicCommitList( Constants.FIRST_LSN, 1024, 200),io, null);
@@ -85,13 +97,36 @@ public class StagingLogManager implements LogManager {
         String checksum = config.getString(FrsProperty.IO_CHECKSUM);
         this.checksumStyle = Signature.valueOf(checksum);
         this.forceLogRegionFormat = config.getString(FrsProperty.FORCE_LOG_REGION_FORMAT);
+        this.regionFormat = config.getString(FrsProperty.LOG_REGION_FORMAT);
+        this.compactRecords = config.getBoolean(FrsProperty.LOG_COMPACT_RECORDS);
         this.MAX_QUEUE_SIZE = config.getInt(FrsProperty.IO_COMMIT_QUEUE_SIZE);
         this.RECOVERY_QUEUE_SIZE = config.getInt(FrsProperty.IO_RECOVERY_QUEUE_SIZE);
+        if ( config.getBoolean(FrsProperty.IO_COMMIT_QUEUE_ADAPTIVE) ) {
+            this.sizer = new AdaptiveCommitListSizer(MAX_QUEUE_SIZE, 
+                config.getInt(FrsProperty.IO_COMMIT_QUEUE_MIN_SIZE), config.getInt(FrsProperty.IO_COMMIT_QUEUE_MAX_SIZE));
+            LOGGER.debug("==CONFIG(commitList)== adaptive sizing " + sizer);
+        }
+        this.waits = AppendWaitStrategy.create(config.getString(FrsProperty.IO_APPEND_WAIT_STRATEGY));
+        this.packerThreads = config.getInt(FrsProperty.IO_PACKER_THREADS);
+        int threshold = config.getInt(FrsProperty.IO_ZERO_COPY_THRESHOLD);
+        this.zeroCopyThreshold = ( threshold > 0 ) ? threshold : Integer.MAX_VALUE;
+        this.queue = new ArrayBlockingQueue<WritingPackage>(config.getInt(FrsProperty.IO_PACKER_IN_FLIGHT));
         String commitList = config.getString(FrsProperty.IO_COMMITLIST);
+        long groupDelay = config.getLong(FrsProperty.IO_GROUP_COMMIT_MAX_DELAY);
+        if ( groupDelay > 0 ) {
+            if ( commitList.equals("ATOMIC") ) {
+                this.groupCommit = new GroupCommitPolicy(groupDelay, TimeUnit.MICROSECONDS, config.getInt(FrsProperty.IO_GROUP_COMMIT_MAX_RECORDS));
+                LOGGER.debug("==CONFIG(commitList)== group commit " + groupCommit);
+            } else {
+                LOGGER.warn("group commit is only supported by the ATOMIC commit list, ignoring");
+            }
+        }
         if ( commitList.equals("ATOMIC") ) {
-            this.currentRegion = new AtomicCommitList(Constants.FIRST_LSN, MAX_QUEUE_SIZE, config.getInt(FrsProperty.IO_WAIT));
+            this.currentRegion = new AtomicCommitList(Constants.FIRST_LSN, MAX_QUEUE_SIZE, config.getInt(FrsProperty.IO_WAIT), sizer, waits, groupCommit);
         } else if ( commitList.equals("STACKING") ) {
-            this.currentRegion = new StackingCommitList(Constants.FIRST_LSN, MAX_QUEUE_SIZE, config.getInt(FrsProperty.IO_WAIT));
+            this.currentRegion = new StackingCommitList(Constants.FIRST_LSN, MAX_QUEUE_SIZE, config.getInt(FrsProperty.IO_WAIT), sizer, waits);
+        } else if ( commitList.equals("RING") ) {
+            this.currentRegion = new RingCommitList(Constants.FIRST_LSN, MAX_QUEUE_SIZE, config.getInt(FrsProperty.IO_WAIT), sizer, waits);
         }
 
     }
@@ -182,8 +217,9 @@ public class StagingLogManager implements LogManager {
       long processing;
       
       volatile boolean        stopped = false;
-      private final LogRegionFactory  regionFactory = new CopyingPacker(checksumStyle, forceLogRegionFormat, buffers);
-      private final ExecutorService   asyncPacker = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final LogRegionFactory  regionFactory = new CopyingPacker(checksumStyle, forceLogRegionFormat, regionFormat, compactRecords, buffers, zeroCopyThreshold);
+  //  null when regions are packed inline on this thread
+      private final ExecutorService   asyncPacker = ( packerThreads > 0 ) ? Executors.newFixedThreadPool(packerThreads, new ThreadFactory() {
 
             int count = 1;
           
@@ -194,7 +230,7 @@ public class StagingLogManager implements LogManager {
                 t.setDaemon(true);
                 return t;
             }
-        });
+        }) : null;
       
       WriteQueuer() {
         setDaemon(true);
@@ -210,6 +246,7 @@ public class StagingLogManager implements LogManager {
       @Override
       public void run() {
         long last = System.nanoTime();
+        long lastClose = last;
         long turns = 0;
         long size = 0;
         int fill = 0;
@@ -226,6 +263,10 @@ public class StagingLogManager implements LogManager {
               last = System.nanoTime();
               waiting += (last - mark);
               last = System.nanoTime();
+              if ( sizer != null && !oldRegion.isEmpty() ) {
+                  sizer.regionClosed((int)(oldRegion.getEndLsn() - oldRegion.getBaseLsn() + 1), oldRegion.getCapacity(), last - lastClose);
+                  lastClose = last;
+              }
               currentRegion = oldRegion.next();
 
               if ( oldRegion.isEmpty() ) {
@@ -238,8 +279,12 @@ public class StagingLogManager implements LogManager {
               WritingPackage wp = new WritingPackage(oldRegion,regionFactory);
               if ( wp.isEmpty() ) {
                   continue;
+              } else if ( asyncPacker == null ) {
+                  wp.packer().run();
               } else {
-                  wp.run();                
+  //  packages are queued in lsn order, the IO thread packs any package no 
+  //  packer thread has started yet and waits on the rest
+                  asyncPacker.execute(wp.packer());
               }
 
               while ( !queue.offer(wp,200,TimeUnit.MICROSECONDS) ) {
@@ -250,8 +295,9 @@ public class StagingLogManager implements LogManager {
               int lf = (int)(oldRegion.getEndLsn() - oldRegion.getBaseLsn());
               fill += lf;
               turns+=1;
-  //  if in synchronous mode, wait here so more log records are batched in the next region
-              if ( state.acceptRecords() && oldRegion.isSyncRequested() ) {
+  //  if in synchronous mode, wait here so more log records are batched in the next region.
+  //  group commit batches in the commit list instead so keep packing while the region syncs
+              if ( state.acceptRecords() && oldRegion.isSyncRequested() && groupCommit == null ) {
                   try {
                       oldRegion.getWriteFuture().get();
                   } catch ( ExecutionException ee ) {
@@ -267,11 +313,17 @@ public class StagingLogManager implements LogManager {
             }
           }
 
-          asyncPacker.shutdown();
+          if ( asyncPacker != null ) {
+              asyncPacker.shutdown();
+          }
           if ( turns == 0 ) turns = 1;
           if ( LOGGER.isDebugEnabled() ) {
               LOGGER.debug(new Formatter(new StringBuilder()).format("==PERFORMANCE(processing)== waiting: %.3f active: %.3f ave. queue: %d fill: %d",
                       waiting*1e-6,processing*1e-6,size/(turns),fill/turns).out().toString());
+              if ( sizer != null ) {
+                  LOGGER.debug("==PERFORMANCE(commitList)== " + sizer);
+              }
+              LOGGER.debug("==PERFORMANCE(appendWait)== " + waits);
           }
         } catch ( OutOfMemoryError oome ) {
             LOGGER.error("on write queue thread",oome);
@@ -283,6 +335,9 @@ public class StagingLogManager implements LogManager {
       long waiting;
       long writing;
       long written;
+      //  completion of the last package written, packages complete in lsn order
+      CompletableFuture<Void> completed = CompletableFuture.completedFuture(null);
+      volatile Exception syncFailure;
     
       IODaemon() {
         setDaemon(true);
@@ -294,14 +349,18 @@ public class StagingLogManager implements LogManager {
       public void run() {
         WriteQueuer queuer = new WriteQueuer();
         queuer.start();  
+        long lastWritten = highestOnDisk.get();
                 
-        while ( state.acceptRecords() || currentLsn.get() - 1 != highestOnDisk.get()) {
+        while ( state.acceptRecords() || currentLsn.get() - 1 != lastWritten) {
             long start = System.nanoTime();
             try {
               WritingPackage packer = queue.take();
               long taken = System.nanoTime();
               try {
                 waiting += (taken - start);
+                if ( syncFailure != null ) {
+                  throw syncFailure;
+                }
 
                 if (packer.isEmpty()) {
                   io.sync();
@@ -319,12 +378,18 @@ public class StagingLogManager implements LogManager {
                   ((Closeable) c).close();
                 }
 
-                if (packer.doSync()) {
-                  io.sync();
+                lastWritten = packer.endLsn();
+                
+  //  async writes may still be in flight, the package is only on disk once they land
+                CompletionStage<Void> landed = CompletionStages.toStage(io.writtenAsync(packer.endLsn()));
+                CompletionStage<Void> durable = packer.doSync() ? 
+                    CompletionStages.toStage(io.syncAsync()) : null;
+
+                if ( sizer != null ) {
+                  sizer.regionWritten(System.nanoTime() - taken);
                 }
 
-                highestOnDisk.set(packer.endLsn());
-                packer.written();
+                complete(packer, landed, durable);
               } catch (Exception e) {
                 packer.list.exceptionThrown(e);
                 state = state.checkException(e);
@@ -337,10 +402,16 @@ public class StagingLogManager implements LogManager {
             }
         }
         
+        try {
+            completed.join();
+        } catch ( CompletionException ce ) {
+//  already handed to the commit lists that failed
+        }
+        
         try {
             if ( state.isErrorState() ) {
 //  clear any items in the queue
-                long floatingLsn = highestOnDisk.get();
+                long floatingLsn = lastWritten;
                 while ( currentLsn.get() - 1 != floatingLsn ) {
                     CommitList next = queue.take().list;
                     floatingLsn = next.getEndLsn();
@@ -363,6 +434,40 @@ public class StagingLogManager implements LogManager {
             LOGGER.debug("==PERFORMANCE(memory)==" + buffers.toString());
         }
       }
+      
+      /**
+       * packages whose write or pipelined sync is still in flight complete after it, on 
+       * the thread that finished it.  otherwise the package completes here.  a package 
+       * never completes before the one written ahead of it, and a failed write fails 
+       * the package it belongs to and every package after it.
+       */
+      private void complete(final WritingPackage packer, CompletionStage<Void> landed, CompletionStage<Void> durable) throws Exception {
+        final long end = packer.endLsn();
+        final CommitList list = packer.list;
+        CompletionStage<Void> ready = completed.thenCombine(landed, (a, b) -> (Void)null);
+        if ( durable != null ) {
+          ready = ready.thenCombine(durable, (a, b) -> (Void)null);
+        }
+        completed = ready.whenComplete((v, t) -> {
+          if ( t == null ) {
+            highestOnDisk.set(end);
+            list.written();
+          } else {
+            Throwable cause = CompletionStages.unwrap(t);
+            Exception e = ( cause instanceof Exception ) ? (Exception)cause : new IOException(cause);
+            list.exceptionThrown(e);
+            syncFailure = e;
+          }
+        }).toCompletableFuture();
+        if ( completed.isDone() && completed.isCompletedExceptionally() ) {
+          try {
+            completed.join();
+          } catch ( CompletionException ce ) {
+            Throwable cause = CompletionStages.unwrap(ce);
+            throw ( cause instanceof Exception ) ? (Exception)cause : ce;
+          }
+        }
+      }
     }
     
     private Future<Void> recover() {        
@@ -475,7 +580,7 @@ public class StagingLogManager implements LogManager {
     // as it will wake the daemon thread.
     queue.offer(new WritingPackage(new CommitList() {
     @Override
-      public Future<Void> getWriteFuture() {
+      public CompletableFuture<Void> getWriteFuture() {
         return CompletableFuture.completedFuture(null);
       }
         
@@ -525,6 +630,11 @@ public class StagingLogManager implements LogManager {
         throw new UnsupportedOperationException();
       }
 
+      @Override
+      public int getCapacity() {
+        return 0;
+      }
+
       @Override
       public void written() {
         throw new UnsupportedOperationException();
@@ -562,29 +672,17 @@ public class StagingLogManager implements LogManager {
         } catch ( Error e ) {
             throw e;
         } finally {
-       
-            int spincount = 0;
-  //  if we hit this, try and spread out
-            int waitspin = 2 + (Math.round((float)(Math.random() * 1024f)));
+            int round = 0;
             while ( !mine.append(record,sync) ) {
-                if ( spincount++ > waitspin ) {
-                    futureWait(mine);
-                    waitspin += (Math.round((float)(Math.random() * 512f)));
-                }
+                waits.retry(round++, mine.getWriteFuture());
                 mine = mine.next();
             }
         }
         return mine;
     }
-        
-    private void futureWait(CommitList mine) {
-      try {                      
-          mine.getWriteFuture().get();
-      } catch ( InterruptedException ie ) {
-
-      } catch ( ExecutionException ee ) {
-
-      }
+    
+    AppendWaitStrategy getAppendWaitStrategy() {
+      return waits;
     }
 
     @Override
@@ -598,6 +696,12 @@ public class StagingLogManager implements LogManager {
         return _append(record,true).getWriteFuture();
     }
 
+    @Override
+    public CompletionStage<Void> appendAndSyncAsync(LogRecord record) {
+  //  the write future is shared by the whole region, hand out a dependent
+        return _append(record,true).getWriteFuture().thenApply(Function.<Void>identity());
+    }
+
     @Override
     public Snapshot snapshot() throws ExecutionException {
         SnapshotRecord snapshot = new SnapshotRecord();
@@ -669,35 +773,24 @@ public class StagingLogManager implements LogManager {
       }
     }
 
-    static class WritingPackage implements Runnable {
+    static class WritingPackage {
         /**
          * list of writes to make
          */
         private final CommitList                list;
         /**
-         * used to pack the byte buffer
-         */
-        private volatile LogRegionFactory      factory;
-        /**
-         * bytes to write to disk
+         * packs the list into the bytes to write to disk, runs at most once 
+         * whether on the packer pool or on the IO thread
          */
-        private volatile Chunk                  data;
+        private final FutureTask<Chunk>         packing;
         
-        WritingPackage(CommitList list, LogRegionFactory factory) {
+        WritingPackage(final CommitList list, final LogRegionFactory factory) {
             this.list= list;
-            this.factory = factory;
+            this.packing = new FutureTask<Chunk>(() -> factory.pack(list));
         }
-
-        @SuppressWarnings("unchecked")
-        @Override
-        public void run() {
-            if ( data == null ) {
-                synchronized (list) {
-                   if ( data == null ) {
-                      data = factory.pack(list);
-                   }
-                }
-            }
+        
+        Runnable packer() {
+            return packing;
         }
         
         boolean isEmpty() {
@@ -720,14 +813,22 @@ public class StagingLogManager implements LogManager {
             list.written();
         }
         
-        public Chunk take() {
+        /**
+         * packs the list here unless a packer thread has already started, in 
+         * which case wait for it to finish
+         */
+        public Chunk take() throws InterruptedException, IOException {
+            packing.run();
             try {
-                run();
-                assert(data != null);
-                return data;
-            } finally {
-                data = null;
-                factory = null;
+                return packing.get();
+            } catch ( ExecutionException ee ) {
+                Throwable cause = ee.getCause();
+                if ( cause instanceof RuntimeException ) {
+                    throw (RuntimeException)cause;
+                } else if ( cause instanceof Error ) {
+                    throw (Error)cause;
+                }
+                throw new IOException(cause);
             }
         }
     }
@@ -18,6 +18,9 @@ package com.terracottatech.frs.transaction;
 import com.terracottatech.frs.TransactionException;
 import com.terracottatech.frs.action.Action;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  *
  * @author cdennis
@@ -40,6 +43,25 @@ public interface TransactionManager {
    */
   void commit(TransactionHandle handle, boolean synchronous) throws TransactionException;
 
+  /**
+   * Commit the transaction without blocking for the disk write.
+   *
+   * @param handle handle to the transaction to commit.
+   * @param synchronous whether or not the returned stage waits for the commit to be on disk
+   * @return stage completed when the commit is durable, or exceptionally with a
+   *         {@link TransactionException} if the flush fails
+   */
+  default CompletionStage<Void> commitAsync(TransactionHandle handle, boolean synchronous) {
+    CompletableFuture<Void> committed = new CompletableFuture<Void>();
+    try {
+      commit(handle, synchronous);
+      committed.complete(null);
+    } catch (TransactionException e) {
+      committed.completeExceptionally(e);
+    }
+    return committed;
+  }
+
   /**
    * Record the {@link Action} under the given transaction
    *
@@ -18,8 +18,11 @@ package com.terracottatech.frs.transaction;
 import com.terracottatech.frs.TransactionException;
 import com.terracottatech.frs.action.Action;
 import com.terracottatech.frs.action.ActionManager;
+import com.terracottatech.frs.util.CompletionStages;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -51,12 +54,7 @@ public class TransactionManagerImpl implements TransactionManager {
 
   @Override
   public void commit(TransactionHandle handle, boolean synchronous) throws TransactionException {
-    TransactionAccount account = liveTransactions.remove(handle);
-    if (account == null) {
-      throw new IllegalArgumentException(
-              handle + " does not belong to a live transaction.");
-    }
-    TransactionCommitAction action = new TransactionCommitAction(handle, account.begin());
+    TransactionCommitAction action = commitAction(handle);
     if (synchronous) {
       Future<Void> written = actionManager.syncHappened(action);
       boolean interrupted = false;
@@ -78,6 +76,34 @@ public class TransactionManagerImpl implements TransactionManager {
     }
   }
 
+  @Override
+  public CompletionStage<Void> commitAsync(TransactionHandle handle, boolean synchronous) {
+    TransactionCommitAction action = commitAction(handle);
+    if (synchronous) {
+      final CompletableFuture<Void> committed = new CompletableFuture<Void>();
+      actionManager.syncHappenedAsync(action).whenComplete((v, t) -> {
+        if (t == null) {
+          committed.complete(null);
+        } else {
+          committed.completeExceptionally(new TransactionException("Commit failed.", CompletionStages.unwrap(t)));
+        }
+      });
+      return committed;
+    } else {
+      actionManager.happened(action);
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  private TransactionCommitAction commitAction(TransactionHandle handle) {
+    TransactionAccount account = liveTransactions.remove(handle);
+    if (account == null) {
+      throw new IllegalArgumentException(
+              handle + " does not belong to a live transaction.");
+    }
+    return new TransactionCommitAction(handle, account.begin());
+  }
+
   @Override
   public void happened(TransactionHandle handle, Action action) {
     TransactionAccount account = liveTransactions.get(handle);
@@ -30,6 +30,7 @@ public abstract class ByteBufferUtils {
   public static final int INT_SIZE = Integer.SIZE / Byte.SIZE;
   public static final int SHORT_SIZE = Short.SIZE / Byte.SIZE;
   public static final int BYTE_SIZE = Byte.SIZE / Byte.SIZE;
+  public static final int MAX_VARLONG_SIZE = 10;
     
   private ByteBufferUtils() {}
 
@@ -60,6 +61,47 @@ public abstract class ByteBufferUtils {
     throw new BufferUnderflowException();
   }
 
+  /**
+   * unsigned LEB128, seven bits to a byte with the high bit set on all but the last byte.
+   * Negative values always take {@link #MAX_VARLONG_SIZE} bytes, zigzag them first.
+   */
+  public static ByteBuffer putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7fL) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    return buffer.put((byte) value);
+  }
+
+  public static long getVarLong(ByteBuffer[] buffers) {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = get(buffers);
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("malformed varint");
+  }
+
+  public static int varLongSize(long value) {
+    int size = 1;
+    while ((value & ~0x7fL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  public static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  public static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
   public static ByteBuffer getBytes(int length, ByteBuffer[] buffers) {
     if (length == 0) {
       return NULL_BUFFER;
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * @author mscott
+ */
+public final class CompletionStages {
+
+  private CompletionStages() {
+  }
+
+  /**
+   * Adapt a future to a stage.  A {@link CompletableFuture} is adapted without blocking,
+   * any other future is waited on by the calling thread.
+   * <p>
+   * The returned stage is always a dependent so callers cannot complete the source,
+   * which is usually shared by every record in a log region.
+   */
+  public static <T> CompletionStage<T> toStage(Future<T> future) {
+    if (future instanceof CompletableFuture) {
+      return ((CompletableFuture<T>) future).thenApply(Function.<T>identity());
+    }
+    CompletableFuture<T> stage = new CompletableFuture<T>();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        stage.complete(future.get());
+        break;
+      } catch (ExecutionException e) {
+        stage.completeExceptionally(e.getCause());
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return stage;
+  }
+
+  /**
+   * @return the cause of a {@link CompletionException}, or the throwable itself
+   */
+  public static Throwable unwrap(Throwable t) {
+    if (t instanceof CompletionException && t.getCause() != null) {
+      return t.getCause();
+    }
+    return t;
+  }
+}
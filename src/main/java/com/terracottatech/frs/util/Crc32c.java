@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksums.  Uses java.util.zip.CRC32C, which the JIT 
+ * intrinsifies, when the runtime has it and a table driven implementation
+ * otherwise.  Both produce the same values.
+ *
+ * @author mscott
+ */
+public final class Crc32c {
+
+  private static final MethodHandle INTRINSIC = lookup();
+
+  private Crc32c() {
+  }
+
+  public static Checksum create() {
+    if (INTRINSIC != null) {
+      try {
+        return (Checksum) INTRINSIC.invoke();
+      } catch (Throwable t) {
+        throw new AssertionError(t);
+      }
+    }
+    return new PureJava();
+  }
+
+  /**
+   * @return true if checksums are computed by the runtime's CRC32C
+   */
+  public static boolean isIntrinsic() {
+    return INTRINSIC != null;
+  }
+
+  private static MethodHandle lookup() {
+    try {
+      Class<?> crc = Class.forName("java.util.zip.CRC32C");
+      return MethodHandles.publicLookup().findConstructor(crc, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Checksum.class));
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  static final class PureJava implements Checksum {
+
+    private static final int[][] TABLES = tables();
+
+    private int crc = 0xffffffff;
+
+    @Override
+    public void update(int b) {
+      crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+      int c = crc;
+      int end = off + len;
+  //  slicing by 8
+      while (end - off >= 8) {
+        c ^= (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8) | ((b[off + 2] & 0xff) << 16) | ((b[off + 3] & 0xff) << 24);
+        c = TABLES[7][c & 0xff] ^ TABLES[6][(c >>> 8) & 0xff] ^ TABLES[5][(c >>> 16) & 0xff] ^ TABLES[4][c >>> 24]
+            ^ TABLES[3][b[off + 4] & 0xff] ^ TABLES[2][b[off + 5] & 0xff] ^ TABLES[1][b[off + 6] & 0xff] ^ TABLES[0][b[off + 7] & 0xff];
+        off += 8;
+      }
+      while (off < end) {
+        c = (c >>> 8) ^ TABLES[0][(c ^ b[off++]) & 0xff];
+      }
+      crc = c;
+    }
+
+    @Override
+    public long getValue() {
+      return (~crc) & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+      crc = 0xffffffff;
+    }
+
+    private static int[][] tables() {
+      int[][] tables = new int[8][256];
+      for (int n = 0; n < 256; n++) {
+        int c = n;
+        for (int k = 0; k < 8; k++) {
+          c = (c & 1) != 0 ? (c >>> 1) ^ 0x82f63b78 : c >>> 1;
+        }
+        tables[0][n] = c;
+      }
+      for (int n = 0; n < 256; n++) {
+        for (int t = 1; t < 8; t++) {
+          tables[t][n] = (tables[t - 1][n] >>> 8) ^ tables[0][tables[t - 1][n] & 0xff];
+        }
+      }
+      return tables;
+    }
+  }
+}
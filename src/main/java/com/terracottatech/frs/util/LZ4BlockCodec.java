@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.util;
+
+import java.util.Arrays;
+
+/**
+ * Pure java compressor for the LZ4 block format.  Greedy single probe hash matching,
+ * tuned for speed over ratio.  Blocks carry no framing, callers record the
+ * uncompressed length themselves.
+ *
+ * @author mscott
+ */
+public final class LZ4BlockCodec {
+
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_OFFSET = 0xffff;
+  private static final int HASH_LOG = 14;
+  private static final int RUN_MASK = 0x0f;
+
+  private static final ThreadLocal<int[]> TABLES = new ThreadLocal<int[]>();
+
+  private LZ4BlockCodec() {
+  }
+
+  public static int maxCompressedLength(int length) {
+    return length + (length / 255) + 16;
+  }
+
+  /**
+   * @return number of bytes written to dest
+   * @throws ArrayIndexOutOfBoundsException if dest is smaller than {@link #maxCompressedLength(int)}
+   */
+  public static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff) {
+    int srcEnd = srcOff + srcLen;
+    int dp = destOff;
+    int anchor = srcOff;
+
+    if (srcLen > MF_LIMIT) {
+      int[] table = table();
+      int sp = srcOff;
+      int mfLimit = srcEnd - MF_LIMIT;
+      int matchLimit = srcEnd - LAST_LITERALS;
+      while (sp < mfLimit) {
+        int h = hash(readInt(src, sp));
+  //  table holds position + 1 so zero means empty
+        int ref = table[h] - 1;
+        table[h] = sp + 1;
+        if (ref < srcOff || sp - ref > MAX_OFFSET || readInt(src, ref) != readInt(src, sp)) {
+          sp++;
+          continue;
+        }
+        while (sp > anchor && ref > srcOff && src[sp - 1] == src[ref - 1]) {
+          sp--;
+          ref--;
+        }
+        int length = MIN_MATCH;
+        while (sp + length < matchLimit && src[sp + length] == src[ref + length]) {
+          length++;
+        }
+        dp = writeSequence(src, anchor, sp - anchor, dest, dp, sp - ref, length);
+        sp += length;
+        anchor = sp;
+        if (sp < mfLimit) {
+          table[hash(readInt(src, sp - 2))] = sp - 1;
+        }
+      }
+    }
+    return writeLiterals(src, anchor, srcEnd - anchor, dest, dp) - destOff;
+  }
+
+  /**
+   * @return number of bytes written to dest, always destLen for a well formed block
+   * @throws IllegalArgumentException if the block is malformed
+   */
+  public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) {
+    int sp = srcOff;
+    int srcEnd = srcOff + srcLen;
+    int dp = destOff;
+    int destEnd = destOff + destLen;
+
+    while (true) {
+      if (sp >= srcEnd) {
+        throw new IllegalArgumentException("truncated block at " + (sp - srcOff));
+      }
+      int token = src[sp++] & 0xff;
+      int literals = token >>> 4;
+      if (literals == RUN_MASK) {
+        int b;
+        do {
+          if (sp >= srcEnd) {
+            throw new IllegalArgumentException("truncated literal length at " + (sp - srcOff));
+          }
+          b = src[sp++] & 0xff;
+          literals += b;
+        } while (b == 0xff && literals <= destLen);
+      }
+      if (literals > srcEnd - sp || literals > destEnd - dp) {
+        throw new IllegalArgumentException("literal run overflows block at " + (sp - srcOff));
+      }
+      System.arraycopy(src, sp, dest, dp, literals);
+      sp += literals;
+      dp += literals;
+
+      if (sp == srcEnd) {
+        return dp - destOff;
+      }
+
+      if (srcEnd - sp < 2) {
+        throw new IllegalArgumentException("truncated match offset at " + (sp - srcOff));
+      }
+      int offset = (src[sp++] & 0xff) | ((src[sp++] & 0xff) << 8);
+      if (offset == 0 || offset > dp - destOff) {
+        throw new IllegalArgumentException("bad match offset " + offset + " at " + (sp - srcOff));
+      }
+      int length = token & RUN_MASK;
+      if (length == RUN_MASK) {
+        int b;
+        do {
+          if (sp >= srcEnd) {
+            throw new IllegalArgumentException("truncated match length at " + (sp - srcOff));
+          }
+          b = src[sp++] & 0xff;
+          length += b;
+        } while (b == 0xff && length <= destLen);
+      }
+      length += MIN_MATCH;
+      if (length > destEnd - dp) {
+        throw new IllegalArgumentException("match overflows block at " + (sp - srcOff));
+      }
+      int ref = dp - offset;
+      if (offset >= length) {
+        System.arraycopy(dest, ref, dest, dp, length);
+        dp += length;
+      } else {
+  //  overlapping match repeats the last offset bytes
+        for (int x = 0; x < length; x++) {
+          dest[dp++] = dest[ref++];
+        }
+      }
+    }
+  }
+
+  private static int writeSequence(byte[] src, int anchor, int literals, byte[] dest, int dp, int offset, int length) {
+    int tokenPos = dp;
+    dp = writeLiterals(src, anchor, literals, dest, dp);
+    dest[dp++] = (byte) offset;
+    dest[dp++] = (byte) (offset >>> 8);
+    int run = length - MIN_MATCH;
+    if (run >= RUN_MASK) {
+      dest[tokenPos] |= RUN_MASK;
+      dp = writeLength(run - RUN_MASK, dest, dp);
+    } else {
+      dest[tokenPos] |= run;
+    }
+    return dp;
+  }
+
+  private static int writeLiterals(byte[] src, int anchor, int literals, byte[] dest, int dp) {
+    int tokenPos = dp++;
+    if (literals >= RUN_MASK) {
+      dest[tokenPos] = (byte) (RUN_MASK << 4);
+      dp = writeLength(literals - RUN_MASK, dest, dp);
+    } else {
+      dest[tokenPos] = (byte) (literals << 4);
+    }
+    System.arraycopy(src, anchor, dest, dp, literals);
+    dp += literals;
+    return dp;
+  }
+
+  private static int writeLength(int length, byte[] dest, int dp) {
+    while (length >= 0xff) {
+      dest[dp++] = (byte) 0xff;
+      length -= 0xff;
+    }
+    dest[dp++] = (byte) length;
+    return dp;
+  }
+
+  private static int readInt(byte[] b, int pos) {
+    return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+  }
+
+  private static int hash(int value) {
+    return (value * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  private static int[] table() {
+    int[] table = TABLES.get();
+    if (table == null) {
+      table = new int[1 << HASH_LOG];
+      TABLES.set(table);
+    } else {
+      Arrays.fill(table, 0);
+    }
+    return table;
+  }
+}
@@ -15,11 +15,20 @@
  */
 package com.terracottatech.frs;
 
+import com.terracottatech.frs.log.LogRecord;
+import com.terracottatech.frs.log.LogRecordImpl;
+import com.terracottatech.frs.log.LogRegionPacker;
+import com.terracottatech.frs.log.Signature;
+import com.terracottatech.frs.util.Crc32c;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.List;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 import org.junit.*;
 
 /**
@@ -96,6 +105,32 @@ public class ChecksumTests {
         f.format(format,"CRC32",(System.nanoTime()-n)/1e9);
     }
     
+    @Test @Ignore
+    public void testCRC32C() {
+        long n = System.nanoTime();
+        Checksum tr = Crc32c.create();
+        for (int x=0;x<100;x++) tr.update(meg, 0, meg.length);
+        tr.getValue();
+        f.format(format,"CRC32C" + (Crc32c.isIntrinsic() ? "" : " (pure java)"),(System.nanoTime()-n)/1e9);
+    }
+    
+    @Test @Ignore
+    public void testPackingThroughput() throws Exception {
+        List<LogRecord> region = new ArrayList<LogRecord>();
+        for (int x=0;x<256;x++) {
+            ByteBuffer payload = ByteBuffer.allocate(4096);
+            payload.put(meg, x * 4096, 4096).flip();
+            region.add(new LogRecordImpl(new ByteBuffer[] {payload}, null));
+        }
+        for (Signature sig : new Signature[] {Signature.NONE, Signature.ADLER32, Signature.CRC32C}) {
+            LogRegionPacker packer = new LogRegionPacker(sig, "FILE");
+            for (int x=0;x<100;x++) packer.pack(region);
+            long n = System.nanoTime();
+            for (int x=0;x<1000;x++) packer.pack(region);
+            double secs = (System.nanoTime()-n)/1e9;
+            f.format("%s packing: %.1f MB/s\n", sig, 1000 * 256 * 4096 / secs / (1024 * 1024));
+        }
+    }
     
     @Before
     public void setUp() {
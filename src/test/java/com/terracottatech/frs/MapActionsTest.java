@@ -22,6 +22,7 @@ import com.terracottatech.frs.action.SimpleInvalidatingAction;
 import com.terracottatech.frs.compaction.Compactor;
 import com.terracottatech.frs.object.ObjectManager;
 import com.terracottatech.frs.transaction.TransactionActions;
+import com.terracottatech.frs.util.ByteBufferUtils;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -66,6 +67,22 @@ public class MapActionsTest {
     checkEncodeDecode(put);
   }
 
+  @Test
+  public void testCompactPutAction() throws Exception {
+    ActionCodec<ByteBuffer, ByteBuffer, ByteBuffer> compactCodec =
+            new ActionCodecImpl<ByteBuffer, ByteBuffer, ByteBuffer>(objectManager, true);
+    MapActions.registerActions(1, compactCodec);
+    for (long invalidated : new long[] {-1L, 0L, 1L << 40}) {
+      doReturn(invalidated).when(objectManager).getLsn(byteBufferWithInt(0), byteBufferWithInt(1));
+      Action put = new PutAction(objectManager, compactor, byteBufferWithInt(0),
+                                 byteBufferWithInt(1), byteBufferWithInt(2), false);
+      ByteBuffer[] compact = compactCodec.encode(put);
+      assertThat(ByteBufferUtils.length(compact) < ByteBufferUtils.length(actionCodec.encode(put)), is(true));
+      assertThat(actionCodec.decode(compact), is(put));
+      assertThat(compactCodec.decode(actionCodec.encode(put)), is(put));
+    }
+  }
+
   @Test
   public void testRecoveryModePut() throws Exception {
     doReturn(-1L).when(objectManager).getLsn(byteBufferWithInt(0), byteBufferWithInt(1));
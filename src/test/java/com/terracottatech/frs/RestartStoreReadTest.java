@@ -29,8 +29,11 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import static com.terracottatech.frs.util.TestUtils.byteBufferWithInt;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import junit.framework.Assert;
 
 /**
@@ -102,6 +105,86 @@ public class RestartStoreReadTest  {
     }
   }
   
+  @Test
+  public void testCommitAsync() throws Throwable {
+    List<CompletableFuture<Void>> commits = new ArrayList<CompletableFuture<Void>>();
+    for (int x = 0; x < 100; x++) {
+      commits.add(restart.beginTransaction(true).put(byteBufferWithInt(1), byteBufferWithInt(x), byteBufferWithInt(x))
+          .commitAsync().toCompletableFuture());
+    }
+    CompletableFuture.allOf(commits.toArray(new CompletableFuture[commits.size()])).get();
+    for (int x = 0; x < 100; x++) {
+      Tuple<ByteBuffer,ByteBuffer,ByteBuffer> tuple = restart.get(omgr.getLsn(byteBufferWithInt(1), byteBufferWithInt(x)));
+      Assert.assertTrue(tuple.getValue().getInt() == x);
+      if ( tuple instanceof Disposable ) {
+        ((Disposable)tuple).dispose();
+      }
+    }
+  }
+  
+  @Test
+  public void testGetAll() throws Throwable {
+    for (int x = 0; x < 200; x++) {
+      byte[] vc = new byte[100];
+      Arrays.fill(vc, (byte)(x & 0xff));
+      restart.beginTransaction(true).put(byteBufferWithInt(1), byteBufferWithInt(x), ByteBuffer.wrap(vc)).commit();
+    }
+    long[] markers = new long[201];
+    for (int x = 0; x < 200; x++) {
+      markers[x] = omgr.getLsn(byteBufferWithInt(1), byteBufferWithInt(199 - x));
+    }
+    //  the same marker twice must come back as two independent tuples
+    markers[200] = markers[7];
+    List<Tuple<ByteBuffer,ByteBuffer,ByteBuffer>> all = restart.getAll(markers);
+    Assert.assertEquals(markers.length, all.size());
+    for (int x = 0; x < markers.length; x++) {
+      Tuple<ByteBuffer,ByteBuffer,ByteBuffer> tuple = all.get(x);
+      int key = x == 200 ? 199 - 7 : 199 - x;
+      Assert.assertEquals(1, tuple.getIdentifier().getInt());
+      Assert.assertEquals(key, tuple.getKey().getInt());
+      Assert.assertEquals(key & 0xff, tuple.getValue().get() & 0xff);
+      if ( tuple instanceof Disposable ) {
+        ((Disposable)tuple).dispose();
+      }
+    }
+  }
+
+  @Test
+  public void testLease() throws Throwable {
+    checkLeases(restart, omgr);
+  }
+
+  @Test
+  public void testMappedLease() throws Throwable {
+    Properties mapped = new Properties();
+    mapped.putAll(properties);
+    mapped.setProperty(FrsProperty.IO_NIO_ACCESS_METHOD.shortName(), "MAPPED");
+    ObjectManager<ByteBuffer,ByteBuffer,ByteBuffer> mappedObjects = new HeapObjectManager<ByteBuffer,ByteBuffer,ByteBuffer>(1);
+    RestartStore<ByteBuffer,ByteBuffer,ByteBuffer> store = RestartStoreFactory.createStore(mappedObjects, folder.newFolder(), mapped);
+    store.startup().get();
+    try {
+      checkLeases(store, mappedObjects);
+    } finally {
+      store.shutdown();
+    }
+  }
+
+  private static void checkLeases(RestartStore<ByteBuffer,ByteBuffer,ByteBuffer> store, ObjectManager<ByteBuffer,ByteBuffer,ByteBuffer> objects) throws Throwable {
+    for (int x = 0; x < 100; x++) {
+      byte[] vc = new byte[500];
+      Arrays.fill(vc, (byte)(x & 0xff));
+      store.beginTransaction(true).put(byteBufferWithInt(1), byteBufferWithInt(x), ByteBuffer.wrap(vc)).commit();
+    }
+    for (int x = 0; x < 100; x++) {
+      Tuple<ByteBuffer,ByteBuffer,ByteBuffer> tuple = store.lease(objects.getLsn(byteBufferWithInt(1), byteBufferWithInt(x)));
+      Assert.assertEquals(x, tuple.getKey().getInt());
+      Assert.assertEquals(500, tuple.getValue().remaining());
+      Assert.assertEquals(x & 0xff, tuple.getValue().get() & 0xff);
+      Assert.assertTrue(tuple.getValue().isReadOnly());
+      ((Disposable)tuple).dispose();
+    }
+  }
+
   @Test
   public void testLoop() throws Throwable {
     int x = 0;
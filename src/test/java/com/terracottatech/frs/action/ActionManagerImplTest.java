@@ -20,6 +20,8 @@ import org.junit.Test;
 import com.terracottatech.frs.log.LogRecord;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +29,8 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ActionManagerImplTest extends BaseActionManagerImplTest {
@@ -49,6 +53,19 @@ public class ActionManagerImplTest extends BaseActionManagerImplTest {
     assertThat(actionFuture.isDone(), is(true));
   }
 
+  @Test
+  public void testSyncHappenedAsyncWhenNormal() throws Exception {
+    Action put = mock(Action.class);
+    CompletableFuture<Void> written = new CompletableFuture<Void>();
+    when(logMgr.appendAndSyncAsync(any(LogRecord.class))).thenReturn(written);
+    CompletionStage<Void> actionStage = actionMgr.syncHappenedAsync(put);
+    verify(logMgr).appendAndSyncAsync(any(LogRecord.class));
+    verify(logMgr, never()).appendAndSync(any(LogRecord.class));
+    assertThat(actionStage.toCompletableFuture().isDone(), is(false));
+    written.complete(null);
+    assertThat(actionStage.toCompletableFuture().isDone(), is(true));
+  }
+
   @Test
   public void testHappenedWhenPaused() throws Exception {
     Action put1 = mock(Action.class);
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.flash;
+
+import com.terracottatech.frs.log.LogRecord;
+import com.terracottatech.frs.log.LogRecordImpl;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author mscott
+ */
+public class ReadCacheTest {
+
+  @Test
+  public void testRegionServesEveryRecord() throws Exception {
+    ReadCache cache = new ReadCache(1024 * 1024, ReadCache.Policy.LRU);
+    assertThat(cache.get(101), nullValue());
+    LogRecord first = cache.put(region(100, 10, 64), 103);
+    assertThat(first.getLsn(), is(103L));
+    assertThat(first.getPayload()[0].get(0), is((byte)103));
+    for (long lsn = 100; lsn < 110; lsn++) {
+      LogRecord r = cache.get(lsn);
+      assertThat(r.getLsn(), is(lsn));
+      assertThat(r.getPayload()[0].remaining(), is(64));
+      assertThat(r.getPayload()[0].get(63), is((byte)lsn));
+    }
+    assertThat(cache.get(99), nullValue());
+    assertThat(cache.get(110), nullValue());
+  }
+
+  @Test
+  public void testBoundedByBytes() throws Exception {
+    ReadCache cache = new ReadCache(64 * 1024, ReadCache.Policy.LRU);
+    for (int x = 0; x < 100; x++) {
+      cache.put(region(x * 10, 10, 1000), x * 10);
+      assertThat(cache.getUsed() <= 64 * 1024, is(true));
+    }
+    assertThat(cache.get(0), nullValue());
+    assertThat(cache.get(995), notNullValue());
+  //  a region bigger than a quarter of the cache is not cached
+    assertThat(cache.put(region(2000, 20, 1000), 2000), nullValue());
+  }
+
+  @Test
+  public void testRecentlyReadSurvivesEviction() throws Exception {
+    ReadCache cache = new ReadCache(64 * 1024, ReadCache.Policy.LRU);
+    for (int x = 0; x < 6; x++) {
+      cache.put(region(x * 10, 10, 1000), x * 10);
+    }
+    cache.get(5);
+    cache.put(region(60, 10, 1000), 60);
+    assertThat(cache.get(5), notNullValue());
+    assertThat(cache.get(15), nullValue());
+  }
+
+  @Test
+  public void testFrequencyAdmission() throws Exception {
+    ReadCache cache = new ReadCache(64 * 1024, ReadCache.Policy.LFU);
+    for (int x = 0; x < 6; x++) {
+      cache.put(region(x * 10, 10, 1000), x * 10);
+      for (int r = 0; r < 5; r++) {
+        cache.get(x * 10);
+      }
+    }
+  //  a one time scan does not push out regions that are read often
+    for (int x = 10; x < 50; x++) {
+      assertThat(cache.put(region(x * 10, 10, 1000), x * 10), nullValue());
+    }
+    for (int x = 0; x < 6; x++) {
+      assertThat(cache.get(x * 10), notNullValue());
+    }
+  //  but a region that keeps being read gets in
+    LogRecord admitted = null;
+    for (int r = 0; r < 20 && admitted == null; r++) {
+      admitted = cache.put(region(1000, 10, 1000), 1000);
+    }
+    assertThat(admitted, notNullValue());
+    assertThat(cache.get(1005), notNullValue());
+  }
+
+  private static List<LogRecord> region(long base, int count, int size) {
+    List<LogRecord> records = new ArrayList<LogRecord>();
+    for (long lsn = base; lsn < base + count; lsn++) {
+      byte[] data = new byte[size];
+      Arrays.fill(data, (byte)lsn);
+      LogRecord r = new LogRecordImpl(new ByteBuffer[] {ByteBuffer.wrap(data)}, null);
+      r.updateLsn(lsn);
+      records.add(r);
+    }
+    return records;
+  }
+}
@@ -264,4 +264,49 @@ public class FileBufferTest {
             assert (buffer.get(x + 64) == fill[x]);
         }
     }
+
+    @Test
+    public void testGatheringWrite() throws Exception {
+        java.io.File file = folder.newFile();
+        FileChannel channel = new java.io.RandomAccessFile(file, "rw").getChannel();
+        FileBuffer buffer = new FileBuffer(channel, ByteBuffer.allocateDirect(1024));
+        ByteBuffer[] payload = new ByteBuffer[] {
+            fill(ByteBuffer.allocate(100), 1),
+            fill(ByteBuffer.allocateDirect(4096), 2),
+            fill(ByteBuffer.allocate(10), 3),
+            fill(ByteBuffer.allocate(2048), 4),
+            fill(ByteBuffer.allocateDirect(600), 5),
+            fill(ByteBuffer.allocate(700), 6),
+            fill(ByteBuffer.allocate(700), 7)
+        };
+        long expected = 0;
+        for (ByteBuffer bb : payload) {
+            expected += bb.remaining();
+        }
+        buffer.partition(8);
+        buffer.putLong(expected);
+        buffer.insert(payload, 1, false);
+        buffer.putLong(expected);
+        assertEquals(expected + 16, buffer.write(payload.length + 2));
+
+        ByteBuffer check = ByteBuffer.allocate((int)expected + 16);
+        channel.read(check, 0);
+        check.flip();
+        assertEquals(expected, check.getLong());
+        for (ByteBuffer bb : payload) {
+            for (int x = 0; x < bb.capacity(); x++) {
+                assertEquals(bb.get(0), check.get());
+            }
+        }
+        assertEquals(expected, check.getLong());
+        channel.close();
+    }
+
+    private static ByteBuffer fill(ByteBuffer bb, int value) {
+        while (bb.hasRemaining()) {
+            bb.put((byte)value);
+        }
+        bb.flip();
+        return bb;
+    }
 }
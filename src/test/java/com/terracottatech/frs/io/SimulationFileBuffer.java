@@ -43,6 +43,16 @@ public class SimulationFileBuffer extends FileBuffer {
         }
         return super.writeFully(buffer);
     }
+
+    @Override
+    public long writeFully(ByteBuffer[] buffers) throws IOException {
+//  filter each buffer on its own
+        long lt = 0;
+        for ( ByteBuffer buffer : buffers ) {
+            lt += writeFully(buffer);
+        }
+        return lt;
+    }
     
     public void addFilter(BufferFilter filter) {
         if ( filters == null ) filters = filter;
@@ -30,6 +30,10 @@ import java.util.List;
 import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import junit.framework.Assert;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -257,6 +261,51 @@ public abstract class AbstractReadbackStrategyTest {
         }
     }
     
+    @Test
+    public void testConcurrentScansOfOpenSegment() throws Exception {
+        final FileBuffer buffer = new FileBuffer(new RandomAccessFile(folder.newFile(),"rw").getChannel(),ByteBuffer.allocate(32 * 1024));
+        final TreeMap<Long,byte[]> map = new TreeMap<Long,byte[]>();
+        Random r = new Random();
+        long base = 100;
+        for (int x=0;x<2000;x++) {
+          byte[] data = new byte[1 + r.nextInt(2048)];
+          r.nextBytes(data);
+          base += r.nextInt(16) + 1;
+          map.put(base,data);
+          writeDataToChunk(data, buffer, base);
+          buffer.write(1);
+          buffer.clear();
+        }
+        buffer.position(0);
+        
+        final ReadbackStrategy instance = getReadbackStrategy(Direction.RANDOM, buffer);
+        final long last = base;
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+          List<Future<Void>> results = new ArrayList<Future<Void>>();
+          for (int t=0;t<4;t++) {
+            results.add(readers.submit(new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                Random pick = new Random();
+                for (int x=0;x<500;x++) {
+                  long next = 100 + pick.nextInt((int)(last - 100));
+  //  lookups never depend on the shared position of the channel
+                  buffer.getFileChannel().position(pick.nextInt(1024));
+                  assertArrayEquals(map.ceilingEntry(next).getValue(), getBytes(instance.scan(next)));
+                }
+                return null;
+              }
+            }));
+          }
+          for (Future<Void> f : results) {
+            f.get();
+          }
+        } finally {
+          readers.shutdown();
+        }
+    }
+    
     private byte[] getBytes(Chunk c) {
       byte[] data = new byte[(int)c.remaining()];
       c.get(data);
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import com.terracottatech.frs.util.JUnitTestFolder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author mscott
+ */
+public class AsyncFileChannelTest {
+
+  @Rule
+  public JUnitTestFolder folder = new JUnitTestFolder();
+
+  @Test
+  public void testAppendsInFlight() throws Exception {
+    File f = folder.newFile();
+    AsyncFileChannel channel = (AsyncFileChannel) AsyncFileChannel.create(f, 4);
+    Random r = new Random(11);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    try {
+      for (int x = 0; x < 200; x++) {
+        int count = 1 + r.nextInt(3);
+        ByteBuffer[] srcs = new ByteBuffer[count];
+        for (int b = 0; b < count; b++) {
+          byte[] data = bytes(1 + r.nextInt(x % 50 == 0 ? 400000 : 700), x);
+          expected.write(data);
+          srcs[b] = ByteBuffer.wrap(data);
+        }
+        channel.write(srcs);
+        //  the caller owns its buffers again as soon as write returns
+        for (ByteBuffer src : srcs) {
+          src.clear();
+          src.put(new byte[src.capacity()]);
+        }
+        channel.mark(1000 + x);
+        assertThat(channel.size(), is((long) expected.size()));
+        assertThat(channel.position(), is((long) expected.size()));
+        if (x % 10 == 0) {
+          channel.force(false);
+          assertThat(channel.getCompletedMarker(), is(1000L + x));
+          assertThat(f.length(), is((long) expected.size()));
+        }
+      }
+      channel.waitForMarker(1199);
+      assertThat(channel.getCompletedMarker(), is(1199L));
+      ByteBuffer back = ByteBuffer.allocate(100);
+      channel.read(back, 1000);
+      byte[] copy = new byte[100];
+      System.arraycopy(expected.toByteArray(), 1000, copy, 0, 100);
+      assertArrayEquals(copy, back.array());
+    } finally {
+      channel.close();
+    }
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(f.toPath()));
+  }
+
+  @Test
+  public void testUnissuedMarkersDoNotWait() throws Exception {
+    AsyncFileChannel channel = (AsyncFileChannel) AsyncFileChannel.create(folder.newFile(), 2);
+    try {
+      channel.write(ByteBuffer.wrap(bytes(100, 1)));
+      channel.mark(200);
+      //  markers before this channel belong to closed segments, markers after it are not written yet
+      assertThat(channel.waitForMarker(100), is(false));
+      assertThat(channel.waitForMarker(300), is(false));
+      channel.force(false);
+      assertThat(channel.waitForMarker(200), is(false));
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Test
+  public void testWrittenFuturesFollowCompletedMarker() throws Exception {
+    AsyncFileChannel channel = (AsyncFileChannel) AsyncFileChannel.create(folder.newFile(), 4);
+    List<CompletableFuture<Void>> written = new ArrayList<CompletableFuture<Void>>();
+    final AtomicBoolean ahead = new AtomicBoolean();
+    try {
+      for (int x = 0; x < 100; x++) {
+        channel.write(ByteBuffer.wrap(bytes(1 + x * 1000, x)));
+        channel.mark(x);
+        final long marker = x;
+        CompletableFuture<Void> f = channel.whenWritten(x);
+        f.thenRun(() -> {
+          //  never completes past a write still in flight
+          if (channel.getCompletedMarker() < marker) {
+            ahead.set(true);
+          }
+        });
+        written.add(f);
+      }
+      channel.awaitWrites();
+      for (CompletableFuture<Void> f : written) {
+        assertThat(f.isDone(), is(true));
+        f.get();
+      }
+      assertThat(ahead.get(), is(false));
+      assertThat(channel.whenWritten(1000).isDone(), is(true));
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static byte[] bytes(int size, int seed) {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author mscott
+ */
+public class ChunkIndexTest {
+
+  @Test
+  public void testFindsTheChunkHoldingAMarker() {
+    ChunkIndex index = new ChunkIndex(10 * ChunkIndex.ENTRY_SIZE);
+    //  chunks of ten markers, two per segment
+    for (int x = 0; x < 6; x++) {
+      index.append(100 + x * 10, 110 + x * 10, x / 2, 64 + x * 100, 164 + x * 100);
+    }
+    assertThat(index.size(), is(6));
+    assertThat(index.find(100), nullValue());
+    assertThat(index.find(161), nullValue());
+    ChunkIndex.Location first = index.find(101);
+    assertThat(first.getSegment(), is(0));
+    assertThat(first.getStart(), is(64L));
+    assertThat(first.getEnd(), is(164L));
+    assertThat(index.find(110).getStart(), is(64L));
+    ChunkIndex.Location fourth = index.find(135);
+    assertThat(fourth.getSegment(), is(1));
+    assertThat(fourth.getStart(), is(364L));
+    assertThat(index.find(160).getSegment(), is(2));
+  }
+
+  @Test
+  public void testOldestEntriesAreDropped() {
+    ChunkIndex index = new ChunkIndex(4 * ChunkIndex.ENTRY_SIZE + 5);
+    assertThat(index.getCapacity(), is(4));
+    for (int x = 0; x < 10; x++) {
+      index.append(100 + x, 101 + x, 0, 64 + x * 100, 164 + x * 100);
+    }
+    assertThat(index.size(), is(4));
+    assertThat(index.find(106), nullValue());
+    assertThat(index.find(107).getStart(), is(664L));
+    assertThat(index.find(110).getStart(), is(964L));
+  }
+
+  @Test
+  public void testGapStartsOver() {
+    ChunkIndex index = new ChunkIndex(10 * ChunkIndex.ENTRY_SIZE);
+    index.append(100, 110, 0, 64, 164);
+    index.append(110, 120, 0, 164, 264);
+    //  markers 121 to 130 were never indexed
+    index.append(130, 140, 1, 64, 164);
+    assertThat(index.size(), is(1));
+    assertThat(index.find(115), nullValue());
+    assertThat(index.find(125), nullValue());
+    assertThat(index.find(135).getSegment(), is(1));
+  }
+
+  @Test
+  public void testPrependWalksBackwards() {
+    ChunkIndex index = new ChunkIndex(3 * ChunkIndex.ENTRY_SIZE);
+    assertTrue(index.prepend(130, 140, 1, 64, 164));
+    assertTrue(index.prepend(120, 130, 0, 264, 364));
+    //  not the chunk before the oldest entry
+    assertFalse(index.prepend(100, 110, 0, 64, 164));
+    assertTrue(index.prepend(110, 120, 0, 164, 264));
+    //  full
+    assertFalse(index.prepend(100, 110, 0, 64, 164));
+    assertThat(index.find(110), nullValue());
+    assertThat(index.find(111).getStart(), is(164L));
+    assertThat(index.find(125).getStart(), is(264L));
+    //  the writer carries on from the newest entry
+    index.append(140, 150, 1, 164, 264);
+    assertThat(index.size(), is(3));
+    assertThat(index.find(120), nullValue());
+    assertThat(index.find(145).getStart(), is(164L));
+  }
+
+  @Test
+  public void testTrimDropsRemovedSegments() {
+    ChunkIndex index = new ChunkIndex(10 * ChunkIndex.ENTRY_SIZE);
+    for (int x = 0; x < 6; x++) {
+      index.append(100 + x * 10, 110 + x * 10, x / 2, 64, 164);
+    }
+    index.trim(2);
+    assertThat(index.size(), is(2));
+    assertThat(index.find(140), nullValue());
+    assertThat(index.find(141).getSegment(), is(2));
+  }
+}
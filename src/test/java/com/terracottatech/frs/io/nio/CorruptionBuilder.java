@@ -52,6 +52,15 @@ public class CorruptionBuilder implements BufferBuilder {
                 }
                 return super.writeFully(buffer);
             }
+
+            @Override
+            public long writeFully(ByteBuffer[] buffers) throws IOException {
+                long lt = 0;
+                for ( ByteBuffer b : buffers ) {
+                    lt += writeFully(b);
+                }
+                return lt;
+            }
             
         };
     }
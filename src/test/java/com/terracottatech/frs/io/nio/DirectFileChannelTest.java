@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import com.terracottatech.frs.util.JUnitTestFolder;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author mscott
+ */
+public class DirectFileChannelTest {
+
+  @Rule
+  public JUnitTestFolder folder = new JUnitTestFolder();
+
+  @Test
+  public void testUnalignedAppends() throws Exception {
+    File f = folder.newFile();
+    FileChannel plain = FileChannel.open(f.toPath(), StandardOpenOption.WRITE);
+    FileChannel channel = new DirectFileChannel(f, plain, 512, ByteBuffer.allocateDirect(4096));
+    checkAppends(f, channel);
+  }
+
+  @Test
+  public void testDirectAppends() throws Exception {
+    File f = new File(folder.newFolder(), NIOConstants.convertToSegmentFileName(0));
+    FileChannel channel = DirectFileChannel.create(f);
+    Assume.assumeTrue("direct IO is not available here", channel != null);
+    checkAppends(f, channel);
+  }
+
+  @Test
+  public void testTruncateReloadsLastBlock() throws Exception {
+    File f = folder.newFile();
+    FileChannel channel = new DirectFileChannel(f, FileChannel.open(f.toPath(), StandardOpenOption.WRITE), 512, ByteBuffer.allocateDirect(1024));
+    try {
+      channel.write(ByteBuffer.wrap(bytes(1000, 1)));
+      channel.truncate(700);
+      channel.position(700);
+      channel.write(ByteBuffer.wrap(bytes(100, 2)));
+    } finally {
+      channel.close();
+    }
+    byte[] expected = new byte[800];
+    System.arraycopy(bytes(1000, 1), 0, expected, 0, 700);
+    System.arraycopy(bytes(100, 2), 0, expected, 700, 100);
+    assertArrayEquals(expected, Files.readAllBytes(f.toPath()));
+  }
+
+  private void checkAppends(File f, FileChannel channel) throws Exception {
+    Random r = new Random(7);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    try {
+      for (int x = 0; x < 200; x++) {
+        int count = 1 + r.nextInt(3);
+        ByteBuffer[] srcs = new ByteBuffer[count];
+        for (int b = 0; b < count; b++) {
+          byte[] data = bytes(r.nextInt(x % 50 == 0 ? 20000 : 700), x);
+          expected.write(data);
+          srcs[b] = ByteBuffer.wrap(data);
+        }
+        channel.write(srcs);
+        assertThat(channel.size(), is((long) expected.size()));
+        assertThat(channel.position(), is((long) expected.size()));
+  //  the last block stays zero padded on disk until the channel is closed
+        assertThat(f.length(), is(padded(expected.size(), ((DirectFileChannel) channel).getBlockSize())));
+      }
+      channel.force(false);
+      ByteBuffer back = ByteBuffer.allocate(100);
+      channel.position(1000);
+      channel.read(back);
+      byte[] copy = new byte[100];
+      System.arraycopy(expected.toByteArray(), 1000, copy, 0, 100);
+      assertArrayEquals(copy, back.array());
+    } finally {
+      channel.close();
+    }
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(f.toPath()));
+  }
+
+  private static long padded(long size, int block) {
+    return ( size + block - 1 ) / block * block;
+  }
+
+  private static byte[] bytes(int size, int seed) {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+}
@@ -73,6 +73,11 @@ public class IntegrityReadbackStrategyTest extends AbstractReadbackStrategyTest
   public void testLargeScan() throws Exception {
     //  not relevant
   }
+
+  @Override @Test 
+  public void testConcurrentScansOfOpenSegment() throws Exception {
+    //  not relevant
+  }
     
     
     
@@ -17,6 +17,7 @@ package com.terracottatech.frs.io.nio;
 
 import com.terracottatech.frs.util.JUnitTestFolder;
 import java.io.File;
+import java.util.Arrays;
 import java.util.Random;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -36,9 +37,13 @@ import static org.mockito.Mockito.when;
  */
 public class LiveNIOStatisticsTest {
   
+  @Rule
+  public JUnitTestFolder folder = new JUnitTestFolder();
+
   LiveNIOStatistics stats;
   NIOStreamImpl    stream;
   File             home;
+  File             stripe;
   final long             written;
   final long             read;
   
@@ -60,9 +65,11 @@ public class LiveNIOStatisticsTest {
   @Before
   public void setUp() throws Exception {    
     home = mock(File.class);
-    when(home.getUsableSpace()).thenReturn(Long.MAX_VALUE);
+    when(home.getUsableSpace()).thenReturn(1000L);
+    stripe = mock(File.class);
+    when(stripe.getUsableSpace()).thenReturn(2000L);
     stream = mock(NIOStreamImpl.class);
-    stats = new LiveNIOStatistics(home, stream, written, read);
+    stats = new LiveNIOStatistics(Arrays.asList(home, stripe), stream, written, read);
   }
   
   @After
@@ -74,11 +81,16 @@ public class LiveNIOStatisticsTest {
    */
   @Test
   public void testGetTotalAvailable() {
-    System.out.println(stats.getTotalAvailable());
-    stream.getMarker();
+    assertEquals(3000L, stats.getTotalAvailable());
     verify(home).getUsableSpace();
-    verify(stream).getMarker();
-    
+    verify(stripe).getUsableSpace();
+  }
+
+  @Test
+  public void testStripesSharingAStoreCountOnce() throws Exception {
+    File first = folder.newFolder("home");
+    File second = folder.newFolder("stripe");
+    assertEquals(Arrays.asList(first), SegmentDirectories.distinctStores(Arrays.asList(first, second)));
   }
 
   /**
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import com.terracottatech.frs.util.JUnitTestFolder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author mscott
+ */
+public class MappedFileChannelTest {
+
+  @Rule
+  public JUnitTestFolder folder = new JUnitTestFolder();
+
+  @Test
+  public void testAppendsAcrossWindows() throws Exception {
+    File f = folder.newFile();
+    FileChannel channel = MappedFileChannel.create(f, 8192);
+    Random r = new Random(7);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    try {
+      for (int x = 0; x < 200; x++) {
+        int count = 1 + r.nextInt(3);
+        ByteBuffer[] srcs = new ByteBuffer[count];
+        for (int b = 0; b < count; b++) {
+          byte[] data = bytes(r.nextInt(x % 50 == 0 ? 20000 : 700), x);
+          expected.write(data);
+          srcs[b] = x % 2 == 0 ? ByteBuffer.wrap(data) : (ByteBuffer) ByteBuffer.allocateDirect(data.length).put(data).flip();
+        }
+        channel.write(srcs);
+        assertThat(channel.size(), is((long) expected.size()));
+        assertThat(channel.position(), is((long) expected.size()));
+        assertThat(f.length(), greaterThan((long) expected.size() - 1));
+        if (x % 10 == 0) {
+          channel.force(false);
+        }
+      }
+      channel.force(true);
+      ByteBuffer back = ByteBuffer.allocate(100);
+      channel.read(back, 1000);
+      byte[] copy = new byte[100];
+      System.arraycopy(expected.toByteArray(), 1000, copy, 0, 100);
+      assertArrayEquals(copy, back.array());
+    } finally {
+      channel.close();
+    }
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(f.toPath()));
+  }
+
+  @Test
+  public void testAppendWhileForcing() throws Exception {
+    File f = folder.newFile();
+    final FileChannel channel = MappedFileChannel.create(f, 8192);
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicReference<Throwable> failed = new AtomicReference<Throwable>();
+    Thread syncer = new Thread(() -> {
+      try {
+        while (!done.get()) {
+          channel.force(false);
+        }
+      } catch (Throwable t) {
+        failed.set(t);
+      }
+    });
+    syncer.start();
+    Random r = new Random(7);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    try {
+      for (int x = 0; x < 2000; x++) {
+        byte[] data = new byte[1 + r.nextInt(3000)];
+        r.nextBytes(data);
+        expected.write(data);
+        channel.write(ByteBuffer.wrap(data));
+      }
+    } finally {
+      done.set(true);
+      syncer.join();
+    }
+    assertThat(failed.get(), nullValue());
+    channel.force(false);
+    channel.close();
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(f.toPath()));
+  }
+
+  @Test
+  public void testTruncateThenAppend() throws Exception {
+    File f = folder.newFile();
+    FileChannel channel = MappedFileChannel.create(f, 1024);
+    try {
+      channel.write(ByteBuffer.wrap(bytes(3000, 1)));
+      channel.truncate(700);
+      assertThat(channel.size(), is(700L));
+      channel.write(ByteBuffer.wrap(bytes(100, 2)));
+    } finally {
+      channel.close();
+    }
+    byte[] expected = new byte[800];
+    System.arraycopy(bytes(3000, 1), 0, expected, 0, 700);
+    System.arraycopy(bytes(100, 2), 0, expected, 700, 100);
+    assertArrayEquals(expected, Files.readAllBytes(f.toPath()));
+  }
+
+  private static byte[] bytes(int size, int seed) {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+}
@@ -49,6 +49,8 @@ import java.util.concurrent.TimeUnit;
 
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
@@ -276,6 +278,111 @@ public class NIOManagerTest {
        }
     }
 
+    @Test
+    public void testConflictingWriteModes() throws Exception {
+        manager.close();
+        Properties overrides = new Properties();
+        overrides.setProperty("io.nio.directIO", "true");
+        overrides.setProperty("io.nio.mappedWrites", "true");
+        overrides.setProperty("io.nio.asyncWrites", "4");
+        manager = new NIOManager(Configuration.getConfiguration(workArea, overrides), src);
+//  one write mode is applied, the rest are ignored rather than silently overridden per file
+        assertThat(manager.getStream().isDirectIO(), is(true));
+        assertThat(manager.getStream().isMappedWrites(), is(false));
+        assertThat(manager.getStream().getAsyncDepth(), is(0));
+        manager.close();
+
+        overrides.setProperty("io.nio.directIO", "false");
+        manager = new NIOManager(Configuration.getConfiguration(workArea, overrides), src);
+        assertThat(manager.getStream().isDirectIO(), is(false));
+        assertThat(manager.getStream().isMappedWrites(), is(true));
+        assertThat(manager.getStream().getAsyncDepth(), is(0));
+    }
+
+    @Test
+    public void testStripedSegments() throws Exception {
+        manager.close();
+        File stripe = folder.newFolder();
+        Properties overrides = new Properties();
+        overrides.setProperty("io.nio.stripeDirectories", stripe.getAbsolutePath());
+        manager = new NIOManager(Configuration.getConfiguration(workArea, overrides), src);
+        manager.setMinimumMarker(Constants.FIRST_LSN);
+        long marker = Constants.FIRST_LSN;
+        int count = 4000;
+        for ( int x=0;x<count;x++ ) {
+            manager.write(new WrappingChunk(ByteBuffer.allocate(1024)), marker++);
+        }
+        manager.sync();
+        manager.close();
+
+        assertThat(workArea.list(NIOConstants.SEGMENT_FILENAME_FILTER).length, greaterThan(1));
+        assertThat(stripe.list(NIOConstants.SEGMENT_FILENAME_FILTER).length, greaterThan(1));
+
+//  the layout is recorded in the home directory so the stripe is found without configuration
+        manager = new NIOManager(config, src);
+        assertEquals(count, readAll(manager));
+        manager.close();
+
+        File backup = new File(folder.newFolder(), "backup");
+        NIOBackupTool.backup(workArea, backup);
+        assertEquals(workArea.list(NIOConstants.SEGMENT_FILENAME_FILTER).length + stripe.list(NIOConstants.SEGMENT_FILENAME_FILTER).length,
+            backup.list(NIOConstants.SEGMENT_FILENAME_FILTER).length);
+        manager = new NIOManager(Configuration.getConfiguration(backup), src);
+        assertEquals(count, readAll(manager));
+    }
+
+    private static int readAll(NIOManager manager) throws IOException {
+        manager.seek(-1);
+        int found = 0;
+        while ( manager.read(Direction.REVERSE) != null ) {
+            found++;
+        }
+        return found;
+    }
+
+    @Test
+    public void testChunkIndex() throws Exception {
+        manager.close();
+        Properties overrides = new Properties();
+        overrides.setProperty("io.nio.chunkIndexSize", Integer.toString(2000 * ChunkIndex.ENTRY_SIZE));
+        Configuration indexed = Configuration.getConfiguration(workArea, overrides);
+        manager = new NIOManager(indexed, src);
+        manager.setMinimumMarker(Constants.FIRST_LSN);
+        long marker = Constants.FIRST_LSN;
+        int count = 3000;
+        for ( int x=0;x<count;x++ ) {
+            ByteBuffer data = ByteBuffer.allocate(1024);
+            data.putLong(0, marker);
+            manager.write(new WrappingChunk(data), marker++);
+        }
+        manager.sync();
+        assertEquals(2000 * ChunkIndex.ENTRY_SIZE, manager.getStatistics().getIndexSize());
+        ChunkIndex index = chunkIndex(manager);
+        assertEquals(2000, index.size());
+//  the oldest chunks fell out of the index and are found by the segment scan
+        for ( long m=Constants.FIRST_LSN;m<marker;m+=7 ) {
+            assertEquals(m, manager.scan(m).getLong());
+        }
+        manager.close();
+
+//  recovery walks the log backwards and fills the index newest first
+        manager = new NIOManager(indexed, src);
+        assertEquals(count, readAll(manager));
+        index = chunkIndex(manager);
+        assertEquals(2000, index.size());
+        assertEquals(null, index.find(marker - 2001));
+        assertNotNull(index.find(marker - 2000));
+        for ( long m=Constants.FIRST_LSN;m<marker;m+=7 ) {
+            assertEquals(m, manager.scan(m).getLong());
+        }
+    }
+
+    private static ChunkIndex chunkIndex(NIOManager manager) throws Exception {
+        Field backendField = NIOManager.class.getDeclaredField("backend");
+        backendField.setAccessible(true);
+        return ((NIOStreamImpl)backendField.get(manager)).getChunkIndex();
+    }
+
     /**
      * Ensures that {@link NIOManager#scan(long)} completes after waiting for write completion.
      */
@@ -18,15 +18,26 @@ package com.terracottatech.frs.io.nio;
 import com.terracottatech.frs.Constants;
 import com.terracottatech.frs.io.BufferSource;
 import com.terracottatech.frs.io.Chunk;
+import com.terracottatech.frs.io.Direction;
 import com.terracottatech.frs.io.FileBuffer;
 import com.terracottatech.frs.io.HeapBufferSource;
 import com.terracottatech.frs.io.WrappingChunk;
 import com.terracottatech.frs.util.JUnitTestFolder;
+import java.io.Closeable;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.bytebuddy.implementation.bytecode.Addition;
 import org.junit.After;
@@ -149,13 +160,12 @@ public class NIORandomAccessTest {
     public void testScanTooFast() throws Exception {
       final NIORandomAccess.FileCache mocked = Mockito.mock(NIORandomAccess.FileCache.class);
       final ReadOnlySegment seg = Mockito.mock(ReadOnlySegment.class);
-      Mockito.when(mocked.findSegment(ArgumentMatchers.anyInt())).thenReturn(null);
-      Mockito.when(mocked.removeSegments(ArgumentMatchers.anyInt())).thenReturn(mocked);
-      Mockito.when(mocked.addSegment(ArgumentMatchers.any(ReadOnlySegment.class))).then(new Answer<Object> () {
+      Mockito.when(mocked.acquire(ArgumentMatchers.anyInt())).thenReturn(null);
+      Mockito.when(mocked.add(ArgumentMatchers.any(ReadOnlySegment.class))).then(new Answer<Object> () {
 
         @Override
         public Object answer(InvocationOnMock invocation) throws Throwable {
-          return mocked;
+          return pinned((ReadOnlySegment)invocation.getArguments()[0]);
         }
       });
       
@@ -167,18 +177,147 @@ public class NIORandomAccessTest {
       Chunk c = ra.scan(501);
       assertNull(c);
 //  mock lsn now committed to disk
-      Mockito.when(mocked.findSegment(AdditionalMatchers.geq(2))).then(new Answer<Object> () {
+      Mockito.when(mocked.acquire(AdditionalMatchers.geq(2))).then(new Answer<Object> () {
 
         @Override
         public Object answer(InvocationOnMock invocation) throws Throwable {
           int sid = (Integer)invocation.getArguments()[0];
           Mockito.when(seg.getSegmentId()).thenReturn(sid);
-          return seg;
+          return pinned(seg);
         }
       });
       c = ra.scan(501);
       assertNotNull(c);
     }
+    
+    private static NIORandomAccess.PinnedSegment pinned(ReadOnlySegment seg) {
+      NIORandomAccess.PinnedSegment pin = new NIORandomAccess.PinnedSegment(seg);
+      pin.pin();
+      return pin;
+    }
+    
+    @Test
+    public void testPinnedSegmentsCloseAfterReaders() throws Exception {
+        NIORandomAccess.FileCache cache = ra.getCache();
+        ra.setMaxFiles(1);
+        NIORandomAccess.PinnedSegment first = cache.add(new ReadOnlySegment(stream, NIOAccessMethod.STREAM, 
+            new File(baseDir, String.format(NIOConstants.SEGMENT_NAME_FORMAT, 0)), Direction.RANDOM));
+        first.getSegment().load(null);
+  //  a second reader of the same segment shares the first one
+        NIORandomAccess.PinnedSegment shared = cache.add(new ReadOnlySegment(stream, NIOAccessMethod.STREAM, 
+            new File(baseDir, String.format(NIOConstants.SEGMENT_NAME_FORMAT, 0)), Direction.RANDOM));
+        assertSame(first, shared);
+        shared.release();
+  //  over the file limit, segment 0 is evicted but stays open for its reader
+        NIORandomAccess.PinnedSegment second = cache.add(new ReadOnlySegment(stream, NIOAccessMethod.STREAM, 
+            new File(baseDir, String.format(NIOConstants.SEGMENT_NAME_FORMAT, 1)), Direction.RANDOM));
+        assertEquals(1, cache.getLiveCount());
+        assertNull(cache.acquire(0));
+        assertFalse(first.getSegment().isClosed());
+        first.release();
+        assertTrue(first.getSegment().isClosed());
+        second.release();
+        assertNotNull(ra.scan(102L));
+    }
+    
+    @Test(timeout=30000)
+    public void testTrimDoesNotWaitForLeases() throws Exception {
+        NIORandomAccess.FileCache cache = ra.getCache();
+        Closeable lease = ra.pin(102L);
+        assertNull(ra.pin(99L));
+        Chunk leased = ra.scan(102L);
+  //  segment 0 has no lease and closes, segment 1 stays open for its lease
+        Map<File, NIORandomAccess.PinnedSegment> open = cache.closeSegments(2);
+        File file = new File(baseDir, String.format(NIOConstants.SEGMENT_NAME_FORMAT, 1));
+        assertEquals(Collections.singleton(file), open.keySet());
+        NIORandomAccess.PinnedSegment segment = open.get(file);
+        assertFalse(segment.getSegment().isClosed());
+        segment.deleteOnClose(file);
+        assertTrue(file.exists());
+        byte[] result = new byte[6];
+        leased.get(result);
+        assertEquals("MAGIC1", new String(result));
+        lease.close();
+  //  closing twice does not give up a pin the lease does not hold
+        lease.close();
+        assertTrue(segment.getSegment().isClosed());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testAddRacingTrim() throws Exception {
+        final File file = new File(baseDir, String.format(NIOConstants.SEGMENT_NAME_FORMAT, 1));
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+          for (int x = 0; x < 500; x++) {
+            final NIORandomAccess.FileCache cache = ra.new FileCache(0);
+            final CyclicBarrier start = new CyclicBarrier(2);
+            Future<NIORandomAccess.PinnedSegment> added = threads.submit(new Callable<NIORandomAccess.PinnedSegment>() {
+              @Override
+              public NIORandomAccess.PinnedSegment call() throws Exception {
+                start.await();
+                NIORandomAccess.PinnedSegment pin = cache.add(new ReadOnlySegment(stream, NIOAccessMethod.STREAM, file, Direction.RANDOM));
+                if ( pin != null ) {
+                  pin.getSegment().load(null);
+                  pin.release();
+                }
+                return pin;
+              }
+            });
+            Future<?> trimmed = threads.submit(new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                start.await();
+                cache.removeSegments(2);
+                return null;
+              }
+            });
+            trimmed.get();
+            NIORandomAccess.PinnedSegment pin = added.get();
+  //  whichever wins, nothing trimmed is left cached or open
+            assertNull(cache.acquire(1));
+            assertEquals(0, cache.getLiveCount());
+            if ( pin != null ) {
+              assertTrue(pin.getSegment().isClosed());
+            }
+          }
+  //  a segment already trimmed is never cached
+          NIORandomAccess.FileCache cache = ra.new FileCache(0);
+          cache.removeSegments(2);
+          assertNull(cache.add(new ReadOnlySegment(stream, NIOAccessMethod.STREAM, file, Direction.RANDOM)));
+        } finally {
+          threads.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentScans() throws Exception {
+        ra.setMaxFiles(1);
+        ExecutorService readers = Executors.newFixedThreadPool(8);
+        try {
+          List<Future<Void>> results = new ArrayList<Future<Void>>();
+          for (int t = 0; t < 8; t++) {
+            results.add(readers.submit(new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                byte[] result = new byte[6];
+                for (int x = 0; x < 2000; x++) {
+                  long marker = 101L + (x & 1);
+                  ra.scan(marker).get(result);
+                  assertEquals("MAGIC" + (x & 1), new String(result));
+                }
+                return null;
+              }
+            }));
+          }
+          for (Future<Void> f : results) {
+            f.get();
+          }
+        } finally {
+          readers.shutdown();
+        }
+        assertTrue(ra.getCache().getLiveCount() <= 1);
+    }
 
     /**
      * Test of hint method, of class NIORandomAccess.
@@ -20,6 +20,7 @@ import com.terracottatech.frs.util.JUnitTestFolder;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.ListIterator;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -89,6 +90,24 @@ public class NIOSegmentListTest {
     assertEquals("added file", 1, list.size());
   }
 
+  @Test
+  public void testStripedPlacement() throws Exception {
+    File home = tempFolder.newFolder();
+    File stripe = tempFolder.newFolder();
+    NIOSegmentList list = new NIOSegmentList(Arrays.asList(home, stripe));
+    for ( int x=0;x<4;x++ ) {
+      File next = list.nextFile();
+      File f = list.appendFile();
+      assertEquals(next, f);
+      assertEquals(x % 2 == 0 ? home : stripe, f.getParentFile());
+      new FileOutputStream(f).close();
+    }
+    
+    NIOSegmentList rebuilt = new NIOSegmentList(Arrays.asList(home, stripe));
+    assertEquals(list.copyList(), rebuilt.copyList());
+    assertEquals(home, rebuilt.appendFile().getParentFile());
+  }
+
   /**
    * Test of isEmpty method, of class NIOSegmentList.
    */
@@ -22,6 +22,7 @@ import com.terracottatech.frs.util.JUnitTestFolder;
 
 import org.junit.*;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -35,6 +36,9 @@ import java.util.concurrent.Future;
 import java.util.function.Function;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -85,6 +89,353 @@ public class NIOStreamImplTest {
     assertThat(listFiles().length, is(2));
   }
 
+  @Test
+  public void testPreallocatedSegments() throws Exception {
+    stream.preallocate(true);
+    assertThat(stream.append(newChunk(1),Constants.FIRST_LSN), is(CHUNK_OVERHEAD + 1));
+    File next = new File(workArea, NIOConstants.convertToSegmentFileName(1));
+    //  pre-sized to the segment size before the write head gets to it
+    while (next.length() < MAX_SEGMENT_SIZE) {
+      Thread.sleep(10);
+    }
+    assertThat(next.length(), is(MAX_SEGMENT_SIZE));
+
+    stream.append(newChunk(MAX_SEGMENT_SIZE - 2),200);
+    assertThat(stream.append(newChunk(1),300), is(CHUNK_OVERHEAD + 1));
+    assertThat(next.length(), is(MAX_SEGMENT_SIZE));
+    File after = new File(workArea, NIOConstants.convertToSegmentFileName(2));
+    while (!after.exists()) {
+      Thread.sleep(10);
+    }
+
+    stream.close();
+    assertThat(after.exists(), is(false));
+    assertThat(listFiles().length, is(2));
+  //  trimmed back to what was written on close
+    assertTrue(next.length() < 1024);
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    stream.seek(-1);
+    int foundChunks = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      foundChunks++;
+    }
+    assertThat(foundChunks, is(3));
+  }
+
+  @Test
+  public void testCrashOnPreallocatedWriteHead() throws Exception {
+    stream.preallocate(true);
+    stream.append(newChunk(1),Constants.FIRST_LSN);
+    File next = new File(workArea, NIOConstants.convertToSegmentFileName(1));
+    while (next.length() < MAX_SEGMENT_SIZE) {
+      Thread.sleep(10);
+    }
+    stream.append(newChunk(MAX_SEGMENT_SIZE - 2),200);
+    for (int x = 1; x <= 5; x++) {
+      stream.append(newChunk(1024), 200 + x);
+    }
+    stream.sync();
+    //  simulate a crash, the write head is still zero filled past the last chunk
+    File copy = folder.newFolder();
+    for (File f : listFiles()) {
+      java.nio.file.Files.copy(f.toPath(), new File(copy, f.getName()).toPath());
+    }
+    assertThat(new File(copy, next.getName()).length(), is(MAX_SEGMENT_SIZE));
+
+    NIOStreamImpl recovered = new NIOStreamImpl(copy, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    try {
+      recovered.open();
+      assertThat(recovered.getMarker(), is(205L));
+      recovered.seek(-1);
+      int foundChunks = 0;
+      while (recovered.read(Direction.REVERSE) != null) {
+        foundChunks++;
+      }
+      assertThat(foundChunks, is(7));
+    } finally {
+      recovered.close();
+    }
+  }
+
+  @Test
+  public void testUnusedPreallocatedSegmentIsRecovered() throws Exception {
+    stream.preallocate(true);
+    stream.append(newChunk(1),Constants.FIRST_LSN);
+    stream.sync();
+    File next = new File(workArea, NIOConstants.convertToSegmentFileName(1));
+    while (!next.exists()) {
+      Thread.sleep(10);
+    }
+    //  simulate a crash, the prepared file is left behind
+    File copy = folder.newFolder();
+    for (File f : listFiles()) {
+      java.nio.file.Files.copy(f.toPath(), new File(copy, f.getName()).toPath());
+    }
+    assertThat(copy.listFiles(NIOConstants.SEGMENT_FILENAME_FILTER).length, is(2));
+
+    NIOStreamImpl recovered = new NIOStreamImpl(copy, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    try {
+      assertThat(recovered.open(), is(true));
+      assertThat(copy.listFiles(NIOConstants.SEGMENT_FILENAME_FILTER).length, is(1));
+      assertThat(recovered.getMarker(), is(Constants.FIRST_LSN));
+    } finally {
+      recovered.close();
+    }
+  }
+
+  @Test
+  public void testDirectIOSegments() throws Exception {
+    stream.directIO(true);
+    long marker = Constants.FIRST_LSN;
+    int numChunks = 0;
+    long size = 25 * 1024 * 1024;
+    while (size > 0) {
+      int s = 10 + r.nextInt(1024 * 1024);
+      stream.append(newChunk(s),marker+=100);
+      size -= s;
+      numChunks++;
+    }
+    stream.sync();
+    stream.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    stream.seek(-1);
+    int foundChunks = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      foundChunks++;
+    }
+    assertThat(foundChunks, is(numChunks));
+  }
+
+  @Test
+  public void testMappedWriteSegments() throws Exception {
+    stream.mappedWrites(true);
+    long marker = Constants.FIRST_LSN;
+    int numChunks = 0;
+    long size = 25 * 1024 * 1024;
+    while (size > 0) {
+      int s = 10 + r.nextInt(1024 * 1024);
+      stream.append(newChunk(s),marker+=100);
+      size -= s;
+      numChunks++;
+    }
+    stream.sync();
+    stream.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    stream.seek(-1);
+    int foundChunks = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      foundChunks++;
+    }
+    assertThat(foundChunks, is(numChunks));
+  }
+
+  @Test
+  public void testAsyncWriteSegments() throws Exception {
+    stream.asyncWrites(4);
+    long marker = Constants.FIRST_LSN;
+    int numChunks = 0;
+    long size = 25 * 1024 * 1024;
+    while (size > 0) {
+      int s = 10 + r.nextInt(1024 * 1024);
+      stream.append(newChunk(s),marker+=100);
+      stream.waitForWriteOf(marker);
+      size -= s;
+      numChunks++;
+    }
+    stream.sync();
+    stream.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    stream.seek(-1);
+    int foundChunks = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      foundChunks++;
+    }
+    assertThat(foundChunks, is(numChunks));
+  }
+
+  @Test
+  public void testPipelinedSync() throws Exception {
+    stream.pipelineSync(true);
+    long marker = Constants.FIRST_LSN;
+    List<Future<Void>> syncs = new ArrayList<Future<Void>>();
+    List<Long> markers = new ArrayList<Long>();
+    for (int x = 0; x < 200; x++) {
+      stream.append(newChunk(10 + r.nextInt(256 * 1024)), marker += 100);
+      if (x % 3 == 0) {
+        syncs.add(stream.syncAsync());
+        markers.add(marker);
+      }
+    }
+    for (int x = syncs.size() - 1; x >= 0; x--) {
+      syncs.get(x).get();
+      assertTrue(stream.getSyncdMarker() >= markers.get(x));
+      for (int y = 0; y < x; y++) {
+        assertTrue(syncs.get(y).isDone());
+      }
+    }
+    stream.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+  }
+
+  @Test
+  public void testRecycledSegments() throws Exception {
+    stream.recycleSegments(2);
+    long marker = Constants.FIRST_LSN;
+    for (int x = 0; x < 16; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    stream.setMinimumMarker(marker - 50);
+    for (int x = 0; x < 2; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    stream.sync();
+    assertTrue(stream.trimLogTail(0) > 0);
+    assertThat(workArea.listFiles(NIOConstants.RECYCLED_FILENAME_FILTER).length, is(2));
+
+    int written = 0;
+    for (int x = 0; x < 8; x++) {
+      stream.append(newChunk(10 + r.nextInt(2 * 1024 * 1024)), marker += 100);
+      written++;
+    }
+    stream.append(newChunk(MAX_SEGMENT_SIZE), marker += 100);
+    stream.append(newChunk(10), marker += 100);
+    written += 2;
+    assertThat(workArea.listFiles(NIOConstants.RECYCLED_FILENAME_FILTER).length, is(0));
+    stream.sync();
+    stream.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    stream.seek(-1);
+    int found = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      found++;
+    }
+    assertTrue(found > written);
+    assertTrue(found < 28);
+  }
+
+  @Test
+  public void testLiveReadsOfRecycledWriteHead() throws Exception {
+    stream.recycleSegments(2);
+    long marker = Constants.FIRST_LSN;
+    //  chunks all the same size so the stale chunks of a recycled file line up with new ones
+    for (int x = 0; x < 16; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    stream.setMinimumMarker(marker - 50);
+    for (int x = 0; x < 2; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    stream.sync();
+    assertTrue(stream.trimLogTail(0) > 0);
+    int recycled = workArea.listFiles(NIOConstants.RECYCLED_FILENAME_FILTER).length;
+    assertThat(recycled, greaterThan(0));
+    while (workArea.listFiles(NIOConstants.RECYCLED_FILENAME_FILTER).length == recycled) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    //  two chunks on the recycled head, the stale third and fourth line up behind them
+    stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    stream.sync();
+    NIORandomAccess ra = stream.createRandomAccess(new HeapBufferSource(512*1024*1024));
+    assertThat(ra.scan(marker), notNullValue());
+  //  a reader of the live head must stop at the write position, not run on into the stale chunks
+    stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    stream.sync();
+    Chunk last = ra.scan(marker);
+    assertThat(last, notNullValue());
+    assertThat(last.remaining(), is(3L * 1024 * 1024));
+    ra.close();
+  }
+
+  @Test(timeout=60000)
+  public void testTrimPastLeasedSegment() throws Exception {
+    stream.recycleSegments(2);
+    long marker = Constants.FIRST_LSN;
+    for (int x = 0; x < 16; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    File first = new File(workArea, String.format(NIOConstants.SEGMENT_NAME_FORMAT, 0));
+    NIORandomAccess ra = stream.createRandomAccess(new HeapBufferSource(512*1024*1024));
+    Closeable lease = ra.pin(Constants.FIRST_LSN + 100);
+    Chunk leased = ra.scan(Constants.FIRST_LSN + 100);
+    stream.setMinimumMarker(marker - 50);
+    for (int x = 0; x < 2; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    stream.sync();
+  //  the trim goes ahead, the leased file is set aside rather than recycled or deleted under the lease
+    assertTrue(stream.trimLogTail(0) > 0);
+    assertFalse(first.exists());
+    File aside = new File(workArea, String.format(NIOConstants.TRIMMED_NAME_FORMAT, 0));
+    assertTrue(aside.exists());
+    assertThat(leased.remaining(), is(3L * 1024 * 1024));
+    leased.get(new byte[3 * 1024 * 1024]);
+    lease.close();
+    assertFalse(aside.exists());
+    assertThat(workArea.listFiles(NIOConstants.RECYCLED_FILENAME_FILTER).length, is(2));
+  }
+
+  @Test(timeout=60000)
+  public void testRestartWithOutstandingLease() throws Exception {
+    long marker = Constants.FIRST_LSN;
+    for (int x = 0; x < 16; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    NIORandomAccess ra = stream.createRandomAccess(new HeapBufferSource(512*1024*1024));
+    Closeable lease = ra.pin(Constants.FIRST_LSN + 100);
+    stream.setMinimumMarker(marker - 50);
+    for (int x = 0; x < 2; x++) {
+      stream.append(newChunk(3 * 1024 * 1024), marker += 100);
+    }
+    stream.sync();
+    assertTrue(stream.trimLogTail(0) > 0);
+    String[] live = workArea.list(NIOConstants.SEGMENT_FILENAME_FILTER);
+    Arrays.sort(live);
+  //  the leased segment no longer looks like part of the log
+    assertFalse(Arrays.asList(live).contains(NIOConstants.convertToSegmentFileName(0)));
+  //  shut down with the lease still out
+    stream.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    assertThat(workArea.listFiles(NIOConstants.TRIMMED_FILENAME_FILTER).length, is(0));
+    String[] reopened = workArea.list(NIOConstants.SEGMENT_FILENAME_FILTER);
+    Arrays.sort(reopened);
+    assertThat(reopened, is(live));
+    stream.seek(-1);
+    int found = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      found++;
+    }
+    assertTrue(found >= 2);
+  //  new segments follow the live ones rather than reusing a name
+    stream.append(newChunk(MAX_SEGMENT_SIZE), marker += 100);
+    stream.append(newChunk(10), marker += 100);
+    stream.sync();
+    stream.close();
+    lease.close();
+
+    stream = new NIOStreamImpl(workArea, NIOAccessMethod.getDefault(), MAX_SEGMENT_SIZE,  new HeapBufferSource(512*1024*1024),null);
+    assertTrue(stream.checkForCleanExit());
+    stream.seek(-1);
+    int again = 0;
+    while (stream.read(Direction.REVERSE) != null) {
+      again++;
+    }
+    assertThat(again, is(found + 2));
+  }
+
   @Test
   public void testRead() throws Exception {
     long size = 30 * 1024 * 1024;
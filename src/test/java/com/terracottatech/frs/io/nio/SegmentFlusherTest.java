@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.io.nio;
+
+import java.io.File;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author mscott
+ */
+public class SegmentFlusherTest {
+
+  @Test
+  public void testFlushOnSize() throws Exception {
+    NIOStreamImpl stream = mock(NIOStreamImpl.class);
+    WritingSegment head = mock(WritingSegment.class);
+    when(stream.getWriteHead()).thenReturn(head);
+    SegmentFlusher flusher = new SegmentFlusher(new File("test"), stream, 1024, 0);
+    try {
+      flusher.written(512);
+      Thread.sleep(100);
+      verify(head, never()).flush();
+      flusher.written(512);
+      verify(head, timeout(5000)).flush();
+      assertThat(flusher.getUnflushed(), is(0L));
+    } finally {
+      flusher.close();
+    }
+  }
+
+  @Test
+  public void testFlushOnInterval() throws Exception {
+    NIOStreamImpl stream = mock(NIOStreamImpl.class);
+    WritingSegment head = mock(WritingSegment.class);
+    when(stream.getWriteHead()).thenReturn(head);
+    SegmentFlusher flusher = new SegmentFlusher(new File("test"), stream, 0, 10);
+    try {
+  //  nothing appended, nothing to flush
+      Thread.sleep(100);
+      verify(head, never()).flush();
+      flusher.written(1);
+      verify(head, timeout(5000)).flush();
+    } finally {
+      flusher.close();
+    }
+  }
+
+  @Test
+  public void testSyncResetsUnflushed() throws Exception {
+    NIOStreamImpl stream = mock(NIOStreamImpl.class);
+    WritingSegment head = mock(WritingSegment.class);
+    when(stream.getWriteHead()).thenReturn(head);
+    SegmentFlusher flusher = new SegmentFlusher(new File("test"), stream, 1024, 0);
+    try {
+      flusher.written(1000);
+      flusher.synced();
+      flusher.written(1000);
+      Thread.sleep(100);
+      verify(head, never()).flush();
+      assertThat(flusher.getUnflushed(), is(1000L));
+    } finally {
+      flusher.close();
+    }
+  }
+}
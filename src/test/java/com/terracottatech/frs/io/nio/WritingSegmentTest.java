@@ -15,10 +15,14 @@
  */
 package com.terracottatech.frs.io.nio;
 
+import com.terracottatech.frs.io.Chunk;
+import com.terracottatech.frs.io.Direction;
 import com.terracottatech.frs.io.FileBuffer;
 import com.terracottatech.frs.io.WrappingChunk;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.UUID;
@@ -121,4 +125,73 @@ public class WritingSegmentTest extends NIOSegmentTest {
     writer.close();
   }
 
+  @Test
+  public void testMarkerIndexFooter() throws Exception {
+    File f = new File(getDirectory(),"seg006.frs");
+    long[] markers = writeSegment(f, 200);
+    //  clobber the marker in the first chunk footer, readers should take it from the index
+    FileChannel channel = new RandomAccessFile(f, "rw").getChannel();
+    channel.write(ByteBuffer.allocate(8), NIOSegment.FILE_HEADER_SIZE + 12 + 64 + 8);
+    channel.close();
+    verifyMarkers(f, markers);
+  }
+
+  @Test
+  public void testBadMarkerIndexIsIgnored() throws Exception {
+    File f = new File(getDirectory(),"seg007.frs");
+    long[] markers = writeSegment(f, 200);
+    //  clobber the checksum, readers fall back to the chunk footers
+    FileChannel channel = new RandomAccessFile(f, "rw").getChannel();
+    channel.write(ByteBuffer.allocate(4), channel.size() - 12);
+    channel.close();
+    verifyMarkers(f, markers);
+  }
+  
+  private long[] writeSegment(File f, int count) throws IOException, HeaderException {
+    long[] markers = new long[count];
+    writer = new WritingSegment(stream, f);
+    writer.open();
+    writer.insertFileHeader(1000, 1100);
+    long marker = 1100;
+    for (int x=0;x<count;x++) {
+      ByteBuffer data = ByteBuffer.allocate(64);
+      data.put(0, (byte)x);
+      marker += 1 + (x % 7);
+      markers[x] = marker;
+      writer.append(new WrappingChunk(data), marker);
+    }
+    writer.prepareForClose();
+    writer.close();
+    return markers;
+  }
+
+  private void verifyMarkers(File f, long[] markers) throws IOException {
+    FileChannel channel = new RandomAccessFile(f, "r").getChannel();
+    channel.position(NIOSegment.FILE_HEADER_SIZE);
+    verifyMarkers(new BufferedReadbackStrategy(Direction.RANDOM, channel, null), markers);
+    channel = new RandomAccessFile(f, "r").getChannel();
+    channel.position(NIOSegment.FILE_HEADER_SIZE);
+    verifyMarkers(new MinimalReadbackStrategy(Direction.RANDOM, 1000, channel, null), markers);
+    channel = new RandomAccessFile(f, "r").getChannel();
+    channel.position(NIOSegment.FILE_HEADER_SIZE);
+    verifyMarkers(new MappedReadbackStrategy(channel, Direction.RANDOM), markers);
+  }
+
+  private void verifyMarkers(ReadbackStrategy reader, long[] markers) throws IOException {
+    try {
+      Assert.assertTrue(reader.isConsistent());
+      Assert.assertEquals(markers[markers.length - 1], reader.getMaximumMarker());
+      for (int x=0;x<markers.length;x++) {
+        Chunk c = reader.scan(markers[x]);
+        Assert.assertEquals((byte)x, c.get());
+        Assert.assertEquals((byte)x, reader.scan(markers[x] - x % 7).get());
+      }
+      Assert.assertNull(reader.scan(markers[markers.length - 1] + 1));
+    } finally {
+      if ( reader instanceof Closeable ) {
+        ((Closeable)reader).close();
+      }
+    }
+  }
+
 }
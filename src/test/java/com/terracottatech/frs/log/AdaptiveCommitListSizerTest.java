@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+
+/**
+ * @author mscott
+ */
+public class AdaptiveCommitListSizerTest {
+
+  @Test
+  public void testFullRegionsGrowToMaximum() {
+    AdaptiveCommitListSizer sizer = new AdaptiveCommitListSizer(64, 16, 1024);
+    for (int x = 0; x < 10; x++) {
+      int size = sizer.nextSize();
+      sizer.regionClosed(size, size, 1000);
+    }
+    assertThat(sizer.nextSize(), is(1024));
+  }
+
+  @Test
+  public void testSparseRegionsShrinkToMinimum() {
+    AdaptiveCommitListSizer sizer = new AdaptiveCommitListSizer(1024, 16, 1024);
+    for (int x = 0; x < 100; x++) {
+      sizer.regionWritten(1000);
+      sizer.regionClosed(1, sizer.nextSize(), 1000000);
+    }
+    assertThat(sizer.nextSize(), is(16));
+  }
+
+  @Test
+  public void testCapacityFollowsArrivalRateTimesLatency() {
+    AdaptiveCommitListSizer sizer = new AdaptiveCommitListSizer(16, 16, 64 * 1024);
+//  100 records per microsecond, 50 microsecond writes.  expect about 2 * 100 * 50
+    for (int x = 0; x < 200; x++) {
+      sizer.regionWritten(50000);
+      sizer.regionClosed(100, 64 * 1024, 1000);
+    }
+    assertThat(sizer.nextSize(), greaterThan(9000));
+    assertThat(sizer.nextSize(), lessThan(11000));
+  }
+
+  @Test
+  public void testCommitListChainUsesSizer() {
+    AdaptiveCommitListSizer sizer = new AdaptiveCommitListSizer(32, 16, 1024);
+    CommitList list = new AtomicCommitList(100, 10, 200, sizer);
+    assertThat(list.getCapacity(), is(10));
+    assertThat(list.next().getCapacity(), is(32));
+    sizer.regionClosed(32, 32, 1000);
+    assertThat(list.next().next().getCapacity(), is(64));
+    assertThat(new StackingCommitList(100, 10, 200, sizer).next().getCapacity(), is(64));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadBounds() {
+    new AdaptiveCommitListSizer(32, 64, 16);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author mscott
+ */
+@RunWith(Parameterized.class)
+public class AppendWaitStrategyTest {
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> strategies() {
+    return Arrays.asList(new Object[][] {
+        {AppendWaitStrategy.BLOCKING},
+        {AppendWaitStrategy.BUSY_SPIN},
+        {AppendWaitStrategy.YIELD},
+        {AppendWaitStrategy.PARK}
+    });
+  }
+
+  private final AppendWaitStrategy waits;
+
+  public AppendWaitStrategyTest(String type) {
+    this.waits = AppendWaitStrategy.create(type);
+  }
+
+  @Test
+  public void testWaitForWrite() throws Exception {
+    final CompletableFuture<Void> write = new CompletableFuture<>();
+    Thread writer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException ie) {
+        throw new AssertionError(ie);
+      }
+      write.complete(null);
+    });
+    writer.start();
+    waits.waitFor(write);
+    assertThat(write.isDone(), is(true));
+    assertThat(waits.getWaitCount(), is(1L));
+    assertThat(waits.getWaitTime(), greaterThan(0L));
+    writer.join();
+  }
+
+  @Test
+  public void testCompletedWriteDoesNotCount() {
+    waits.waitFor(CompletableFuture.completedFuture(null));
+    assertThat(waits.getWaitCount(), is(0L));
+  }
+
+  @Test
+  public void testFailedWriteReturns() {
+    CompletableFuture<Void> write = new CompletableFuture<>();
+    write.completeExceptionally(new Exception());
+    waits.waitFor(write);
+  }
+
+  @Test
+  public void testAwaitLatch() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(2);
+    assertThat(waits.await(latch, 10, TimeUnit.MILLISECONDS), is(false));
+    Thread counter = new Thread(() -> {
+      latch.countDown();
+      latch.countDown();
+    });
+    counter.start();
+    assertThat(waits.await(latch, 10, TimeUnit.SECONDS), is(true));
+    assertThat(waits.getWaitCount(), greaterThan(0L));
+    counter.join();
+  }
+
+  @Test
+  public void testCommitListUsesStrategy() throws Exception {
+    final CommitList list = new AtomicCommitList(100, 10, 1, null, waits);
+    Thread appender = new Thread(() -> {
+      for (long lsn = 100; lsn < 110; lsn++) {
+        LogRecord record = mock(LogRecord.class);
+        when(record.getLsn()).thenReturn(lsn);
+        list.append(record, false);
+      }
+    });
+    appender.start();
+    list.waitForContiguous();
+    assertThat(list.getEndLsn(), greaterThan(99L));
+    appender.join();
+  }
+
+  @Test
+  public void testRetryWaitsEveryRetries() throws Exception {
+    CompletableFuture<Void> pending = new CompletableFuture<>();
+    //  hopping to the next region never waits on the one missed
+    for (int round = 0; round < AppendWaitStrategy.RETRIES; round++) {
+      waits.retry(round, pending);
+    }
+    assertThat(waits.getWaitCount(), is(0L));
+    final CompletableFuture<Void> write = new CompletableFuture<>();
+    Thread writer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException ie) {
+        throw new AssertionError(ie);
+      }
+      write.complete(null);
+    });
+    writer.start();
+    waits.retry(AppendWaitStrategy.RETRIES, write);
+    assertThat(write.isDone(), is(true));
+    assertThat(waits.getWaitCount(), is(1L));
+    writer.join();
+  }
+
+  @Test
+  public void testIdleRegionBlocks() throws Exception {
+    final CommitList list = new AtomicCommitList(100, 10, 10000, null, waits);
+    Thread queuer = new Thread(() -> {
+      try {
+        list.waitForContiguous();
+      } catch (InterruptedException ie) {
+        throw new AssertionError(ie);
+      }
+    });
+    queuer.start();
+    //  whatever the strategy, nothing has arrived so the queuer is off cpu
+    while (queuer.getState() != Thread.State.TIMED_WAITING) {
+      assertThat(queuer.getState(), not(Thread.State.TERMINATED));
+      Thread.sleep(10);
+    }
+    for (long lsn = 100; lsn < 110; lsn++) {
+      LogRecord record = mock(LogRecord.class);
+      when(record.getLsn()).thenReturn(lsn);
+      list.append(record, false);
+    }
+    queuer.join();
+    assertThat(list.getEndLsn(), is(109L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownStrategy() {
+    AppendWaitStrategy.create("SLEEPY");
+  }
+}
@@ -28,12 +28,14 @@ import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
 import static org.hamcrest.number.OrderingComparison.lessThan;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -98,6 +100,32 @@ public class AtomicCommitListTest {
     assertThat(System.currentTimeMillis()-time,lessThan(2000l));
   }
 
+  @Test
+  public void testGroupCommitHoldsSyncRegion() throws Exception {
+    GroupCommitPolicy policy = new GroupCommitPolicy(50, TimeUnit.MILLISECONDS, 0);
+    CommitList list = new AtomicCommitList(10, 10, 2000, null, AppendWaitStrategy.create(AppendWaitStrategy.BLOCKING), policy);
+    long start = System.nanoTime();
+    assertThat(list.append(record(10), true), is(true));
+    assertThat(list.append(record(11), true), is(true));
+    list.waitForContiguous();
+    assertThat(System.nanoTime() - start, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+    assertThat(list.getEndLsn(), is(11L));
+    assertThat(list.next().append(record(12), true), is(true));
+  }
+
+  @Test
+  public void testGroupCommitClosesAtMaxRecords() throws Exception {
+    GroupCommitPolicy policy = new GroupCommitPolicy(10, TimeUnit.SECONDS, 3);
+    CommitList list = new AtomicCommitList(10, 10, 2000, null, AppendWaitStrategy.create(AppendWaitStrategy.BLOCKING), policy);
+    long start = System.nanoTime();
+    assertThat(list.append(record(10), true), is(true));
+    assertThat(list.append(record(11), false), is(true));
+    assertThat(list.append(record(12), true), is(true));
+    list.waitForContiguous();
+    assertThat(System.nanoTime() - start, lessThan(TimeUnit.SECONDS.toNanos(5)));
+    assertThat(list.getEndLsn(), is(12L));
+  }
+
   @Test
   public void testBasicClose() throws Exception {
     LogRecord record0 = record(10);
@@ -16,11 +16,17 @@
 package com.terracottatech.frs.log;
 
 import com.terracottatech.frs.config.FrsProperty;
+import com.terracottatech.frs.io.BufferSource;
 import com.terracottatech.frs.io.Chunk;
 import com.terracottatech.frs.io.CopyingChunk;
+import com.terracottatech.frs.io.HeapBufferSource;
+import java.io.Closeable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -196,4 +202,242 @@ public class LogRegionPackerTest {
       assertNotNull(lr);
     }
   }
+
+  @Test
+  public void testZeroCopyPack() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    final ByteBuffer large = ByteBuffer.allocateDirect(64 * 1024);
+    for (int x=0;x<3;x++) {
+      LogRecord small = Mockito.mock(LogRecord.class);
+      when(small.getPayload()).thenReturn(new ByteBuffer[] {ByteBuffer.allocate(100)});
+      when(small.getLsn()).thenReturn(100L + 2 * x);
+      list.add(small);
+      LogRecord big = Mockito.mock(LogRecord.class);
+      when(big.getPayload()).thenReturn(new ByteBuffer[] {large.asReadOnlyBuffer()});
+      when(big.getLsn()).thenReturn(101L + 2 * x);
+      list.add(big);
+    }
+    BufferSource pool = Mockito.spy(new HeapBufferSource(1024 * 1024));
+    CopyingPacker instance = new CopyingPacker(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), pool, 1024);
+    Chunk result = instance.pack(list);
+    int copies = 0;
+    int refs = 0;
+    for (ByteBuffer bb : result.getBuffers()) {
+      if (bb.remaining() == large.capacity()) {
+        refs++;
+      } else {
+        copies++;
+      }
+    }
+    assertEquals(3, refs);
+    assertEquals(3, copies);
+    List<LogRecord> records = LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), new CopyingChunk(result));
+    assertEquals(6, records.size());
+    ((Closeable)result).close();
+    verify(pool, times(copies)).returnBuffer(Mockito.any(ByteBuffer.class));
+  }
+
+  @Test
+  public void testCompressedRegion() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    for (int x=0;x<100;x++) {
+      LogRecord record = Mockito.mock(LogRecord.class);
+      ByteBuffer data = ByteBuffer.allocate(512);
+      while (data.hasRemaining()) {
+        data.putInt(x);
+      }
+      data.flip();
+      when(record.getPayload()).thenReturn(new ByteBuffer[] {data});
+      when(record.getLsn()).thenReturn(1000L + x);
+      list.add(record);
+    }
+    LogRegionPacker instance = new LogRegionPacker(Signature.ADLER32, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), LogRegionPacker.LZ_REGION_FORMAT_STRING);
+    Chunk result = instance.pack(list);
+    assertTrue(result.length() < 100 * 512 / 10);
+    Chunk check = new CopyingChunk(result);
+    check.getShort();
+    check.getLong();
+    check.getLong();
+    assertEquals('L', check.get());
+    assertEquals('Z', check.get());
+
+    check.clear();
+    List<LogRecord> records = LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check);
+    assertEquals(100, records.size());
+    for (int x=0;x<100;x++) {
+      LogRecord lr = records.get(x);
+      assertEquals(1000L + x, lr.getLsn());
+      ByteBuffer payload = lr.getPayload()[0];
+      assertEquals(512, payload.remaining());
+      assertEquals(x, payload.getInt(payload.position() + 508));
+    }
+
+    check.clear();
+    assertEquals(100, LogRegionPacker.unpackInReverse(Signature.ADLER32, LogRegionPacker.LZ_REGION_FORMAT_STRING, check).size());
+
+    for (int x=0;x<100;x+=7) {
+      check.clear();
+      LogRecord lr = LogRegionPacker.extract(Signature.NONE, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check, 1000L + x);
+      assertEquals(1000L + x, lr.getLsn());
+    }
+  }
+
+  @Test
+  public void testIncompressibleRegionFallsBack() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    Random r = new Random(1);
+    byte[] noise = new byte[4096];
+    r.nextBytes(noise);
+    LogRecord record = Mockito.mock(LogRecord.class);
+    when(record.getPayload()).thenReturn(new ByteBuffer[] {ByteBuffer.wrap(noise)});
+    when(record.getLsn()).thenReturn(10L);
+    list.add(record);
+    LogRegionPacker instance = new LogRegionPacker(Signature.ADLER32, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), LogRegionPacker.LZ_REGION_FORMAT_STRING);
+    Chunk check = new CopyingChunk(instance.pack(list));
+    check.getShort();
+    check.getLong();
+    check.getLong();
+    assertEquals('H', check.get());
+    assertEquals('T', check.get());
+    check.clear();
+    assertEquals(1, LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check).size());
+  }
+
+  @Test
+  public void testOversizedRegionIsNotCompressed() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    for (int x=0;x<2;x++) {
+      LogRecord record = Mockito.mock(LogRecord.class);
+      ByteBuffer data = ByteBuffer.allocate(LogRegionPacker.MAX_COMPRESSED_REGION / 2);
+      when(record.getPayload()).thenReturn(new ByteBuffer[] {data});
+      when(record.getLsn()).thenReturn(10L + x);
+      list.add(record);
+    }
+    LogRegionPacker instance = new LogRegionPacker(Signature.ADLER32, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), LogRegionPacker.LZ_REGION_FORMAT_STRING);
+    Chunk check = new CopyingChunk(instance.pack(list));
+    check.getShort();
+    check.getLong();
+    check.getLong();
+  //  zeros compress well, the region is only too big
+    assertEquals('H', check.get());
+    assertEquals('T', check.get());
+    check.clear();
+    assertEquals(2, LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check).size());
+  }
+
+  @Test(expected = FormatException.class)
+  public void testCorruptCompressedRegion() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    for (int x=0;x<10;x++) {
+      LogRecord record = Mockito.mock(LogRecord.class);
+      when(record.getPayload()).thenReturn(new ByteBuffer[] {ByteBuffer.allocate(1024)});
+      when(record.getLsn()).thenReturn(10L + x);
+      list.add(record);
+    }
+    LogRegionPacker instance = new LogRegionPacker(Signature.ADLER32, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), LogRegionPacker.LZ_REGION_FORMAT_STRING);
+    Chunk check = new CopyingChunk(instance.pack(list));
+    ByteBuffer tail = check.getBuffers()[check.getBuffers().length - 1];
+    tail.put(tail.limit() - 1, (byte)0x7f);
+    LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check);
+  }
+
+  @Test
+  public void testCrc32cRegion() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    for (int x=0;x<40;x++) {
+      LogRecord record = Mockito.mock(LogRecord.class);
+      when(record.getPayload()).thenReturn(new ByteBuffer[] {ByteBuffer.allocate(256)});
+      when(record.getLsn()).thenReturn(50L + x);
+      list.add(record);
+    }
+    for (String format : new String[] {LogRegionPacker.NEW_REGION_FORMAT_STRING, LogRegionPacker.LZ_REGION_FORMAT_STRING}) {
+      LogRegionPacker instance = new LogRegionPacker(Signature.CRC32C, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), format);
+      Chunk check = new CopyingChunk(instance.pack(list));
+      assertEquals(LogRegionPacker.CRC32C_REGION_VERSION, check.getShort());
+      long sum = check.getLong();
+      assertEquals(sum, check.getLong());
+      assertTrue(sum != 0);
+      check.clear();
+      assertEquals(40, LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check).size());
+      check.clear();
+      assertEquals(40, LogRegionPacker.unpackInReverse(Signature.CRC32C, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check).size());
+      check.clear();
+      assertEquals(55L, LogRegionPacker.extract(Signature.NONE, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check, 55L).getLsn());
+    }
+  }
+
+  @Test(expected = FormatException.class)
+  public void testCrc32cDetectsCorruption() throws Exception {
+    LogRecord record = Mockito.mock(LogRecord.class);
+    when(record.getPayload()).thenReturn(new ByteBuffer[] {ByteBuffer.allocate(256)});
+    when(record.getLsn()).thenReturn(50L);
+    LogRegionPacker instance = new LogRegionPacker(Signature.CRC32C, (String) FORCE_LOG_REGION_FORMAT.defaultValue());
+    Chunk check = new CopyingChunk(instance.pack(Collections.singletonList(record)));
+    ByteBuffer tail = check.getBuffers()[check.getBuffers().length - 1];
+    tail.put(tail.limit() - 1, (byte)1);
+    LogRegionPacker.unpack(Signature.CRC32C, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check);
+  }
+
+  @Test
+  public void testCompactRecordRegion() throws Exception {
+    final ArrayList<LogRecord> list = new ArrayList<LogRecord>();
+    Random r = new Random(3);
+    int[] sizes = new int[300];
+    for (int x=0;x<300;x++) {
+      LogRecord record = Mockito.mock(LogRecord.class);
+      sizes[x] = 8 + r.nextInt(300);
+      ByteBuffer data = ByteBuffer.allocate(sizes[x]);
+      data.putLong(0, x);
+      when(record.getPayload()).thenReturn(new ByteBuffer[] {data});
+      when(record.getLsn()).thenReturn((1L << 40) + x);
+      list.add(record);
+    }
+    String[][] formats = {
+        {LogRegionPacker.NEW_REGION_FORMAT_STRING, LogRegionPacker.COMPACT_REGION_FORMAT_STRING},
+        {LogRegionPacker.LZ_REGION_FORMAT_STRING, LogRegionPacker.LZ_COMPACT_REGION_FORMAT_STRING}
+    };
+    for (String[] format : formats) {
+      for (LogRecord record : list) {
+        record.getPayload()[0].clear();
+      }
+      long fixed = new LogRegionPacker(Signature.ADLER32, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), format[0]).pack(list).length();
+      for (LogRecord record : list) {
+        record.getPayload()[0].clear();
+      }
+      LogRegionPacker instance = new LogRegionPacker(Signature.ADLER32, null, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), format[0], true);
+      Chunk check = new CopyingChunk(instance.pack(list));
+      assertTrue(check.length() < fixed);
+      check.getShort();
+      check.getLong();
+      check.getLong();
+      assertEquals(format[1].charAt(0), check.get());
+      assertEquals(format[1].charAt(1), check.get());
+
+      check.clear();
+      List<LogRecord> records = LogRegionPacker.unpack(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check);
+      assertEquals(300, records.size());
+      for (int x=0;x<300;x++) {
+        LogRecord lr = records.get(x);
+        assertEquals((1L << 40) + x, lr.getLsn());
+        ByteBuffer payload = lr.getPayload()[0];
+        assertEquals(sizes[x], payload.remaining());
+        assertEquals(x, payload.getLong(payload.position()));
+      }
+
+      for (int x=0;x<300;x+=13) {
+        check.clear();
+        LogRecord lr = LogRegionPacker.extract(Signature.ADLER32, (String) FORCE_LOG_REGION_FORMAT.defaultValue(), check, (1L << 40) + x);
+        assertEquals((1L << 40) + x, lr.getLsn());
+        assertEquals(x, lr.getPayload()[0].getLong(lr.getPayload()[0].position()));
+      }
+      check.clear();
+      assertNull(LogRegionPacker.extract(Signature.NONE, format[1], check, (1L << 40) + 300));
+    }
+  }
+
+  @Test
+  public void testCompactMinimumRecordOverhead() {
+    assertEquals(LogRegionPacker.getMinimumRecordOverhead(), LogRegionPacker.getMinimumRecordOverhead(false));
+    assertEquals(15L, LogRegionPacker.getMinimumRecordOverhead(true));
+  }
 }
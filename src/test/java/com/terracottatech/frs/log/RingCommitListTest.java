@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2012-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.log;
+
+import com.terracottatech.frs.SnapshotRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author mscott
+ */
+public class RingCommitListTest {
+  private CommitList commitList;
+
+  @Before
+  public void setUp() throws Exception {
+    commitList = new RingCommitList(10, 10, 2000);
+  }
+
+  @Test
+  public void testBasicAppend() throws Exception {
+    LogRecord record0 = record(10);
+    assertThat(commitList.append(record0,false), is(true));
+
+    // Test outside of range
+    assertThat(commitList.append(record(21),false), is(false));
+
+    commitList.close(10);
+    for (LogRecord record : commitList) {
+      assertThat(record, is(record0));
+    }
+  }
+
+  @Test
+  public void testLongSnapshot() throws Exception {
+    CommitList current = commitList;
+    long lsn = 10;
+    while ( current == commitList ) {
+      current = append(record(lsn++));
+    }
+    current = append(snapshot(lsn++));
+
+    assertThat("make sure commitlist is closed", current.getEndLsn() == lsn-1);
+  }
+
+  @Test
+  public void testOneElementSync() throws Exception {
+    final long time = System.currentTimeMillis();
+    Thread appender = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(1);
+        } catch ( InterruptedException ie ) {
+
+        }
+        commitList.append(plainRecord(10), true);
+      }
+    };
+    appender.start();
+    commitList.waitForContiguous();
+    commitList.written();
+    commitList.getWriteFuture().get();
+    assertThat(commitList.isSyncRequested(), is(true));
+    assertThat(System.currentTimeMillis()-time,lessThan(2000l));
+    appender.join();
+  }
+
+  @Test
+  public void testCloseLeavesRecordsInPlace() throws Exception {
+    LogRecord record0 = record(10);
+    assertThat(commitList.append(record0,false), is(true));
+    LogRecord record1 = record(11);
+    assertThat(commitList.append(record1,false), is(true));
+
+    assertThat(commitList.close(10), is(true));
+    assertThat(commitList.isSyncRequested(), is(false));
+    for (LogRecord record : commitList) {
+      assertThat(record, is(record0));
+    }
+
+    assertThat(commitList.append(record(12),true), is(false));
+    assertThat(commitList.isSyncRequested(), is(false));
+
+  //  record 11 was never transferred, the next region already covers it
+    CommitList next = commitList.next();
+    assertThat(next.getBaseLsn(), is(11L));
+    next.close(11);
+    next.waitForContiguous();
+    for (LogRecord record : next) {
+      assertThat(record, is(record1));
+    }
+  }
+
+  @Test
+  public void testWaitForContiguous() throws Exception {
+    assertThat(commitList.append(record(15),false), is(true));
+    assertThat(commitList.close(15), is(true));
+
+    final AtomicReference<Exception> error = new AtomicReference<Exception>();
+    final AtomicBoolean waitComplete = new AtomicBoolean(false);
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          commitList.waitForContiguous();
+          waitComplete.set(true);
+        } catch (Exception e) {
+          error.set(e);
+        }
+      }
+    };
+    waiter.start();
+    waiter.join(1000);
+    assertThat(waitComplete.get(), is(false));
+
+    for (int i = 16; i < 21; i++) {
+      assertThat(commitList.append(record(i),false), is(false));
+      assertThat(commitList.next().append(record(i),false), is(true));
+    }
+
+    waiter.join(1000);
+    assertThat(waitComplete.get(), is(false));
+
+    for (int i = 10; i < 15; i++) {
+      assertThat(commitList.append(record(i),false), is(true));
+    }
+
+    waiter.join(5 * 1000);
+    assertThat(waitComplete.get(), is(true));
+    assertThat(error.get() == null, is(true));
+  }
+
+  @Test
+  public void testAppendWaitsForRingSlot() throws Exception {
+  //  10 slot regions, a 128 slot ring
+    final AtomicLong lsn = new AtomicLong(10);
+    Thread appender = new Thread() {
+      @Override
+      public void run() {
+        CommitList mine = commitList;
+        while (lsn.get() < 10 + 200) {
+          mine = append(mine, plainRecord(lsn.get()), false);
+          lsn.incrementAndGet();
+        }
+      }
+    };
+    appender.start();
+    appender.join(1000);
+    assertThat(appender.isAlive(), is(true));
+    assertThat(lsn.get(), is(10L + 128));
+
+    CommitList current = commitList;
+    while (appender.isAlive() || current.getBaseLsn() < lsn.get()) {
+      current.waitForContiguous();
+      current.written();
+      current = current.next();
+    }
+    assertThat(lsn.get(), is(210L));
+  }
+
+  @Test
+  public void testProducersAndConsumer() throws Exception {
+    final AtomicLong lsn = new AtomicLong(10);
+    final long last = 10 + 50000;
+    List<Thread> appenders = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      Thread appender = new Thread() {
+        @Override
+        public void run() {
+          CommitList mine = commitList;
+          long next = lsn.getAndIncrement();
+          while (next < last) {
+            mine = append(mine, plainRecord(next), next % 7 == 0);
+            next = lsn.getAndIncrement();
+          }
+        }
+      };
+      appender.start();
+      appenders.add(appender);
+    }
+    long expected = 10;
+    CommitList current = commitList;
+    while (expected < last) {
+      current.waitForContiguous();
+      if (!current.isEmpty()) {
+        for (LogRecord record : current) {
+          assertThat(record.getLsn(), is(expected++));
+        }
+      }
+      current.written();
+      current = current.next();
+    }
+    for (Thread appender : appenders) {
+      appender.join();
+    }
+  }
+
+  @Test
+  public void testThrowingException() throws Exception {
+    commitList.next();
+    commitList.exceptionThrown(new IOException());
+    try {
+      commitList.next().getWriteFuture().get();
+      fail();
+    } catch ( ExecutionException ex ) {
+      assertThat(ex.getCause() instanceof IOException, is(true));
+    }
+  }
+
+  private LogRecord snapshot(long lsn) {
+    LogRecord record = mock(SnapshotRecord.class);
+    when(record.getLsn()).thenReturn(lsn);
+    return record;
+  }
+
+  private LogRecord record(long lsn) {
+    LogRecord record = mock(LogRecord.class);
+    when(record.getLsn()).thenReturn(lsn);
+    return record;
+  }
+
+  private LogRecord plainRecord(long lsn) {
+    LogRecord record = new LogRecordImpl(null, null);
+    record.updateLsn(lsn);
+    return record;
+  }
+
+  private CommitList append(LogRecord record) {
+    return append(commitList, record, false);
+  }
+
+  private static CommitList append(CommitList l, LogRecord record, boolean sync) {
+    while (!l.append(record,sync)) {
+      l = l.next();
+    }
+    return l;
+  }
+
+  private static abstract class SnapshotRecord implements LogRecord, SnapshotRequest {
+
+  }
+}
@@ -18,10 +18,15 @@ package com.terracottatech.frs.log;
 import com.terracottatech.frs.Constants;
 import com.terracottatech.frs.Snapshot;
 import com.terracottatech.frs.SnapshotRequest;
+import com.terracottatech.frs.config.Configuration;
+import com.terracottatech.frs.config.FrsProperty;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.terracottatech.frs.io.Chunk;
+import com.terracottatech.frs.io.CopyingChunk;
 import com.terracottatech.frs.io.Direction;
 import com.terracottatech.frs.io.IOManager;
 import com.terracottatech.frs.io.IOStatistics;
@@ -33,8 +38,11 @@ import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -48,14 +56,18 @@ import static com.terracottatech.frs.config.FrsProperty.FORCE_LOG_REGION_FORMAT;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.number.OrderingComparison.greaterThan;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -68,6 +80,8 @@ public class StagingLogManagerTest {
     private StagingLogManager logManager;
     private boolean startThrowing = false;
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Before
     public void setUp() throws Exception {
@@ -109,6 +123,32 @@ public class StagingLogManagerTest {
         verify(ioManager, atLeastOnce()).write(any(Chunk.class),any(Long.class));
     }
     
+    @Test
+    public void testAsyncWritesCompleteWhenLanded() throws Exception {
+        CompletableFuture<Void> first = new CompletableFuture<Void>();
+        CompletableFuture<Void> second = new CompletableFuture<Void>();
+        doReturn(first).doReturn(second).when(ioManager).writtenAsync(anyLong());
+        logManager.startup();
+        Future<Void> one = logManager.append(newRecord());
+        verify(ioManager, timeout(10000)).writtenAsync(anyLong());
+        Future<Void> two = logManager.append(newRecord());
+        verify(ioManager, timeout(10000).times(2)).writtenAsync(anyLong());
+  //  both are issued, neither has landed
+        assertThat(one.isDone(), is(false));
+        assertThat(two.isDone(), is(false));
+  //  the second write fails before the first lands, it still waits its turn
+        second.completeExceptionally(new IOException("disk full"));
+        assertThat(two.isDone(), is(false));
+        first.complete(null);
+        one.get(LOG_REGION_WRITE_TIMEOUT, SECONDS);
+        try {
+            two.get(LOG_REGION_WRITE_TIMEOUT, SECONDS);
+            fail();
+        } catch ( ExecutionException ee ) {
+            assertThat(ee.getCause(), instanceOf(IOException.class));
+        }
+    }
+
     @Test
     public void testQueueClearOnException() throws Exception {
         logManager.startup();
@@ -199,6 +239,102 @@ public class StagingLogManagerTest {
         verify(ioManager, atLeast(syncs.get() / 10)).write(any(Chunk.class),any(Long.class));
     }
 
+    @Test
+    public void testParallelPacking() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(FrsProperty.IO_PACKER_THREADS.shortName(), "4");
+        props.setProperty(FrsProperty.IO_PACKER_IN_FLIGHT.shortName(), "2");
+        props.setProperty(FrsProperty.IO_COMMIT_QUEUE_SIZE.shortName(), "16");
+        Configuration config = Configuration.getConfiguration(folder.newFolder(), props);
+        logManager = new StagingLogManager(ioManager, null, config);
+        logManager.startup();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Callable<Void>> runnables = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < 2000; i++) {
+            runnables.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    logManager.append(newRecord()).get();
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : executorService.invokeAll(runnables)) {
+            future.get();
+        }
+        executorService.shutdown();
+        logManager.shutdown();
+  //  regions are handed to the IO manager in lsn order or the write fails
+        assertThat(ioManager.getCurrentMarker(), is(logManager.currentLsn() - 1));
+    }
+
+    @Test
+    public void testPackerThreadsSurviveSmallRegions() throws Exception {
+        final List<Throwable> uncaught = new CopyOnWriteArrayList<Throwable>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> uncaught.add(e));
+        try {
+            Properties props = new Properties();
+            props.setProperty(FrsProperty.IO_PACKER_THREADS.shortName(), "4");
+            props.setProperty(FrsProperty.IO_PACKER_IN_FLIGHT.shortName(), "8");
+            props.setProperty(FrsProperty.IO_COMMIT_QUEUE_SIZE.shortName(), "2");
+            Configuration config = Configuration.getConfiguration(folder.newFolder(), props);
+  //  packed buffers are recycled once written, keep copies to check the output
+            ioManager.copyWrites();
+            logManager = new StagingLogManager(ioManager, null, config);
+            logManager.startup();
+            ExecutorService executorService = Executors.newFixedThreadPool(8);
+            List<Callable<Void>> runnables = new ArrayList<Callable<Void>>();
+            for (int i = 0; i < 20000; i++) {
+                final boolean sync = ( i % 3 == 0 );
+                runnables.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if ( sync ) {
+                            logManager.appendAndSync(newRecord()).get();
+                        } else {
+                            logManager.append(newRecord()).get();
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executorService.invokeAll(runnables)) {
+                future.get();
+            }
+            executorService.shutdown();
+  //  a packer thread that died would have been replaced by a higher numbered one
+            for (Thread t : Thread.getAllStackTraces().keySet()) {
+                if ( t.getName().startsWith("async packing thread - ") ) {
+                    assertThat(Integer.parseInt(t.getName().substring("async packing thread - ".length())) <= 4, is(true));
+                }
+            }
+            logManager.shutdown();
+            assertThat(ioManager.getCurrentMarker(), is(logManager.currentLsn() - 1));
+            assertThat(uncaught.toString(), uncaught.isEmpty(), is(true));
+  //  regions packed in parallel must still land in lsn order with every record in exactly one region
+            Signature checksum = Signature.valueOf(config.getString(FrsProperty.IO_CHECKSUM));
+            String format = config.getString(FrsProperty.FORCE_LOG_REGION_FORMAT);
+            long expected = Constants.FIRST_LSN;
+            int regions = 0;
+            Iterator<Chunk> written = ioManager.chunks.descendingIterator();
+            while ( written.hasNext() ) {
+                List<LogRecord> records = LogRegionPacker.unpack(checksum, format, written.next());
+                assertThat(records.isEmpty(), is(false));
+                for (LogRecord record : records) {
+                    assertThat(record.getLsn(), is(expected++));
+                }
+                regions++;
+            }
+            assertThat(expected, is(logManager.currentLsn()));
+            assertThat(expected - Constants.FIRST_LSN, is(20000L));
+  //  small in flight and commit queue sizes should have forced many regions through the packers
+            assertThat(regions, greaterThan(1));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
     /**
      * Test of reader method, of class StagingLogManager.
      */
@@ -369,6 +505,7 @@ public class StagingLogManagerTest {
         private boolean slowReads = false;
         private boolean dieOnRead = false;
         private boolean haltWrites = false;
+        private boolean copyWrites = false;
         private volatile IOException exception;
 
         @Override
@@ -377,7 +514,7 @@ public class StagingLogManagerTest {
             if ( haltWrites ) block();
             if ( exception != null ) throw exception;
             current = lsn;
-            chunks.push(region);
+            chunks.push(copyWrites ? new CopyingChunk(region) : region);
             return 0;
         }
         
@@ -420,6 +557,10 @@ public class StagingLogManagerTest {
         dieOnRead = true;
     }
     
+    public void copyWrites() {
+        copyWrites = true;
+    }
+    
     public void haltWrites() {
         haltWrites = true;
     }
@@ -38,6 +38,7 @@ import com.terracottatech.frs.recovery.RecoveryManager;
 import com.terracottatech.frs.transaction.TransactionManager;
 import com.terracottatech.frs.util.NullFuture;
 
+import java.util.List;
 import java.util.concurrent.Future;
 
 /**
@@ -101,6 +102,16 @@ public class MockRestartStore implements RestartStore<Long, String, String> {
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
+  @Override
+  public List<Tuple<Long, String, String>> getAll(long[] markers) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  @Override
+  public Tuple<Long, String, String> lease(long marker) {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
   @Override
   public Snapshot snapshot() throws RestartStoreException {
     throw new UnsupportedOperationException();
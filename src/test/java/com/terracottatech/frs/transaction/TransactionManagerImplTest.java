@@ -21,10 +21,12 @@ import com.terracottatech.frs.action.NullActionManager;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
@@ -86,6 +88,34 @@ public class TransactionManagerImplTest {
             new TransactionCommitAction(handle, true));
   }
 
+  @Test
+  public void testCommitAsync() throws Exception {
+    CompletableFuture<Void> written = new CompletableFuture<Void>();
+    doReturn(written).when(actionManager).syncHappened(any(Action.class));
+    TransactionHandle handle = transactionManager.begin();
+    CompletableFuture<Void> committed = transactionManager.commitAsync(handle, true).toCompletableFuture();
+    verify(actionManager).syncHappened(new TransactionCommitAction(handle, true));
+    assertThat(committed.isDone(), is(false));
+    written.complete(null);
+    assertThat(committed.isDone(), is(true));
+    committed.get();
+
+    written = new CompletableFuture<Void>();
+    doReturn(written).when(actionManager).syncHappened(any(Action.class));
+    committed = transactionManager.commitAsync(transactionManager.begin(), true).toCompletableFuture();
+    written.completeExceptionally(new Exception());
+    try {
+      committed.get();
+      fail("Commit should have failed.");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TransactionException.class));
+    }
+
+    handle = transactionManager.begin();
+    assertThat(transactionManager.commitAsync(handle, false).toCompletableFuture().isDone(), is(true));
+    verify(actionManager).happened(new TransactionCommitAction(handle, true));
+  }
+
   @Test
   public void testHappened() throws Exception {
     TransactionHandle handle = transactionManager.begin();
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * @author mscott
+ */
+public class ByteBufferUtilsTest {
+
+  private static final long[] VALUES = {0L, 1L, 127L, 128L, 300L, 1L << 40, Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+
+  @Test
+  public void testVarLongRoundTrip() {
+    for (long v : VALUES) {
+      ByteBuffer buffer = ByteBuffer.allocate(ByteBufferUtils.MAX_VARLONG_SIZE);
+      ByteBufferUtils.putVarLong(buffer, v).flip();
+      assertThat(buffer.remaining(), is(ByteBufferUtils.varLongSize(v)));
+      assertThat(ByteBufferUtils.getVarLong(new ByteBuffer[] {buffer}), is(v));
+    }
+  }
+
+  @Test
+  public void testVarLongSpansBuffers() {
+    ByteBuffer buffer = ByteBuffer.allocate(ByteBufferUtils.MAX_VARLONG_SIZE);
+    ByteBufferUtils.putVarLong(buffer, 1L << 40).flip();
+    ByteBuffer first = buffer.duplicate();
+    first.limit(2);
+    buffer.position(2);
+    assertThat(ByteBufferUtils.getVarLong(new ByteBuffer[] {first, buffer}), is(1L << 40));
+  }
+
+  @Test
+  public void testVarLongSizes() {
+    assertThat(ByteBufferUtils.varLongSize(127L), is(1));
+    assertThat(ByteBufferUtils.varLongSize(128L), is(2));
+    assertThat(ByteBufferUtils.varLongSize(-1L), is(ByteBufferUtils.MAX_VARLONG_SIZE));
+    assertThat(ByteBufferUtils.varLongSize(ByteBufferUtils.zigZag(-1L)), is(1));
+  }
+
+  @Test
+  public void testZigZag() {
+    for (long v : VALUES) {
+      assertThat(ByteBufferUtils.unZigZag(ByteBufferUtils.zigZag(v)), is(v));
+    }
+    assertThat(ByteBufferUtils.zigZag(-1L), is(1L));
+    assertThat(ByteBufferUtils.zigZag(1L), is(2L));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author mscott
+ */
+public class Crc32cTest {
+
+  @Test
+  public void testCheckValue() {
+    byte[] check = "123456789".getBytes(US_ASCII);
+    Checksum crc = new Crc32c.PureJava();
+    crc.update(check, 0, check.length);
+    assertThat(crc.getValue(), is(0xe3069283L));
+    Checksum created = Crc32c.create();
+    created.update(check, 0, check.length);
+    assertThat(created.getValue(), is(0xe3069283L));
+  }
+
+  @Test
+  public void testSingleBytesMatchArrays() {
+    byte[] data = new byte[1000];
+    new Random(3).nextBytes(data);
+    Checksum bytes = new Crc32c.PureJava();
+    for (byte b : data) {
+      bytes.update(b);
+    }
+    Checksum array = new Crc32c.PureJava();
+    array.update(data, 0, 17);
+    array.update(data, 17, data.length - 17);
+    assertThat(bytes.getValue(), is(array.getValue()));
+    array.reset();
+    bytes.reset();
+    assertThat(bytes.getValue(), is(0L));
+    assertThat(array.getValue(), is(0L));
+  }
+
+  @Test
+  public void testMatchesRuntime() {
+    Assume.assumeTrue(Crc32c.isIntrinsic());
+    Random r = new Random(11);
+    for (int size : new int[] {0, 1, 7, 8, 9, 63, 4096, 100 * 1024 + 3}) {
+      byte[] data = new byte[size];
+      r.nextBytes(data);
+      int off = size > 3 ? r.nextInt(3) : 0;
+      Checksum pure = new Crc32c.PureJava();
+      pure.update(data, off, size - off);
+      Checksum runtime = Crc32c.create();
+      runtime.update(data, off, size - off);
+      assertThat(pure.getValue(), is(runtime.getValue()));
+    }
+  }
+}
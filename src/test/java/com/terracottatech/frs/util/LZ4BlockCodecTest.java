@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2019-2023 Software AG, Darmstadt, Germany and/or Software AG USA Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates and/or their licensors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.terracottatech.frs.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * @author mscott
+ */
+public class LZ4BlockCodecTest {
+
+  @Test
+  public void testRandomRoundTrip() {
+    Random r = new Random(42);
+    for (int size : new int[] {0, 1, 12, 13, 100, 4096, 200 * 1024}) {
+      byte[] data = new byte[size];
+      r.nextBytes(data);
+      roundTrip(data);
+    }
+  }
+
+  @Test
+  public void testCompressibleRoundTrip() {
+    byte[] data = new byte[256 * 1024];
+    for (int x = 0; x < data.length; x++) {
+      data[x] = (byte) ((x / 64) % 7);
+    }
+    int clen = roundTrip(data);
+    assertThat(clen, lessThan(data.length / 10));
+  }
+
+  @Test
+  public void testOverlappingMatch() {
+    byte[] data = new byte[1000];
+    Arrays.fill(data, (byte) 'a');
+    data[0] = 'b';
+    assertThat(roundTrip(data), lessThan(32));
+  }
+
+  @Test
+  public void testLongDistanceRepeat() {
+    Random r = new Random(7);
+    byte[] data = new byte[300 * 1024];
+    byte[] block = new byte[1024];
+    r.nextBytes(block);
+    for (int x = 0; x < data.length; x += block.length) {
+      if (x % (100 * 1024) == 0) {
+        r.nextBytes(block);
+      }
+      System.arraycopy(block, 0, data, x, block.length);
+    }
+    roundTrip(data);
+  }
+
+  @Test
+  public void testOffsetsInArrays() {
+    byte[] data = "the quick brown fox jumps over the quick brown dog".getBytes();
+    byte[] src = new byte[data.length + 20];
+    System.arraycopy(data, 0, src, 10, data.length);
+    byte[] dest = new byte[LZ4BlockCodec.maxCompressedLength(data.length) + 5];
+    int clen = LZ4BlockCodec.compress(src, 10, data.length, dest, 5);
+    byte[] out = new byte[data.length + 3];
+    assertThat(LZ4BlockCodec.decompress(dest, 5, clen, out, 3, data.length), is(data.length));
+    assertThat(Arrays.copyOfRange(out, 3, out.length), is(data));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncatedBlock() {
+    byte[] data = new byte[4096];
+    Arrays.fill(data, (byte) 3);
+    byte[] dest = new byte[LZ4BlockCodec.maxCompressedLength(data.length)];
+    int clen = LZ4BlockCodec.compress(data, 0, data.length, dest, 0);
+    LZ4BlockCodec.decompress(dest, 0, clen - 3, new byte[data.length], 0, data.length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadOffset() {
+  //  one literal followed by a match reaching back past the start of the output
+    byte[] block = new byte[] {0x10, 'a', 0x05, 0x00, 0x00};
+    LZ4BlockCodec.decompress(block, 0, block.length, new byte[64], 0, 64);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOutputOverflow() {
+    byte[] data = new byte[4096];
+    byte[] dest = new byte[LZ4BlockCodec.maxCompressedLength(data.length)];
+    int clen = LZ4BlockCodec.compress(data, 0, data.length, dest, 0);
+    LZ4BlockCodec.decompress(dest, 0, clen, new byte[100], 0, 100);
+  }
+
+  private static int roundTrip(byte[] data) {
+    byte[] dest = new byte[LZ4BlockCodec.maxCompressedLength(data.length)];
+    int clen = LZ4BlockCodec.compress(data, 0, data.length, dest, 0);
+    byte[] out = new byte[data.length];
+    assertThat(LZ4BlockCodec.decompress(dest, 0, clen, out, 0, data.length), is(data.length));
+    assertThat(out, is(data));
+    return clen;
+  }
+}